@@ -10,17 +10,47 @@ repositories {
     mavenCentral()
 }
 
+// Бенчмарки JMH лежат в отдельном source set и не попадают в jar приложения
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+val jmhImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
     implementation("org.apache.logging.log4j:log4j-api:2.25.2")
     implementation("org.apache.logging.log4j:log4j-core:2.25.2")
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs JMH benchmarks. Filter: -Pjmh.includes=<regex>, extra JMH options: -Pjmh.args=\"-f 1 -wi 2\""
+    dependsOn(tasks.named("jmhClasses"))
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+    doFirst { resultFile.get().asFile.parentFile.mkdirs() }
+
+    args(project.findProperty("jmh.includes")?.toString() ?: ".*")
+    // Профилировщик gc добавляет в отчет скорость выделения памяти (gc.alloc.rate и gc.alloc.rate.norm)
+    args("-prof", "gc", "-rf", "json", "-rff", resultFile.get().asFile.absolutePath)
+    project.findProperty("jmh.args")?.toString()?.trim()?.takeIf { it.isNotEmpty() }?.let {
+        args(it.split(Regex("\\s+")))
+    }
+}
+
 application {
     mainClass.set("org.rzsp.filemanager.Main")
 }
@@ -0,0 +1,98 @@
+package org.rzsp.filemanager.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.rzsp.filemanager.functions.CopyOptions;
+import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.functions.engine.CopyEngineSelector;
+import org.rzsp.filemanager.functions.engine.PipelinedCopyEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк {@link CopyingFile#copy()} на разных наборах данных и стратегиях копирования.
+ * Основной результат - копирований в секунду, вспомогательные счетчики megabytes и files дают MB/s и files/s,
+ * скорость выделения памяти добавляет профилировщик gc задачи jmh.
+ * <ul>
+ *     <li>stream - все файлы копируются циклом с буфером;</li>
+ *     <li>channel - все файлы копируются через transferTo;</li>
+ *     <li>auto - стратегия выбирается по размеру файла;</li>
+ *     <li>parallel - auto и копирование файлов директории в 8 потоков;</li>
+ *     <li>sparse - нулевые блоки файлов остаются дырами;</li>
+ *     <li>pipelined - чтение больших файлов наперед в кольцо буферов параллельно с записью.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Param({"HUGE_FILE", "TINY_FILES", "DEEP_TREE", "WIDE_TREE", "SPARSE_FILE"})
+    private Fixture fixture;
+
+    @Param({"stream", "channel", "auto", "parallel", "sparse", "pipelined"})
+    private String strategy;
+
+    private Path source;
+    private Path destination;
+    private long fixtureBytes;
+    private long fixtureFiles;
+
+    /**
+     * Счетчики пропускной способности, которые JMH пересчитывает в значения в секунду.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+        public long files;
+    }
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        source = fixture.create();
+        fixtureBytes = Fixture.totalBytes(source);
+        fixtureFiles = Fixture.totalFiles(source);
+    }
+
+    @Setup(Level.Invocation)
+    public void createDestination() throws IOException {
+        destination = Files.createTempDirectory("copy-benchmark");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDestination() throws IOException {
+        Fixture.delete(destination);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() throws IOException {
+        Fixture.delete(source);
+    }
+
+    @Benchmark
+    public void copy(Throughput throughput) throws IOException {
+        new CopyingFile(source.toString(), destination.toString(), options()).copy();
+
+        throughput.megabytes += (double) fixtureBytes / Fixture.MB;
+        throughput.files += fixtureFiles;
+    }
+
+    private CopyOptions options() {
+        return switch (strategy) {
+            case "stream" -> new CopyOptions().setEngineSelector(new CopyEngineSelector(Long.MAX_VALUE));
+            case "channel" -> new CopyOptions().setEngineSelector(new CopyEngineSelector(0));
+            case "parallel" -> new CopyOptions().setParallelism(8);
+            case "sparse" -> new CopyOptions().setSparse(true);
+            case "pipelined" -> new CopyOptions().setEngineSelector(
+                    new CopyEngineSelector(CopyEngineSelector.DEFAULT_ZERO_COPY_THRESHOLD, new PipelinedCopyEngine()));
+            default -> new CopyOptions();
+        };
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.rzsp.filemanager.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.rzsp.filemanager.functions.engine.ChannelCopyEngine;
+import org.rzsp.filemanager.functions.engine.CopyEngine;
+import org.rzsp.filemanager.functions.engine.StreamCopyEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк сравнения пропускной способности стратегий копирования одного файла.
+ * stream - исходный цикл с буфером {@link StreamCopyEngine#BUFFER_SIZE}, channel - копирование через transferTo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyEngineBenchmark {
+
+    @Param({"stream", "channel"})
+    private String engine;
+
+    @Param({"65536", "16777216", "268435456"})
+    private long fileSize;
+
+    private CopyEngine copyEngine;
+    private Path directory;
+    private Path source;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        copyEngine = engine.equals("stream") ? new StreamCopyEngine() : new ChannelCopyEngine();
+
+        directory = Files.createTempDirectory("copy-engine-benchmark");
+        source = directory.resolve("source.bin");
+        target = directory.resolve("target.bin");
+
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(source)) {
+            for (long written = 0; written < fileSize; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, fileSize - written));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        return copyEngine.copy(source, target);
+    }
+
+}
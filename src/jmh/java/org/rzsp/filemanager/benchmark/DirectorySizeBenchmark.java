@@ -0,0 +1,90 @@
+package org.rzsp.filemanager.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.rzsp.filemanager.functions.DirectorySizeCache;
+import org.rzsp.filemanager.functions.DirectorySizeCalculator;
+import org.rzsp.filemanager.functions.DirectorySizeIndex;
+import org.rzsp.filemanager.functions.DirectorySizeProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк вычисления размера директории на разных наборах данных и источниках размеров.
+ * <ul>
+ *     <li>sequential - fork-join обход в пуле из одного потока;</li>
+ *     <li>forkJoin - fork-join обход в общем пуле;</li>
+ *     <li>index - повторный запрос к заполненному {@link DirectorySizeIndex};</li>
+ *     <li>cache - повторный запрос к заполненному {@link DirectorySizeCache}.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectorySizeBenchmark {
+
+    @Param({"TINY_FILES", "DEEP_TREE", "WIDE_TREE"})
+    private Fixture fixture;
+
+    @Param({"sequential", "forkJoin", "index", "cache"})
+    private String strategy;
+
+    private Path root;
+    private Path indexDirectory;
+    private ForkJoinPool sequentialPool;
+    private DirectorySizeProvider provider;
+    private long fixtureFiles;
+
+    /**
+     * Счетчик обработанных файлов, который JMH пересчитывает в files/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long files;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = fixture.create();
+        fixtureFiles = Fixture.totalFiles(root);
+
+        provider = switch (strategy) {
+            case "sequential" -> {
+                sequentialPool = new ForkJoinPool(1);
+                yield new DirectorySizeCalculator(sequentialPool);
+            }
+            case "index" -> {
+                indexDirectory = Files.createTempDirectory("size-index");
+                yield new DirectorySizeIndex(indexDirectory.resolve("size.index"));
+            }
+            case "cache" -> new DirectorySizeCache(new DirectorySizeCalculator());
+            default -> new DirectorySizeCalculator();
+        };
+
+        // Первый запрос заполняет индекс и кэш
+        provider.getDirectorySize(root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (sequentialPool != null) {
+            sequentialPool.shutdown();
+        }
+        Fixture.delete(indexDirectory);
+        Fixture.delete(root);
+    }
+
+    @Benchmark
+    public long size(Throughput throughput) {
+        throughput.files += fixtureFiles;
+        return provider.getDirectorySize(root);
+    }
+
+}
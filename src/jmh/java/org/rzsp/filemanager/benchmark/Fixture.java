@@ -0,0 +1,169 @@
+package org.rzsp.filemanager.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Воспроизводимые наборы данных для бенчмарков.
+ * Содержимое файлов генерируется из фиксированного seed, поэтому наборы одинаковы между запусками.
+ */
+public enum Fixture {
+
+    /** Один файл на 256 МБ. */
+    HUGE_FILE {
+        @Override
+        void fill(Path root) throws IOException {
+            writeFile(root.resolve("huge.bin"), 256L * MB);
+        }
+    },
+
+    /** 10 000 файлов по 1 КБ в одной директории. */
+    TINY_FILES {
+        @Override
+        void fill(Path root) throws IOException {
+            for (int i = 0; i < 10_000; i++) {
+                writeFile(root.resolve("tiny" + i + ".bin"), 1024);
+            }
+        }
+    },
+
+    /** Цепочка из 64 вложенных директорий, в каждой по 10 файлов на 4 КБ. */
+    DEEP_TREE {
+        @Override
+        void fill(Path root) throws IOException {
+            Path directory = root;
+            for (int level = 0; level < 64; level++) {
+                directory = Files.createDirectory(directory.resolve("level" + level));
+                for (int i = 0; i < 10; i++) {
+                    writeFile(directory.resolve("file" + i + ".bin"), 4 * KB);
+                }
+            }
+        }
+    },
+
+    /** 200 директорий в корне, в каждой по 50 файлов на 16 КБ. */
+    WIDE_TREE {
+        @Override
+        void fill(Path root) throws IOException {
+            for (int d = 0; d < 200; d++) {
+                Path directory = Files.createDirectory(root.resolve("dir" + d));
+                for (int i = 0; i < 50; i++) {
+                    writeFile(directory.resolve("file" + i + ".bin"), 16 * KB);
+                }
+            }
+        }
+    },
+
+    /** Разреженный файл на 1 ГБ, в котором записаны только 16 блоков по 64 КБ. */
+    SPARSE_FILE {
+        @Override
+        void fill(Path root) throws IOException {
+            byte[] block = randomBytes(64 * KB);
+            try (RandomAccessFile file = new RandomAccessFile(root.resolve("sparse.img").toFile(), "rw")) {
+                file.setLength(1024L * MB);
+                for (int i = 0; i < 16; i++) {
+                    file.seek(i * 64L * MB);
+                    file.write(block);
+                }
+            }
+        }
+    };
+
+    static final int KB = 1024;
+    static final int MB = 1024 * KB;
+
+    /**
+     * Заполняет пустую директорию данными набора.
+     *
+     * @param root пустая директория
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    abstract void fill(Path root) throws IOException;
+
+    /**
+     * Создает временную директорию с данными набора.
+     *
+     * @return директория с данными
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public Path create() throws IOException {
+        Path root = Files.createTempDirectory("fixture-" + name().toLowerCase());
+        fill(root);
+        return root;
+    }
+
+    /**
+     * @param root корень набора
+     * @return суммарный размер файлов набора
+     */
+    public static long totalBytes(Path root) throws IOException {
+        long[] total = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                total[0] += attributes.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    /**
+     * @param root корень набора
+     * @return количество файлов набора
+     */
+    public static long totalFiles(Path root) throws IOException {
+        long[] total = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                total[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    /**
+     * Рекурсивно удаляет директорию, если она существует.
+     */
+    public static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void writeFile(Path file, long size) throws IOException {
+        byte[] chunk = randomBytes((int) Math.min(size, MB));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -2,19 +2,78 @@ package org.rzsp.filemanager;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.CopyOptions;
 import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.functions.DirectorySizeCache;
+import org.rzsp.filemanager.functions.DirectorySizeCalculator;
+import org.rzsp.filemanager.functions.DirectorySizeIndex;
+import org.rzsp.filemanager.functions.DirectorySizeProvider;
 import org.rzsp.filemanager.functions.GetSizeOfDirectory;
-
+import org.rzsp.filemanager.jobs.Job;
+import org.rzsp.filemanager.jobs.JobScheduler;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+import org.rzsp.filemanager.metrics.ProgressReporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Scanner;
 
 /**
- * Класс интерфейс для взаимодействия пользователя с программой
+ * Класс интерфейс для взаимодействия пользователя с программой.
+ * Копирование и подсчет размера выполняются фоновыми задачами {@link JobScheduler}, поэтому меню сразу принимает
+ * следующую команду, а задачи на разных дисках выполняются одновременно.
  */
 public class FileManagerUI {
     private static final Logger logger = LogManager.getLogger(FileManagerUI.class);
 
+    /*
+     * Системное свойство с путем к файлу постоянного индекса размеров директорий.
+     * Если свойство не задано, размеры каждый раз вычисляются полным обходом.
+     */
+    public static final String SIZE_INDEX_PROPERTY = "filemanager.sizeIndex";
+
+    /*
+     * Системное свойство с путем к файлу, в который после каждой операции записывается снимок её метрик:
+     * в JSON, если имя оканчивается на ".json", иначе в текстовом формате Prometheus.
+     */
+    public static final String METRICS_FILE_PROPERTY = "filemanager.metricsFile";
+
+    /*
+     * Системное свойство с максимальным количеством задач, одновременно выполняемых на одном устройстве.
+     * По умолчанию {@link JobScheduler#DEFAULT_JOBS_PER_DEVICE}.
+     */
+    public static final String JOBS_PER_DEVICE_PROPERTY = "filemanager.jobsPerDevice";
+
+    /*
+     * Системное свойство, включающее кэш размеров директорий в памяти (значение "true").
+     * Кэш проверяет только mtime запрошенной директории и не замечает изменений во вложенных директориях,
+     * сделанных другими процессами, поэтому по умолчанию выключен.
+     */
+    public static final String SIZE_CACHE_PROPERTY = "filemanager.sizeCache";
+
+    /*
+     * Системное свойство, включающее оценку оставшегося времени копирования директорий (значение "true").
+     * Для оценки нужен объем директории, то есть обход всего дерева до начала копирования,
+     * поэтому по умолчанию оценка выводится только для файлов.
+     */
+    public static final String COPY_ETA_PROPERTY = "filemanager.copyEta";
+
+    private static final long PROGRESS_PERIOD_MILLIS = 500;
+
     private final Scanner scanner = new Scanner(System.in);
 
+    private final DirectorySizeIndex sizeIndex = loadSizeIndex();
+    private final DirectorySizeProvider sizeSource = sizeIndex != null ? sizeIndex : new DirectorySizeCalculator();
+    private final DirectorySizeCache sizeCache = Boolean.getBoolean(SIZE_CACHE_PROPERTY) ? new DirectorySizeCache(sizeSource) : null;
+    private final DirectorySizeProvider sizeProvider = sizeCache != null ? sizeCache : sizeSource;
+    private final JobScheduler scheduler = new JobScheduler(
+            Integer.getInteger(JOBS_PER_DEVICE_PROPERTY, JobScheduler.DEFAULT_JOBS_PER_DEVICE));
+
     /**
      * Запускает меню взаимодействия
      */
@@ -27,7 +86,12 @@ public class FileManagerUI {
                     File Manager
                     1) Copying file/directory in target directory
                     2) Get size of directory
-                    3) Exit
+                    3) List jobs
+                    4) Show job progress
+                    5) Pause job
+                    6) Resume job
+                    7) Cancel job
+                    8) Exit
                     Choice:\s""");
 
             String userChoice = scanner.nextLine();
@@ -44,11 +108,7 @@ public class FileManagerUI {
                         System.out.print("Enter path to target directory: ");
                         String pathToTargetDirectory = scanner.nextLine();
 
-
-                        CopyingFile copyingFile = new CopyingFile(pathToCopyFileOrDirectory, pathToTargetDirectory);
-                        copyingFile.copy();
-
-                        System.out.println("File/directory is copied!");
+                        submitCopy(pathToCopyFileOrDirectory, pathToTargetDirectory);
 
                     } catch (Exception e) {
                         logger.error("Error copying: {}", e.getMessage());
@@ -63,12 +123,7 @@ public class FileManagerUI {
                         System.out.print("Enter path to directory that you want to enter size: ");
                         String pathToDirectory = scanner.nextLine();
 
-                        System.out.println();
-
-                        GetSizeOfDirectory getSizeOfDirectory = new GetSizeOfDirectory(pathToDirectory);
-                        getSizeOfDirectory.printNameAndByteSizeOfAllFilesInDirectory();
-
-                        System.out.println();
+                        submitSize(pathToDirectory);
 
                     } catch (Exception e) {
                         logger.error("Error getting size: {}", e.getMessage());
@@ -77,8 +132,84 @@ public class FileManagerUI {
                 }
 
                 case "3" -> {
+                    logger.info("User choice: 3");
+
+                    List<Job> jobs = scheduler.getJobs();
+                    if (jobs.isEmpty()) {
+                        System.out.println("No jobs");
+                    }
+                    jobs.forEach(System.out::println);
+                    System.out.println();
+
+                }
+
+                case "4" -> {
+                    logger.info("User choice: 4");
+
+                    Job job = readJob();
+                    if (job != null && job.getMetrics() != null && !job.getState().isFinished()) {
+                        System.out.println("Press Enter to return to menu");
+                        ProgressReporter reporter = ProgressReporter.start(job.getMetrics(), System.out, PROGRESS_PERIOD_MILLIS);
+                        try {
+                            scanner.nextLine();
+                        } finally {
+                            reporter.close();
+                        }
+                    } else if (job != null) {
+                        System.out.println(job);
+                    }
+
+                }
+
+                case "5" -> {
+                    logger.info("User choice: 5");
+
+                    Job job = readJob();
+                    if (job != null) {
+                        System.out.println(scheduler.pause(job.getId()) ? "Job #" + job.getId() + " is paused" : "Job is already finished");
+                    }
+
+                }
+
+                case "6" -> {
+                    logger.info("User choice: 6");
+
+                    Job job = readJob();
+                    if (job != null) {
+                        System.out.println(scheduler.resume(job.getId()) ? "Job #" + job.getId() + " is resumed" : "Job is already finished");
+                    }
+
+                }
+
+                case "7" -> {
+                    logger.info("User choice: 7");
+
+                    Job job = readJob();
+                    if (job != null) {
+                        System.out.println(scheduler.cancel(job.getId()) ? "Job #" + job.getId() + " is cancelled" : "Job is already finished");
+                    }
+
+                }
+
+                case "8" -> {
                     logger.info("User exiting application");
 
+                    // Задачи на паузе не завершатся, пока меню ждет, поэтому они отменяются до ожидания
+                    int pausedJobs = scheduler.cancelPaused();
+                    if (pausedJobs > 0) {
+                        System.out.println("Cancelled " + pausedJobs + " paused jobs");
+                    }
+                    int activeJobs = scheduler.getActiveJobs();
+                    if (activeJobs > 0) {
+                        System.out.println("Waiting for " + activeJobs + " jobs to finish...");
+                        try {
+                            scheduler.awaitAll();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    scheduler.close();
+
                     running = false;
 
                 }
@@ -86,7 +217,7 @@ public class FileManagerUI {
                 default -> {
                     logger.info("User input was wrong");
 
-                    System.out.println("You must write from 1 to 3!");
+                    System.out.println("You must write from 1 to 8!");
 
                 }
 
@@ -96,4 +227,139 @@ public class FileManagerUI {
 
     }
 
+    /**
+     * Проверяет пути и добавляет задачу копирования. Результат выводится по завершении задачи.
+     */
+    private void submitCopy(String pathToCopyFileOrDirectory, String pathToTargetDirectory) throws IOException {
+        OperationMetrics metrics = new OperationMetrics("copy");
+        CopyOptions options = new CopyOptions().setSizeCache(sizeCache).setMetrics(metrics);
+        CopyingFile copyingFile = new CopyingFile(pathToCopyFileOrDirectory, pathToTargetDirectory, options);
+
+        Job job = scheduler.submit("copy " + pathToCopyFileOrDirectory + " to " + pathToTargetDirectory,
+                List.of(Path.of(pathToCopyFileOrDirectory), Path.of(pathToTargetDirectory)), metrics,
+                control -> {
+                    options.setJobControl(control);
+
+                    // Объем для оценки оставшегося времени нужен только при просмотре прогресса в терминале
+                    if (System.console() != null) {
+                        long totalBytes = sizeOf(Path.of(pathToCopyFileOrDirectory));
+                        if (totalBytes >= 0) {
+                            metrics.setTotalBytes(totalBytes);
+                        }
+                    }
+                    copyingFile.copy();
+
+                    System.out.println(System.lineSeparator() + "File/directory " + pathToCopyFileOrDirectory
+                            + " is copied! " + metrics.progressLine());
+                    writeMetrics(metrics);
+                });
+
+        System.out.println("Copy is submitted as job #" + job.getId());
+    }
+
+    /**
+     * Проверяет путь и добавляет задачу подсчета размера.
+     * Результаты собираются в памяти и выводятся одним блоком по завершении, чтобы не смешиваться с меню.
+     */
+    private void submitSize(String pathToDirectory) {
+        GetSizeOfDirectory getSizeOfDirectory = new GetSizeOfDirectory(pathToDirectory, sizeProvider);
+
+        Job job = scheduler.submit("size " + pathToDirectory, List.of(Path.of(pathToDirectory)), getSizeOfDirectory.getMetrics(),
+                control -> {
+                    getSizeOfDirectory.setJobControl(control);
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    getSizeOfDirectory.printNameAndByteSizeOfAllFilesInDirectory(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+
+                    if (sizeIndex != null) {
+                        sizeIndex.save();
+                    }
+                    // Пауза и отмена проверяются между поддиректориями и еще раз перед выводом результата
+                    control.checkpoint();
+
+                    synchronized (System.out) {
+                        System.out.println();
+                        System.out.println("Sizes in " + pathToDirectory + ":");
+                        System.out.print(buffer.toString(StandardCharsets.UTF_8));
+                        if (sizeCache != null) {
+                            System.out.println("Size cache: " + sizeCache);
+                        }
+                        System.out.println();
+                    }
+                    writeMetrics(getSizeOfDirectory.getMetrics());
+                });
+
+        System.out.println("Size calculation is submitted as job #" + job.getId());
+    }
+
+    /**
+     * Запрашивает номер задачи.
+     *
+     * @return задача или null, если номер неверный
+     */
+    private Job readJob() {
+        System.out.print("Enter job number: ");
+        String number = scanner.nextLine().strip();
+
+        Job job = null;
+        try {
+            job = scheduler.getJob(Integer.parseInt(number.startsWith("#") ? number.substring(1) : number));
+        } catch (NumberFormatException e) {
+            logger.info("User input was wrong");
+        }
+
+        if (job == null) {
+            System.out.println("There is no job " + number);
+        }
+        return job;
+    }
+
+    /**
+     * Возвращает размер копируемого файла или директории для оценки оставшегося времени копирования.
+     * Размер директории вычисляется, только если задано свойство {@link #COPY_ETA_PROPERTY}:
+     * это дополнительный обход дерева перед копированием.
+     *
+     * @return размер в байтах или -1, если объем директории не оценивается
+     */
+    private long sizeOf(Path fileOrDirectory) throws IOException {
+        if (!Files.isDirectory(fileOrDirectory)) {
+            return Files.size(fileOrDirectory);
+        }
+        return Boolean.getBoolean(COPY_ETA_PROPERTY) ? sizeProvider.getDirectorySize(fileOrDirectory) : -1;
+    }
+
+    /**
+     * Записывает снимок метрик операции в файл, если задано свойство {@link #METRICS_FILE_PROPERTY}.
+     */
+    private static void writeMetrics(OperationMetrics metrics) {
+        String pathToMetrics = System.getProperty(METRICS_FILE_PROPERTY);
+        if (pathToMetrics == null || pathToMetrics.isBlank()) {
+            return;
+        }
+
+        try {
+            metrics.writeTo(Path.of(pathToMetrics));
+        } catch (IOException e) {
+            logger.error("Error writing metrics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Загружает индекс размеров директорий, если задано свойство {@link #SIZE_INDEX_PROPERTY}.
+     *
+     * @return индекс размеров или null, если свойство не задано или индекс не удалось загрузить
+     */
+    private static DirectorySizeIndex loadSizeIndex() {
+        String pathToIndex = System.getProperty(SIZE_INDEX_PROPERTY);
+        if (pathToIndex == null || pathToIndex.isBlank()) {
+            return null;
+        }
+
+        try {
+            return new DirectorySizeIndex(Path.of(pathToIndex));
+        } catch (IOException e) {
+            logger.error("Error loading size index: {}", e.getMessage());
+            return null;
+        }
+    }
+
 }
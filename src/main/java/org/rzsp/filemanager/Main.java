@@ -2,20 +2,32 @@ package org.rzsp.filemanager;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.cli.CommandLineRunner;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
     /**
-     * Главный метод для выполнения функции копирования файла/директории и вывода размера директории, куда копируется файл/директория.
+     * Главный метод приложения.
+     * Без аргументов запускает интерактивное меню {@link FileManagerUI}.
+     * С аргументами выполняет команды без диалога с пользователем через {@link CommandLineRunner} и завершает JVM с его кодом возврата.
      *
      * @param args:
-     *            args[0] - путь к копируемому файлу/директории;
-     *            args[1] - путь директории, куда копируется файл или файлы директории.
+     *            пусто - интерактивное меню;
+     *            copy [опции] &lt;источник&gt; &lt;назначение&gt; - копирование файла/директории;
+     *            size [опции] &lt;директория&gt; - вывод размеров элементов директории;
+     *            batch &lt;манифест | -&gt; - выполнение команд copy/size из файла или стандартного ввода, по одной на строку.
      */
     public static void main(String[] args) {
         logger.info("Application is started");
 
+        if (args.length > 0) {
+            int exitCode = new CommandLineRunner().run(args);
+
+            logger.info("Application is ended with exit code {}", exitCode);
+            System.exit(exitCode);
+        }
+
         try {
             FileManagerUI fileManager = new FileManagerUI();
             fileManager.start();
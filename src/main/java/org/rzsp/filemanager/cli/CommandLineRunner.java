@@ -0,0 +1,651 @@
+package org.rzsp.filemanager.cli;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.*;
+import org.rzsp.filemanager.functions.archive.ArchiveFormat;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.CopyEngineSelector;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.functions.engine.PipelinedCopyEngine;
+import org.rzsp.filemanager.traversal.EntryFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Класс неинтерактивного режима работы через аргументы командной строки.
+ * Поддерживает команды copy, size, verify и watch, а также batch - выполнение списка команд из файла или стандартного ввода.
+ * Все команды одного запуска выполняются в одной JVM и используют общие пулы потоков, кэш и индексы размеров.
+ */
+public class CommandLineRunner {
+    private static final Logger logger = LogManager.getLogger(CommandLineRunner.class);
+
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final Set<String> FLAGS = Set.of("--resume", "--sync", "--checksum", "--delete", "--dedup", "--sparse", "--cache"); // Опции без значения
+    // Опции, которые можно указать несколько раз. Значения хранятся через NUL: он не может встретиться в аргументе
+    private static final Set<String> REPEATABLE = Set.of("--exclude", "--exclude-regex", "--include", "--include-regex");
+    private static final String[] FILTER_OPTIONS = {"--exclude", "--exclude-regex", "--include", "--include-regex",
+            "--min-size", "--max-size", "--newer-than", "--older-than"};
+
+    public static final String USAGE = """
+            Usage:
+              filemanager                                    interactive menu
+              filemanager copy [options] <source> <destination>
+                  --parallel N            copy files of a directory with N threads
+                  --max-in-flight SIZE    limit total size of files copied at once (e.g. 512M)
+                  --max-open-files N      limit open file descriptors of a parallel copy
+                  --resume                keep a journal in <destination> and continue an interrupted copy
+                  --sync                  copy only new and changed files (by size and modification time)
+                  --checksum              with --sync, compare file contents instead of modification time
+                  --delete                with --sync, delete destination entries missing in <source>
+                  --delta SIZE            update existing copies of files of at least SIZE by changed blocks only
+                  --dedup                 create copies of identical files as hard links to the first copy
+                  --sparse                keep zero blocks of files as holes and preallocate full file size
+                  --pipeline-buffer SIZE  copy large files with overlapped reads and writes using buffers of SIZE
+                  --pipeline-depth N      number of buffers read ahead by a pipelined copy (default 4)
+                  --metrics FILE          write copy metrics to FILE (JSON if it ends with .json, else Prometheus text)
+                  --max-rate SIZE         limit copy bandwidth to SIZE bytes per second (e.g. 50M)
+                  --max-files-rate N      limit copy to N files per second
+                  --verify ALGORITHM      compute crc32c or sha256 checksums while copying and write a manifest
+                  --manifest FILE         with --verify, write the manifest to FILE instead of <destination>
+                  --archive FORMAT        write <source> into a zip or tar.gz archive in <destination>,
+                                          compressing in parallel on all processors (or N with --parallel)
+                  --small-files SIZE      copy files up to SIZE (e.g. 16K, at most 64K) in per-directory batches
+                                          on a separate pool, one read and one write per file
+                  --small-file-threads N  threads of the small file pool (default 16)
+                  filter options below
+              filemanager size [--index FILE | --cache] [--metrics FILE] <directory>
+                  --index FILE            use persistent directory size index stored in FILE
+                  --cache                 reuse sizes computed earlier by this process (e.g. in batch) while
+                                          the directory mtime is unchanged; changes in nested directories
+                                          made by other processes are not detected
+                  --metrics FILE          write size metrics to FILE
+              filemanager size [filter options] [--metrics FILE] <directory>
+                  sizes of matching files only, always computed by a fresh traversal
+              filemanager size --top N <directory>
+                  report N largest files and directories at any depth and sizes by extension and age in one pass
+              filter options (applied during traversal, excluded directories are never read;
+                              repeat --exclude and --include to add patterns):
+                  --exclude GLOB          skip files and directories matching GLOB, e.g. node_modules, .git, *.tmp;
+                                          a GLOB without '/' matches names at any depth, otherwise relative paths
+                  --exclude-regex REGEX   skip entries whose relative path contains a match of REGEX
+                  --include GLOB          copy or count only files matching one of the include patterns
+                  --include-regex REGEX   same as --include with a regular expression
+                  --min-size SIZE         skip files smaller than SIZE
+                  --max-size SIZE         skip files larger than SIZE
+                  --newer-than AGE        skip files modified more than AGE ago (e.g. 30m, 12h, 7d)
+                  --older-than AGE        skip files modified less than AGE ago
+              filemanager watch [--interval SECONDS] <directory>
+                  scan once, then track the size of <directory> by filesystem events and print it
+                  every SECONDS (default 5) when it changes, until interrupted
+              filemanager verify [--parallel N] <manifest> [<directory>]
+                  re-check files against a checksum manifest with N threads (default: all processors),
+                  paths are resolved against <directory> or the directory of the manifest
+              filemanager batch <manifest | ->
+                  run one copy/size/verify command per line of the manifest or stdin,
+                  blank lines and lines starting with '#' are ignored""";
+
+    private final PrintStream out;
+    private final BufferedReader stdin;
+
+    private final DirectorySizeCache sizeCache = new DirectorySizeCache(new DirectorySizeCalculator());
+    private final Map<Path, DirectorySizeIndex> indexes = new HashMap<>();
+    private final Map<Integer, ExecutorService> copyPools = new HashMap<>();
+
+    /**
+     * Конструктор, работающий со стандартными потоками ввода и вывода.
+     */
+    public CommandLineRunner() {
+        this(System.out, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Конструктор класса CommandLineRunner.
+     *
+     * @param out поток вывода результатов
+     * @param stdin источник списка команд для "batch -"
+     */
+    public CommandLineRunner(PrintStream out, BufferedReader stdin) {
+        this.out = out;
+        this.stdin = stdin;
+    }
+
+    /**
+     * Выполняет команду, заданную аргументами командной строки.
+     *
+     * @param args аргументы командной строки
+     * @return код завершения: {@link #EXIT_SUCCESS}, {@link #EXIT_FAILURE} если команда или одна из команд batch
+     *         завершилась с ошибкой, {@link #EXIT_USAGE} если аргументы неверны
+     */
+    public int run(String[] args) {
+        try {
+            if (args.length > 0 && args[0].equals("batch")) {
+                if (args.length != 2) {
+                    throw new IllegalArgumentException("Command \"batch\" expects exactly one manifest argument");
+                }
+                return runBatch(args[1]);
+            }
+
+            return runCommand(Arrays.asList(args)) ? EXIT_SUCCESS : EXIT_FAILURE;
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println(USAGE);
+            return EXIT_USAGE;
+        } catch (IOException e) {
+            logger.error("Error reading manifest: {}", e.getMessage());
+            return EXIT_FAILURE;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Выполняет команды из манифеста по одной на строку.
+     * Ошибка одной команды не останавливает выполнение следующих.
+     */
+    private int runBatch(String manifest) throws IOException {
+        BufferedReader reader = manifest.equals("-")
+                ? stdin
+                : Files.newBufferedReader(Path.of(manifest), StandardCharsets.UTF_8);
+
+        int failed = 0;
+        int total = 0;
+
+        try (reader) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                total++;
+                logger.info("Batch job {} (line {}): {}", total, lineNumber, trimmed);
+
+                try {
+                    if (!runCommand(tokenize(trimmed))) {
+                        failed++;
+                    }
+                } catch (IllegalArgumentException e) {
+                    logger.error("Line {}: {}", lineNumber, e.getMessage());
+                    failed++;
+                }
+            }
+        }
+
+        out.println("Batch finished: " + (total - failed) + " of " + total + " jobs succeeded");
+        if (sizeCache.getHits() + sizeCache.getMisses() > 0) {
+            out.println("Size cache: " + sizeCache);
+        }
+        return failed == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    /**
+     * Выполняет одну команду.
+     *
+     * @param tokens название команды и её аргументы
+     * @return true, если команда выполнена успешно
+     * @throws IllegalArgumentException если команда или её аргументы неверны
+     */
+    private boolean runCommand(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Command is not specified");
+        }
+
+        String command = tokens.get(0);
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        parseArguments(tokens.subList(1, tokens.size()), options, arguments);
+
+        return switch (command) {
+            case "copy" -> copy(options, arguments);
+            case "size" -> size(options, arguments);
+            case "verify" -> verify(options, arguments);
+            case "watch" -> watch(options, arguments);
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        };
+    }
+
+    private boolean copy(Map<String, String> options, List<String> arguments) {
+        if (arguments.size() != 2) {
+            throw new IllegalArgumentException("Command \"copy\" expects <source> and <destination>");
+        }
+        checkOptions(options, "--parallel", "--max-in-flight", "--max-open-files", "--resume",
+                "--sync", "--checksum", "--delete", "--delta", "--dedup", "--sparse",
+                "--pipeline-buffer", "--pipeline-depth", "--metrics", "--max-rate", "--max-files-rate",
+                "--verify", "--manifest", "--archive", "--small-files", "--small-file-threads",
+                "--exclude", "--exclude-regex", "--include", "--include-regex",
+                "--min-size", "--max-size", "--newer-than", "--older-than");
+
+        CopyOptions copyOptions = new CopyOptions().setSizeCache(sizeCache);
+        if (options.containsKey("--parallel")) {
+            int parallelism = parseInt(options.get("--parallel"), "--parallel");
+            copyOptions.setParallelism(parallelism);
+            if (parallelism > 1) {
+                copyOptions.setCopyPool(copyPools.computeIfAbsent(parallelism, Executors::newFixedThreadPool));
+            }
+        }
+        if (options.containsKey("--max-in-flight")) {
+            copyOptions.setMaxInFlightBytes(parseBytes(options.get("--max-in-flight"), "--max-in-flight"));
+        }
+        if (options.containsKey("--max-open-files")) {
+            copyOptions.setMaxOpenFiles(parseInt(options.get("--max-open-files"), "--max-open-files"));
+        }
+        if (options.containsKey("--pipeline-buffer") || options.containsKey("--pipeline-depth")) {
+            int bufferSize = options.containsKey("--pipeline-buffer")
+                    ? Math.toIntExact(parseBytes(options.get("--pipeline-buffer"), "--pipeline-buffer"))
+                    : PipelinedCopyEngine.DEFAULT_BUFFER_SIZE;
+            int depth = options.containsKey("--pipeline-depth")
+                    ? parseInt(options.get("--pipeline-depth"), "--pipeline-depth")
+                    : PipelinedCopyEngine.DEFAULT_DEPTH;
+            copyOptions.setEngineSelector(new CopyEngineSelector(CopyEngineSelector.DEFAULT_ZERO_COPY_THRESHOLD,
+                    new PipelinedCopyEngine(bufferSize, depth)));
+        }
+        if (options.containsKey("--max-rate") || options.containsKey("--max-files-rate")) {
+            long bytesPerSecond = options.containsKey("--max-rate")
+                    ? parseBytes(options.get("--max-rate"), "--max-rate")
+                    : CopyThrottle.UNLIMITED;
+            long filesPerSecond = options.containsKey("--max-files-rate")
+                    ? parseInt(options.get("--max-files-rate"), "--max-files-rate")
+                    : CopyThrottle.UNLIMITED;
+            copyOptions.setThrottle(new CopyThrottle(bytesPerSecond, filesPerSecond));
+        }
+        if (options.containsKey("--archive")) {
+            copyOptions.setArchiveFormat(ArchiveFormat.fromName(options.get("--archive")));
+        }
+        if (options.containsKey("--verify")) {
+            copyOptions.setChecksumAlgorithm(ChecksumAlgorithm.fromName(options.get("--verify")));
+        }
+        if (options.containsKey("--manifest")) {
+            if (!options.containsKey("--verify")) {
+                throw new IllegalArgumentException("Option --manifest requires --verify");
+            }
+            copyOptions.setManifestFile(Path.of(options.get("--manifest")));
+        }
+        if (options.containsKey("--small-file-threads") && !options.containsKey("--small-files")) {
+            throw new IllegalArgumentException("Option --small-file-threads requires --small-files");
+        }
+        if (options.containsKey("--small-files")) {
+            long threshold = parseBytes(options.get("--small-files"), "--small-files");
+            if (threshold > CopyOptions.MAX_SMALL_FILE_THRESHOLD) {
+                throw new IllegalArgumentException("Option --small-files must be at most 64K");
+            }
+            copyOptions.setSmallFileThreshold((int) threshold);
+        }
+        if (options.containsKey("--small-file-threads")) {
+            copyOptions.setSmallFileParallelism(parseInt(options.get("--small-file-threads"), "--small-file-threads"));
+        }
+        EntryFilter filter = parseFilter(options);
+        copyOptions.setFilter(filter);
+        if (options.containsKey("--delta")) {
+            copyOptions.setDeltaThreshold(parseBytes(options.get("--delta"), "--delta"));
+        }
+        copyOptions.setResumable(options.containsKey("--resume"))
+                .setSync(options.containsKey("--sync"))
+                .setCompareContent(options.containsKey("--checksum"))
+                .setDeleteExtraneous(options.containsKey("--delete"))
+                .setDedup(options.containsKey("--dedup"))
+                .setSparse(options.containsKey("--sparse"));
+        if (!copyOptions.isSync() && (copyOptions.isCompareContent() || copyOptions.isDeleteExtraneous())) {
+            throw new IllegalArgumentException("Options --checksum and --delete require --sync");
+        }
+
+        try {
+            CopyingFile copyingFile = new CopyingFile(arguments.get(0), arguments.get(1), copyOptions);
+            copyingFile.copy();
+            if (copyOptions.getArchiveFormat() != null) {
+                out.println("Archived " + arguments.get(0) + " to " + copyingFile.getArchiveFile());
+            } else if (copyOptions.isSync()) {
+                out.println("Synced " + arguments.get(0) + " to " + arguments.get(1) + ": " + copyingFile.getCopiedFiles()
+                        + " copied, " + copyingFile.getUnchangedFiles() + " unchanged, " + copyingFile.getDeletedEntries() + " deleted");
+            } else {
+                out.println("Copied " + arguments.get(0) + " to " + arguments.get(1));
+            }
+            if (copyOptions.isDedup()) {
+                out.println("Dedup: " + copyingFile.getLinkedFiles() + " files linked, " + copyingFile.getSavedBytes() + " bytes saved");
+            }
+            printFilter(filter);
+            if (options.containsKey("--metrics")) {
+                copyingFile.getMetrics().writeTo(Path.of(options.get("--metrics")));
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("Error copying: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean size(Map<String, String> options, List<String> arguments) {
+        if (arguments.size() != 1) {
+            throw new IllegalArgumentException("Command \"size\" expects <directory>");
+        }
+        checkOptions(options, "--index", "--cache", "--metrics", "--top", "--exclude", "--exclude-regex", "--include", "--include-regex",
+                "--min-size", "--max-size", "--newer-than", "--older-than");
+        if (options.containsKey("--top")) {
+            if (options.size() > 1) {
+                throw new IllegalArgumentException("Option --top can not be combined with other options");
+            }
+            return analyze(arguments.get(0), parseInt(options.get("--top"), "--top"));
+        }
+
+        EntryFilter filter = parseFilter(options);
+        if (filter != null && (options.containsKey("--index") || options.containsKey("--cache"))) {
+            throw new IllegalArgumentException("Filter options can not be combined with --index or --cache");
+        }
+        if (options.containsKey("--index") && options.containsKey("--cache")) {
+            throw new IllegalArgumentException("Options --index and --cache can not be combined");
+        }
+
+        try {
+            DirectorySizeIndex index = null;
+            if (options.containsKey("--index")) {
+                Path indexFile = Path.of(options.get("--index")).toAbsolutePath().normalize();
+                index = indexes.get(indexFile);
+                if (index == null) {
+                    index = new DirectorySizeIndex(indexFile);
+                    indexes.put(indexFile, index);
+                }
+            }
+
+            out.println(arguments.get(0) + ":");
+            GetSizeOfDirectory getSizeOfDirectory;
+            if (filter != null) {
+                getSizeOfDirectory = new GetSizeOfDirectory(arguments.get(0), filter);
+            } else if (index != null) {
+                getSizeOfDirectory = new GetSizeOfDirectory(arguments.get(0), index);
+            } else if (options.containsKey("--cache")) {
+                getSizeOfDirectory = new GetSizeOfDirectory(arguments.get(0), sizeCache);
+            } else {
+                getSizeOfDirectory = new GetSizeOfDirectory(arguments.get(0));
+            }
+            getSizeOfDirectory.printNameAndByteSizeOfAllFilesInDirectory(out);
+            printFilter(filter);
+            if (options.containsKey("--cache")) {
+                out.println("Size cache: " + sizeCache);
+            }
+
+            if (options.containsKey("--metrics")) {
+                getSizeOfDirectory.getMetrics().writeTo(Path.of(options.get("--metrics")));
+            }
+
+            if (index != null) {
+                index.save();
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("Error getting size: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean analyze(String directory, int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("Option --top must be positive");
+        }
+
+        try {
+            SpaceAnalyzer analyzer = new SpaceAnalyzer(directory, top);
+            analyzer.analyze();
+            out.println(directory + ":");
+            analyzer.print(out);
+            return true;
+        } catch (Exception e) {
+            logger.error("Error analyzing: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean watch(Map<String, String> options, List<String> arguments) {
+        if (arguments.size() != 1) {
+            throw new IllegalArgumentException("Command \"watch\" expects <directory>");
+        }
+        checkOptions(options, "--interval");
+
+        int interval = options.containsKey("--interval") ? parseInt(options.get("--interval"), "--interval") : 5;
+        if (interval < 1) {
+            throw new IllegalArgumentException("Option --interval must be positive");
+        }
+
+        Path directory = Path.of(arguments.get(0));
+        try (DirectorySizeWatcher watcher = new DirectorySizeWatcher(directory)) {
+            watcher.start();
+
+            long printed = -1;
+            while (!Thread.currentThread().isInterrupted()) {
+                long size = watcher.getDirectorySize(directory);
+                if (size != printed) {
+                    out.println(directory + ": " + size + " bytes");
+                    printed = size;
+                }
+                Thread.sleep(interval * 1000L);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (Exception e) {
+            logger.error("Error watching: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean verify(Map<String, String> options, List<String> arguments) {
+        if (arguments.isEmpty() || arguments.size() > 2) {
+            throw new IllegalArgumentException("Command \"verify\" expects <manifest> and optional <directory>");
+        }
+        checkOptions(options, "--parallel");
+
+        int parallelism = options.containsKey("--parallel")
+                ? parseInt(options.get("--parallel"), "--parallel")
+                : Runtime.getRuntime().availableProcessors();
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Option --parallel must be positive");
+        }
+
+        try {
+            Path manifestFile = Path.of(arguments.get(0)).toAbsolutePath();
+            Path directory = arguments.size() == 2 ? Path.of(arguments.get(1)) : manifestFile.getParent();
+
+            ChecksumManifest.VerificationReport report = ChecksumManifest.read(manifestFile).verify(directory, parallelism);
+            report.getFailures().forEach(out::println);
+            if (report.isSuccessful()) {
+                out.println("Verified " + report.getCheckedFiles() + " files: all checksums match");
+            } else {
+                out.println("Verification failed: " + report.getFailures().size() + " of " + report.getCheckedFiles() + " files differ");
+            }
+            return report.isSuccessful();
+        } catch (Exception e) {
+            logger.error("Error verifying: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void close() {
+        copyPools.values().forEach(ExecutorService::shutdown);
+        copyPools.clear();
+    }
+
+    /**
+     * Разделяет аргументы на опции вида "--name value", флаги из {@link #FLAGS} и позиционные аргументы.
+     */
+    private static void parseArguments(List<String> tokens, Map<String, String> options, List<String> arguments) {
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (FLAGS.contains(token)) {
+                options.put(token, "");
+            } else if (token.startsWith("--")) {
+                if (i + 1 >= tokens.size()) {
+                    throw new IllegalArgumentException("Option " + token + " requires a value");
+                }
+                String value = tokens.get(++i);
+                if (REPEATABLE.contains(token)) {
+                    options.merge(token, value, (previous, next) -> previous + '\0' + next);
+                } else {
+                    options.put(token, value);
+                }
+            } else {
+                arguments.add(token);
+            }
+        }
+    }
+
+    private static void checkOptions(Map<String, String> options, String... allowed) {
+        Set<String> unknown = new TreeSet<>(options.keySet());
+        unknown.removeAll(Arrays.asList(allowed));
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + String.join(", ", unknown));
+        }
+    }
+
+    /**
+     * Собирает фильтр элементов из опций фильтра.
+     *
+     * @return фильтр или null, если ни одна опция фильтра не задана
+     */
+    private static EntryFilter parseFilter(Map<String, String> options) {
+        if (Arrays.stream(FILTER_OPTIONS).noneMatch(options::containsKey)) {
+            return null;
+        }
+
+        EntryFilter filter = new EntryFilter();
+        values(options, "--exclude").forEach(filter::exclude);
+        values(options, "--exclude-regex").forEach(filter::excludeRegex);
+        values(options, "--include").forEach(filter::include);
+        values(options, "--include-regex").forEach(filter::includeRegex);
+        if (options.containsKey("--min-size")) {
+            filter.minSize(parseBytes(options.get("--min-size"), "--min-size"));
+        }
+        if (options.containsKey("--max-size")) {
+            filter.maxSize(parseBytes(options.get("--max-size"), "--max-size"));
+        }
+        if (options.containsKey("--newer-than")) {
+            filter.newerThan(parseAge(options.get("--newer-than"), "--newer-than"));
+        }
+        if (options.containsKey("--older-than")) {
+            filter.olderThan(parseAge(options.get("--older-than"), "--older-than"));
+        }
+        return filter;
+    }
+
+    private void printFilter(EntryFilter filter) {
+        if (filter != null) {
+            for (EntryFilter.Rule rule : filter.getRules()) {
+                out.println("Filter " + rule);
+            }
+        }
+    }
+
+    private static List<String> values(Map<String, String> options, String option) {
+        String value = options.get(option);
+        return value != null ? Arrays.asList(value.split("\0")) : List.of();
+    }
+
+    /**
+     * Разбирает возраст с суффиксом s, m, h, d или w, например "30m" или "7d".
+     */
+    static Duration parseAge(String value, String option) {
+        String normalized = value.strip().toLowerCase(Locale.ROOT);
+        if (normalized.length() > 1) {
+            try {
+                long amount = Long.parseLong(normalized.substring(0, normalized.length() - 1));
+                switch (normalized.charAt(normalized.length() - 1)) {
+                    case 's' -> { return Duration.ofSeconds(amount); }
+                    case 'm' -> { return Duration.ofMinutes(amount); }
+                    case 'h' -> { return Duration.ofHours(amount); }
+                    case 'd' -> { return Duration.ofDays(amount); }
+                    case 'w' -> { return Duration.ofDays(Math.multiplyExact(amount, 7)); }
+                    default -> { }
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                // Сообщение об ошибке ниже
+            }
+        }
+        throw new IllegalArgumentException("Option " + option + " must be an age like 30m, 12h or 7d: " + value);
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + option + " must be a number: " + value);
+        }
+    }
+
+    /**
+     * Разбирает размер в байтах с необязательным суффиксом K, M или G.
+     */
+    static long parseBytes(String value, String option) {
+        String normalized = value.strip().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+
+        if (!normalized.isEmpty()) {
+            switch (normalized.charAt(normalized.length() - 1)) {
+                case 'K' -> multiplier = 1024L;
+                case 'M' -> multiplier = 1024L * 1024;
+                case 'G' -> multiplier = 1024L * 1024 * 1024;
+                default -> multiplier = 1;
+            }
+        }
+        if (multiplier != 1) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        try {
+            return Math.multiplyExact(Long.parseLong(normalized), multiplier);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Option " + option + " must be a size like 1048576, 512K, 64M or 2G: " + value);
+        }
+    }
+
+    /**
+     * Разбивает строку манифеста на слова по пробелам. Слова в двойных кавычках могут содержать пробелы.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char symbol = line.charAt(i);
+            if (symbol == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (Character.isWhitespace(symbol) && !quoted) {
+                if (hasToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                current.append(symbol);
+                hasToken = true;
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote in: " + line);
+        }
+        if (hasToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,248 @@
+package org.rzsp.filemanager.functions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Класс, выполняющий задачи копирования файлов в пуле потоков с ограничениями.
+ * Ограничивает суммарный размер копируемых одновременно файлов и количество открытых файловых дескрипторов.
+ * Если ограничение достигнуто, {@link #submit(long, CopyTask)} блокирует вызывающий поток до освобождения ресурсов,
+ * поэтому очередь задач не растет неограниченно.
+ * При параллелизме 1 задачи выполняются сразу в вызывающем потоке.
+ * {@link #close()} не возвращается, пока выполняются отправленные задачи, в том числе в общем пуле,
+ * поэтому после ошибки обхода вызывающий код не продолжает работу параллельно с записью файлов.
+ */
+class BoundedCopyExecutor implements AutoCloseable {
+    private static final int DESCRIPTORS_PER_TASK = 2; // Исходный файл и файл назначения
+
+    /**
+     * Задача копирования, которая может выбросить {@link IOException}.
+     */
+    @FunctionalInterface
+    interface CopyTask {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+    private final long maxInFlightBytes;
+    private final int maxInFlightTasks;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private long inFlightBytes;
+    private int inFlightTasks;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Конструктор класса BoundedCopyExecutor.
+     *
+     * @param parallelism количество потоков копирования
+     * @param maxInFlightBytes максимальный суммарный размер файлов, копируемых одновременно
+     * @param maxOpenFiles максимальное количество открытых файловых дескрипторов
+     */
+    BoundedCopyExecutor(int parallelism, long maxInFlightBytes, int maxOpenFiles) {
+        this(parallelism, maxInFlightBytes, maxOpenFiles, "copy-worker");
+    }
+
+    /**
+     * Конструктор с собственным пулом, потоки которого называются threadName-N.
+     *
+     * @param parallelism количество потоков копирования
+     * @param maxInFlightBytes максимальный суммарный размер файлов, копируемых одновременно
+     * @param maxOpenFiles максимальное количество открытых файловых дескрипторов
+     * @param threadName префикс имен потоков пула
+     */
+    BoundedCopyExecutor(int parallelism, long maxInFlightBytes, int maxOpenFiles, String threadName) {
+        this(parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new CopyThreadFactory(threadName)) : null,
+                true, maxInFlightBytes, maxOpenFiles);
+    }
+
+    /**
+     * Конструктор, выполняющий задачи во внешнем пуле, который не останавливается при {@link #close()}.
+     *
+     * @param sharedPool общий пул потоков копирования
+     * @param maxInFlightBytes максимальный суммарный размер файлов, копируемых одновременно
+     * @param maxOpenFiles максимальное количество открытых файловых дескрипторов
+     */
+    BoundedCopyExecutor(ExecutorService sharedPool, long maxInFlightBytes, int maxOpenFiles) {
+        this(sharedPool, false, maxInFlightBytes, maxOpenFiles);
+    }
+
+    private BoundedCopyExecutor(ExecutorService pool, boolean ownsPool, long maxInFlightBytes, int maxOpenFiles) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.maxInFlightTasks = Math.max(1, maxOpenFiles / DESCRIPTORS_PER_TASK);
+    }
+
+    /**
+     * Отправляет задачу копирования на выполнение.
+     * Файл больше лимита байтов занимает весь лимит и копируется один.
+     *
+     * @param bytes размер копируемого файла
+     * @param task задача копирования
+     * @throws IOException если одна из ранее отправленных задач завершилась с ошибкой
+     */
+    void submit(long bytes, CopyTask task) throws IOException {
+        if (pool == null) {
+            task.run();
+            return;
+        }
+
+        long reservedBytes = Math.min(bytes, maxInFlightBytes);
+        acquire(reservedBytes);
+
+        try {
+            pool.execute(() -> {
+                try {
+                    if (!isClosed()) {
+                        task.run();
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(e instanceof UncheckedIOException unchecked ? unchecked.getCause() : new IOException(e));
+                } finally {
+                    release(reservedBytes);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(reservedBytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Ожидает завершения всех отправленных задач.
+     *
+     * @throws IOException первая ошибка, возникшая в задачах копирования
+     */
+    void awaitCompletion() throws IOException {
+        lock.lock();
+        try {
+            while (inFlightTasks > 0) {
+                released.awaitUninterruptibly();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return количество отправленных и еще не завершенных задач
+     */
+    int getInFlightTasks() {
+        lock.lock();
+        try {
+            return inFlightTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Отменяет задачи, которые еще не начали выполняться, и ожидает завершения выполняемых.
+     * Собственный пул останавливается, общий пул продолжает работать.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            while (inFlightTasks > 0) {
+                released.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (pool != null && ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(long bytes) throws IOException {
+        lock.lock();
+        try {
+            while (failure == null
+                    && (inFlightTasks >= maxInFlightTasks || inFlightBytes + bytes > maxInFlightBytes)) {
+                released.awaitUninterruptibly();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            inFlightBytes += bytes;
+            inFlightTasks++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            inFlightBytes -= bytes;
+            inFlightTasks--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Фабрика именованных daemon-потоков копирования.
+     */
+    private static class CopyThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        CopyThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
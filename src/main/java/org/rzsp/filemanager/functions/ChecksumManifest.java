@@ -0,0 +1,223 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Класс манифеста контрольных сумм дерева файлов.
+ * Манифест - текстовый файл: первая строка "# filemanager checksum manifest: алгоритм",
+ * далее строки "контрольная сумма  относительный путь", как у sha256sum. Записи сортируются по пути.
+ * Записи добавляются потокобезопасно, поэтому манифест заполняется потоками параллельного копирования.
+ */
+public class ChecksumManifest {
+    private static final Logger logger = LogManager.getLogger(ChecksumManifest.class);
+
+    private static final String HEADER = "# filemanager checksum manifest: ";
+    private static final String SEPARATOR = "  ";
+
+    private final ChecksumAlgorithm algorithm;
+    private final Map<String, String> checksums = new ConcurrentSkipListMap<>();
+
+    /**
+     * Конструктор класса ChecksumManifest.
+     *
+     * @param algorithm алгоритм контрольных сумм манифеста
+     * @throws IllegalArgumentException если алгоритм null
+     */
+    public ChecksumManifest(ChecksumAlgorithm algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Checksum algorithm must be not null");
+        }
+
+        this.algorithm = algorithm;
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param relativePath путь файла относительно корня манифеста
+     * @param checksum контрольная сумма в шестнадцатеричном виде
+     */
+    public void add(String relativePath, String checksum) {
+        checksums.put(relativePath, checksum);
+    }
+
+    /**
+     * @return контрольные суммы по относительным путям, отсортированные по пути
+     */
+    public Map<String, String> getChecksums() {
+        return Collections.unmodifiableMap(checksums);
+    }
+
+    /**
+     * Записывает манифест через временный файл, поэтому прерванная запись не оставляет неполный манифест.
+     *
+     * @param file файл манифеста
+     * @throws IOException если манифест не удалось записать
+     */
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + algorithm.getName());
+                writer.newLine();
+                for (Map.Entry<String, String> entry : checksums.entrySet()) {
+                    writer.write(entry.getValue() + SEPARATOR + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        logger.debug("Manifest {} with {} entries is written", file, checksums.size());
+    }
+
+    /**
+     * Читает манифест из файла.
+     *
+     * @param file файл манифеста
+     * @return манифест
+     * @throws IOException если файл не удалось прочитать или он не является манифестом
+     */
+    public static ChecksumManifest read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(HEADER)) {
+                throw new IOException("Not a checksum manifest: " + file);
+            }
+
+            ChecksumAlgorithm algorithm;
+            try {
+                algorithm = ChecksumAlgorithm.fromName(header.substring(HEADER.length()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unsupported manifest " + file + ": " + e.getMessage(), e);
+            }
+
+            ChecksumManifest manifest = new ChecksumManifest(algorithm);
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                int separator = line.indexOf(SEPARATOR);
+                if (separator < 1) {
+                    throw new IOException("Malformed manifest line " + lineNumber + " in " + file);
+                }
+                manifest.add(line.substring(separator + SEPARATOR.length()), line.substring(0, separator));
+            }
+
+            return manifest;
+        }
+    }
+
+    /**
+     * Проверяет дерево файлов по манифесту: заново вычисляет контрольные суммы файлов в нескольких потоках.
+     *
+     * @param baseDirectory корень, относительно которого записаны пути манифеста
+     * @param parallelism количество потоков проверки
+     * @return результат проверки
+     * @throws IOException если проверка была прервана
+     * @throws IllegalArgumentException если количество потоков не положительное
+     */
+    public VerificationReport verify(Path baseDirectory, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<String>> results = new ArrayList<>(checksums.size());
+            for (Map.Entry<String, String> entry : checksums.entrySet()) {
+                results.add(pool.submit(() -> verifyFile(baseDirectory, entry.getKey(), entry.getValue())));
+            }
+
+            List<String> failures = new ArrayList<>();
+            for (Future<String> result : results) {
+                String failure = result.get();
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+
+            return new VerificationReport(checksums.size(), failures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verification was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Verification failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return описание расхождения или null, если файл совпадает с манифестом
+     */
+    private String verifyFile(Path baseDirectory, String relativePath, String expected) {
+        try {
+            String actual = algorithm.checksum(baseDirectory.resolve(relativePath));
+            return actual.equals(expected) ? null : relativePath + ": checksum mismatch";
+        } catch (NoSuchFileException e) {
+            return relativePath + ": missing";
+        } catch (IOException e) {
+            return relativePath + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Результат проверки дерева по манифесту.
+     */
+    public static final class VerificationReport {
+        private final int checkedFiles;
+        private final List<String> failures;
+
+        VerificationReport(int checkedFiles, List<String> failures) {
+            this.checkedFiles = checkedFiles;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        public int getCheckedFiles() {
+            return checkedFiles;
+        }
+
+        /**
+         * @return расхождения в виде "путь: причина" в порядке манифеста
+         */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        public boolean isSuccessful() {
+            return failures.isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.ChecksumCopyEngine;
+import org.rzsp.filemanager.functions.engine.CopyEngineSelector;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.functions.engine.ThrottledCopyEngine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Класс журнала возобновляемого копирования.
+ * Журнал - текстовый файл, в который дописываются записи о полностью скопированных файлах
+ * и контрольные точки копирования больших файлов (сколько байтов уже записано на диск).
+ * Запись содержит размер и mtime исходного файла, поэтому изменившийся после прерывания файл копируется заново.
+ * <p>
+ * При повторном запуске файлы, отмеченные в журнале как скопированные, пропускаются,
+ * если размер исходного файла, его mtime и размер файла назначения совпадают с записью.
+ * Копирование большого файла продолжается с последней контрольной точки.
+ * После успешного завершения всего копирования журнал удаляется.
+ * <p>
+ * Данные больших файлов сбрасываются на диск перед записью контрольной точки, поэтому она переживает и сбой системы.
+ * Для полностью скопированных небольших файлов fsync не выполняется: журнал защищает от завершения процесса и нехватки места.
+ * <p>
+ * Если задано ограничение скорости, токены запрашиваются для каждой части большого файла,
+ * а небольшие файлы копируются через {@link ThrottledCopyEngine}.
+ * <p>
+ * В режиме проверки целостности данные копируются через буферы {@link ChecksumCopyEngine},
+ * и контрольная сумма исходного файла вычисляется при копировании. При продолжении с контрольной точки
+ * уже скопированная часть исходного файла читается только для контрольной суммы.
+ */
+class CopyJournal implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(CopyJournal.class);
+
+    private static final String COMPLETE = "C";
+    private static final String CHECKPOINT = "P";
+    private static final String SEPARATOR = "\t";
+
+    private final Path journalFile;
+    private final Path sourceBase;
+    private final long checkpointInterval;
+    private final CopyThrottle throttle;
+    private final ThrottledCopyEngine throttledEngine;
+    private final ChecksumCopyEngine checksumEngine;
+    private final Map<String, Record> records;
+    private final BufferedWriter writer;
+
+    private long skippedFiles;
+    private long resumedFiles;
+
+    /**
+     * Открывает журнал, загружая записи предыдущего прерванного копирования, если файл журнала существует.
+     *
+     * @param journalFile файл журнала
+     * @param source копируемый файл или директория, пути файлов в журнале хранятся относительно её родителя
+     * @param checkpointInterval количество байтов между контрольными точками копирования большого файла
+     * @param throttle ограничение скорости или null
+     * @param checksumEngine копирование с контрольной суммой или null, если проверка целостности выключена
+     * @throws IOException если журнал не удалось прочитать или открыть для записи
+     */
+    CopyJournal(Path journalFile, Path source, long checkpointInterval, CopyThrottle throttle,
+                ChecksumCopyEngine checksumEngine) throws IOException {
+        this.journalFile = journalFile;
+        this.sourceBase = source.toAbsolutePath().getParent();
+        this.checkpointInterval = checkpointInterval;
+        this.throttle = throttle;
+        this.throttledEngine = throttle != null ? new ThrottledCopyEngine(throttle) : null;
+        this.checksumEngine = checksumEngine;
+        this.records = load(journalFile);
+        this.writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, CREATE, APPEND);
+
+        if (!records.isEmpty()) {
+            logger.info("Resuming copy with journal {}: {} files recorded", journalFile, records.size());
+        }
+    }
+
+    /**
+     * Копирует файл с учетом записей журнала: пропускает уже скопированный, продолжает частично скопированный.
+     *
+     * @param source копируемый файл
+     * @param target файл назначения
+     * @param attributes атрибуты копируемого файла
+     * @param engineSelector выбор стратегии копирования для файлов меньше интервала контрольных точек
+     * @return контрольная сумма исходного файла, вычисленная при копировании,
+     *         или null, если проверка целостности выключена или файл пропущен как уже скопированный
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    String copyFile(Path source, Path target, BasicFileAttributes attributes, CopyEngineSelector engineSelector) throws IOException {
+        String key = sourceBase.relativize(source.toAbsolutePath()).toString();
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+
+        Record record;
+        synchronized (this) {
+            record = records.get(key);
+        }
+        boolean sameSource = record != null && record.size == size && record.modified == modified;
+        long targetSize = Files.exists(target) ? Files.size(target) : -1;
+
+        if (sameSource && record.complete && targetSize == size) {
+            synchronized (this) {
+                skippedFiles++;
+            }
+            return null;
+        }
+
+        String checksum = null;
+        if (size < checkpointInterval && checksumEngine != null) {
+            checksum = checksumEngine.copyWithChecksum(source, target);
+        } else if (size < checkpointInterval && throttledEngine != null) {
+            throttledEngine.copy(source, target);
+        } else if (size < checkpointInterval) {
+            engineSelector.select(size).copy(source, target);
+        } else {
+            long offset = sameSource && !record.complete && targetSize >= record.offset ? record.offset : 0;
+            if (offset > 0) {
+                synchronized (this) {
+                    resumedFiles++;
+                }
+                logger.debug("Resuming {} from byte {}", source, offset);
+            }
+            ChecksumAlgorithm.Hasher hasher = checksumEngine != null ? checksumEngine.getAlgorithm().newHasher() : null;
+            copyWithCheckpoints(source, target, key, size, modified, offset, hasher);
+            checksum = hasher != null ? hasher.digest() : null;
+        }
+
+        append(COMPLETE, key, size, modified, size);
+        return checksum;
+    }
+
+    /**
+     * Удаляет журнал после успешного завершения копирования.
+     *
+     * @throws IOException если журнал не удалось удалить
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    synchronized long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    synchronized long getResumedFiles() {
+        return resumedFiles;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Копирует файл частями по checkpointInterval байтов начиная с offset.
+     * После каждой части данные сбрасываются на диск и в журнал записывается контрольная точка.
+     * Если передан накопитель контрольной суммы, данные копируются через буферы и добавляются к сумме.
+     */
+    private void copyWithCheckpoints(Path source, Path target, String key, long size, long modified, long offset,
+                                     ChecksumAlgorithm.Hasher hasher) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source, READ);
+                FileChannel out = FileChannel.open(target, WRITE, CREATE)
+        ) {
+            out.truncate(offset);
+            out.position(offset);
+            if (hasher != null) {
+                ChecksumAlgorithm.update(hasher, in, offset);
+            }
+
+            long position = offset;
+            while (position < size) {
+                long chunkEnd = Math.min(size, position + checkpointInterval);
+                if (hasher != null) {
+                    if (checksumEngine.transfer(in, out, chunkEnd - position, hasher) < chunkEnd - position) {
+                        throw new IOException("File " + source + " was truncated during copying");
+                    }
+                    position = chunkEnd;
+                }
+                while (position < chunkEnd) {
+                    long length = chunkEnd - position;
+                    if (throttle != null) {
+                        // Между контрольными точками может быть много данных, токены запрашиваются частями
+                        length = Math.min(length, ThrottledCopyEngine.DEFAULT_CHUNK_SIZE);
+                        throttle.acquireBytes(length);
+                    }
+                    long transferred = in.transferTo(position, length, out);
+                    if (transferred <= 0) {
+                        throw new IOException("File " + source + " was truncated during copying");
+                    }
+                    position += transferred;
+                }
+
+                out.force(false);
+                append(CHECKPOINT, key, size, modified, position);
+            }
+        }
+    }
+
+    private synchronized void append(String type, String key, long size, long modified, long offset) throws IOException {
+        writer.write(type + SEPARATOR + size + SEPARATOR + modified + SEPARATOR + offset + SEPARATOR + key);
+        writer.newLine();
+        writer.flush();
+
+        records.put(key, new Record(type.equals(COMPLETE), size, modified, offset));
+    }
+
+    /**
+     * Читает журнал. Последняя запись могла быть записана не полностью при аварийном завершении, такие строки пропускаются.
+     */
+    private static Map<String, Record> load(Path journalFile) throws IOException {
+        Map<String, Record> records = new HashMap<>();
+        if (!Files.exists(journalFile)) {
+            return records;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, 5);
+                if (fields.length != 5 || !(fields[0].equals(COMPLETE) || fields[0].equals(CHECKPOINT))) {
+                    continue;
+                }
+
+                try {
+                    records.put(fields[4], new Record(fields[0].equals(COMPLETE),
+                            Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    logger.warn("Skipping damaged journal line: {}", line);
+                }
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Последняя запись журнала о файле.
+     */
+    private static final class Record {
+        private final boolean complete;
+        private final long size;
+        private final long modified;
+        private final long offset;
+
+        Record(boolean complete, long size, long modified, long offset) {
+            this.complete = complete;
+            this.size = size;
+            this.modified = modified;
+            this.offset = offset;
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+package org.rzsp.filemanager.functions;
+
+import org.rzsp.filemanager.functions.archive.ArchiveFormat;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.CopyEngineSelector;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.functions.engine.DeltaCopyEngine;
+import org.rzsp.filemanager.functions.engine.SmallFileCopyEngine;
+import org.rzsp.filemanager.jobs.JobControl;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+import org.rzsp.filemanager.traversal.EntryFilter;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Класс настроек операции копирования {@link CopyingFile}.
+ * Все настройки имеют значения по умолчанию, сеттеры возвращают this для цепочки вызовов.
+ */
+public class CopyOptions {
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 64L * 1024 * 1024;
+    public static final long DELTA_DISABLED = Long.MAX_VALUE;
+    public static final int DEFAULT_DEDUP_MAX_ENTRIES = 100_000;
+    public static final int SMALL_FILES_DISABLED = 0;
+    // Начиная с порога копирования без буфера маленькие файлы выгоднее копировать обычным путем
+    public static final int MAX_SMALL_FILE_THRESHOLD = (int) CopyEngineSelector.DEFAULT_ZERO_COPY_THRESHOLD;
+    public static final int DEFAULT_SMALL_FILE_PARALLELISM = 16;
+
+    private CopyEngineSelector engineSelector = new CopyEngineSelector();
+    private int parallelism = 1;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private DirectorySizeCache sizeCache;
+    private ExecutorService copyPool;
+    private boolean resumable;
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private boolean sync;
+    private boolean compareContent;
+    private boolean deleteExtraneous;
+    private long deltaThreshold = DELTA_DISABLED;
+    private int deltaBlockSize = DeltaCopyEngine.DEFAULT_BLOCK_SIZE;
+    private boolean dedup;
+    private boolean sparse;
+    private OperationMetrics metrics;
+    private CopyThrottle throttle;
+    private int dedupMaxEntries = DEFAULT_DEDUP_MAX_ENTRIES;
+    private ChecksumAlgorithm checksumAlgorithm;
+    private Path manifestFile;
+    private ArchiveFormat archiveFormat;
+    private int smallFileThreshold = SMALL_FILES_DISABLED;
+    private int smallFileParallelism = DEFAULT_SMALL_FILE_PARALLELISM;
+    private JobControl jobControl;
+    private EntryFilter filter;
+
+    public CopyEngineSelector getEngineSelector() {
+        return engineSelector;
+    }
+
+    /**
+     * @param engineSelector выбор стратегии копирования файла по размеру
+     * @return текущие настройки
+     */
+    public CopyOptions setEngineSelector(CopyEngineSelector engineSelector) {
+        if (engineSelector == null) {
+            throw new IllegalArgumentException("Engine selector must be not null");
+        }
+
+        this.engineSelector = engineSelector;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism количество потоков копирования файлов директории, 1 - последовательное копирование
+     * @return текущие настройки
+     */
+    public CopyOptions setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * @param maxInFlightBytes максимальный суммарный размер файлов, копируемых одновременно в параллельном режиме
+     * @return текущие настройки
+     */
+    public CopyOptions setMaxInFlightBytes(long maxInFlightBytes) {
+        if (maxInFlightBytes < 1) {
+            throw new IllegalArgumentException("Max in-flight bytes must be positive");
+        }
+
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * @param maxOpenFiles максимальное количество файловых дескрипторов, открытых в параллельном режиме
+     * @return текущие настройки
+     */
+    public CopyOptions setMaxOpenFiles(int maxOpenFiles) {
+        if (maxOpenFiles < 2) {
+            throw new IllegalArgumentException("Max open files must be at least 2");
+        }
+
+        this.maxOpenFiles = maxOpenFiles;
+        return this;
+    }
+
+    public DirectorySizeCache getSizeCache() {
+        return sizeCache;
+    }
+
+    /**
+     * @param sizeCache кэш размеров, записи которого сбрасываются для директории назначения после копирования, может быть null
+     * @return текущие настройки
+     */
+    public CopyOptions setSizeCache(DirectorySizeCache sizeCache) {
+        this.sizeCache = sizeCache;
+        return this;
+    }
+
+    public ExecutorService getCopyPool() {
+        return copyPool;
+    }
+
+    /**
+     * Задает общий пул, в котором выполняется параллельное копирование файлов вместо пула, создаваемого на каждую операцию.
+     * Пул не останавливается после копирования. Используется только при параллелизме больше 1.
+     *
+     * @param copyPool общий пул потоков копирования, может быть null
+     * @return текущие настройки
+     */
+    public CopyOptions setCopyPool(ExecutorService copyPool) {
+        this.copyPool = copyPool;
+        return this;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Включает возобновляемое копирование с журналом в директории назначения.
+     * Повторный запуск после сбоя пропускает скопированные файлы и продолжает большие файлы с последней контрольной точки.
+     *
+     * @param resumable true, чтобы вести журнал копирования
+     * @return текущие настройки
+     */
+    public CopyOptions setResumable(boolean resumable) {
+        this.resumable = resumable;
+        return this;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval количество байтов между контрольными точками при возобновляемом копировании большого файла
+     * @return текущие настройки
+     */
+    public CopyOptions setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * Включает режим синхронизации: копируются только новые и изменившиеся файлы,
+     * существующие директории назначения используются повторно, а скопированным файлам
+     * устанавливается время изменения исходных.
+     *
+     * @param sync true, чтобы копировать только изменения
+     * @return текущие настройки
+     */
+    public CopyOptions setSync(boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    public boolean isCompareContent() {
+        return compareContent;
+    }
+
+    /**
+     * @param compareContent true, чтобы в режиме синхронизации сравнивать содержимое файлов вместо времени изменения
+     * @return текущие настройки
+     */
+    public CopyOptions setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+        return this;
+    }
+
+    public boolean isDeleteExtraneous() {
+        return deleteExtraneous;
+    }
+
+    /**
+     * @param deleteExtraneous true, чтобы в режиме синхронизации удалять из назначения элементы, которых нет в источнике
+     * @return текущие настройки
+     */
+    public CopyOptions setDeleteExtraneous(boolean deleteExtraneous) {
+        this.deleteExtraneous = deleteExtraneous;
+        return this;
+    }
+
+    public long getDeltaThreshold() {
+        return deltaThreshold;
+    }
+
+    /**
+     * Включает поблочное обновление существующих копий больших файлов через {@link DeltaCopyEngine}.
+     *
+     * @param deltaThreshold минимальный размер файла в байтах, начиная с которого существующая копия
+     *                       обновляется по блокам, {@link #DELTA_DISABLED} - всегда перезаписывать файл целиком
+     * @return текущие настройки
+     */
+    public CopyOptions setDeltaThreshold(long deltaThreshold) {
+        if (deltaThreshold < 0) {
+            throw new IllegalArgumentException("Delta threshold must be not negative");
+        }
+
+        this.deltaThreshold = deltaThreshold;
+        return this;
+    }
+
+    public int getDeltaBlockSize() {
+        return deltaBlockSize;
+    }
+
+    /**
+     * @param deltaBlockSize размер блока поблочного обновления в байтах
+     * @return текущие настройки
+     */
+    public CopyOptions setDeltaBlockSize(int deltaBlockSize) {
+        if (deltaBlockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.deltaBlockSize = deltaBlockSize;
+        return this;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    /**
+     * Включает дедупликацию: повторные копии файлов с одинаковым содержимым создаются жесткими ссылками
+     * на первую копию. Ссылки разделяют содержимое и атрибуты, поэтому изменение одной копии видно во всех.
+     *
+     * @param dedup true, чтобы заменять дубликаты жесткими ссылками
+     * @return текущие настройки
+     */
+    public CopyOptions setDedup(boolean dedup) {
+        this.dedup = dedup;
+        return this;
+    }
+
+    public int getDedupMaxEntries() {
+        return dedupMaxEntries;
+    }
+
+    /**
+     * @param dedupMaxEntries максимальное количество файлов, запоминаемых для поиска дубликатов
+     * @return текущие настройки
+     */
+    public CopyOptions setDedupMaxEntries(int dedupMaxEntries) {
+        if (dedupMaxEntries < 1) {
+            throw new IllegalArgumentException("Dedup index size must be positive");
+        }
+
+        this.dedupMaxEntries = dedupMaxEntries;
+        return this;
+    }
+
+    public boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     * Включает копирование файлов через {@link org.rzsp.filemanager.functions.engine.SparseCopyEngine}:
+     * файл назначения сразу получает полный размер, а нулевые блоки исходного файла остаются в нём дырами.
+     *
+     * @param sparse true, чтобы сохранять разреженность файлов
+     * @return текущие настройки
+     */
+    public CopyOptions setSparse(boolean sparse) {
+        this.sparse = sparse;
+        return this;
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics метрики, в которые записывается ход копирования, или null, чтобы копирование создало свои
+     * @return текущие настройки
+     */
+    public CopyOptions setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public CopyThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Ограничивает скорость копирования. Один экземпляр можно разделить между несколькими копированиями
+     * и менять его ограничения во время работы.
+     *
+     * @param throttle ограничение байтов и файлов в секунду или null, чтобы копировать без ограничения
+     * @return текущие настройки
+     */
+    public CopyOptions setThrottle(CopyThrottle throttle) {
+        this.throttle = throttle;
+        return this;
+    }
+
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Включает режим проверки целостности: контрольная сумма каждого файла вычисляется во время копирования
+     * через {@link org.rzsp.filemanager.functions.engine.ChecksumCopyEngine}, а после копирования
+     * записывается манифест {@link ChecksumManifest}.
+     *
+     * @param checksumAlgorithm алгоритм контрольных сумм или null, чтобы не вычислять их
+     * @return текущие настройки
+     */
+    public CopyOptions setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+        return this;
+    }
+
+    public Path getManifestFile() {
+        return manifestFile;
+    }
+
+    /**
+     * @param manifestFile файл манифеста контрольных сумм или null, чтобы записать манифест
+     *                     в директорию назначения рядом с копией
+     * @return текущие настройки
+     */
+    public CopyOptions setManifestFile(Path manifestFile) {
+        this.manifestFile = manifestFile;
+        return this;
+    }
+
+    public ArchiveFormat getArchiveFormat() {
+        return archiveFormat;
+    }
+
+    /**
+     * Включает запись копии в архив вместо дерева файлов: файлы читаются один раз и сразу сжимаются параллельно.
+     * Не сочетается с возобновлением, синхронизацией, поблочным обновлением, дедупликацией,
+     * сохранением разреженности и проверкой целостности.
+     *
+     * @param archiveFormat формат архива или null, чтобы копировать дерево файлов
+     * @return текущие настройки
+     */
+    public CopyOptions setArchiveFormat(ArchiveFormat archiveFormat) {
+        this.archiveFormat = archiveFormat;
+        return this;
+    }
+
+    public int getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
+    /**
+     * Включает быстрый путь для деревьев из множества маленьких файлов.
+     * Файлы не больше порога копируются через {@link SmallFileCopyEngine} за одно чтение и одну запись,
+     * группами по директориям в отдельном пуле из {@link #getSmallFileParallelism()} потоков.
+     * Остальные файлы копируются как обычно. Буфер каждого потока пула имеет размер порога,
+     * поэтому порог ограничен {@link #MAX_SMALL_FILE_THRESHOLD}.
+     *
+     * @param smallFileThreshold максимальный размер маленького файла в байтах, {@link #SMALL_FILES_DISABLED} - выключить
+     * @return текущие настройки
+     * @throws IllegalArgumentException если порог отрицательный или больше {@link #MAX_SMALL_FILE_THRESHOLD}
+     */
+    public CopyOptions setSmallFileThreshold(int smallFileThreshold) {
+        if (smallFileThreshold < 0) {
+            throw new IllegalArgumentException("Small file threshold must be not negative");
+        }
+        if (smallFileThreshold > MAX_SMALL_FILE_THRESHOLD) {
+            throw new IllegalArgumentException("Small file threshold must be at most " + MAX_SMALL_FILE_THRESHOLD + " bytes");
+        }
+
+        this.smallFileThreshold = smallFileThreshold;
+        return this;
+    }
+
+    public int getSmallFileParallelism() {
+        return smallFileParallelism;
+    }
+
+    /**
+     * @param smallFileParallelism количество потоков пула маленьких файлов. Копирование маленьких файлов
+     *                             упирается в открытие и создание файлов, а не в пропускную способность диска,
+     *                             поэтому потоков обычно больше, чем процессоров
+     * @return текущие настройки
+     */
+    public CopyOptions setSmallFileParallelism(int smallFileParallelism) {
+        if (smallFileParallelism < 1) {
+            throw new IllegalArgumentException("Small file parallelism must be positive");
+        }
+
+        this.smallFileParallelism = smallFileParallelism;
+        return this;
+    }
+
+    public JobControl getJobControl() {
+        return jobControl;
+    }
+
+    /**
+     * Задает управление паузой и отменой копирования, проверяемое перед копированием каждого файла.
+     *
+     * @param jobControl управление задачей или null, если копирование нельзя приостановить и отменить
+     * @return текущие настройки
+     */
+    public CopyOptions setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+        return this;
+    }
+
+    public EntryFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Задает фильтр элементов копируемой директории: исключенные файлы не копируются,
+     * исключенные директории не читаются и не создаются в назначении.
+     * При синхронизации с удалением копии исключенных элементов в назначении не удаляются.
+     *
+     * @param filter фильтр элементов или null, чтобы копировать всё
+     * @return текущие настройки
+     */
+    public CopyOptions setFilter(EntryFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+}
@@ -2,11 +2,33 @@ package org.rzsp.filemanager.functions;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.archive.ArchiveFormat;
+import org.rzsp.filemanager.functions.archive.ArchiveWriter;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.ChecksumCopyEngine;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.functions.engine.DeltaCopyEngine;
+import org.rzsp.filemanager.functions.engine.SmallFileCopyEngine;
+import org.rzsp.filemanager.functions.engine.SparseCopyEngine;
+import org.rzsp.filemanager.functions.engine.ThrottledCopyEngine;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+import org.rzsp.filemanager.traversal.EntryVisitor;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.rzsp.filemanager.validators.CopyingFileValidator.*;
 
@@ -16,11 +38,31 @@ import static org.rzsp.filemanager.validators.CopyingFileValidator.*;
  */
 public class CopyingFile {
     private static final Logger logger = LogManager.getLogger(CopyingFile.class);
-
-    private static final int BUFFER_SIZE = 8192; // Размер буфера для копирования файла
+    private static final int SMALL_FILE_BATCH_SIZE = 64; // Количество маленьких файлов одной директории в одной задаче
 
     private final File sourceFileOrDirectory;
     private final File destinationDirectory;
+    private final CopyOptions options;
+    private final TreeWalker walker;
+    private final DeltaCopyEngine deltaEngine;
+    private final SparseCopyEngine sparseEngine;
+    private final OperationMetrics metrics;
+    private final CopyThrottle throttle; // Ограничение скорости, null если скорость не ограничена
+    private final ThrottledCopyEngine throttledEngine;
+    private final ChecksumCopyEngine checksumEngine; // Копирование с контрольной суммой, null если проверка целостности выключена
+    private final ChecksumCopyEngine hashingEngine; // Копирование через буферы для манифеста или дедупликации, null если оба выключены
+    private final SmallFileCopyEngine smallFileEngine; // Копирование маленьких файлов, null если быстрый путь выключен
+
+    private CopyJournal journal; // Журнал возобновляемого копирования, null если режим выключен
+    private DedupIndex dedupIndex; // Индекс содержимого скопированных файлов, null если дедупликация выключена
+    private ChecksumManifest manifest; // Контрольные суммы копий, null если проверка целостности выключена
+
+    private final LongAdder copiedFiles = new LongAdder();
+    private final LongAdder unchangedFiles = new LongAdder();
+    private final LongAdder deletedEntries = new LongAdder();
+    private final LongAdder linkedFiles = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder smallFiles = new LongAdder();
 
     /**
      * Конструктор класса CopyingFile.
@@ -31,8 +73,47 @@ public class CopyingFile {
      * @throws IllegalArgumentException если копируемая директория совпадает с директорией назначения
      */
     public CopyingFile(String pathToSourceFile, String pathToDestinationDirectory) throws IOException {
+        this(pathToSourceFile, pathToDestinationDirectory, new CopyOptions());
+    }
+
+    /**
+     * Конструктор класса CopyingFile с настройками копирования.
+     *
+     * @param pathToSourceFile путь к копируемогу файлу/директории
+     * @param pathToDestinationDirectory путь к директории назначения
+     * @param options настройки копирования
+     * @throws IOException если произошла ошибка ввода
+     * @throws IllegalArgumentException если копируемая директория совпадает с директорией назначения, настройки null
+     *                                  или режим архива сочетается с несовместимыми настройками
+     */
+    public CopyingFile(String pathToSourceFile, String pathToDestinationDirectory, CopyOptions options) throws IOException {
         logger.debug("Initializing copying file constructor");
 
+        if (options == null) {
+            throw new IllegalArgumentException("Copy options must be not null");
+        }
+        if (options.getArchiveFormat() != null && (options.isResumable() || options.isSync() || options.isDedup()
+                || options.isSparse() || options.getDeltaThreshold() != CopyOptions.DELTA_DISABLED || options.getChecksumAlgorithm() != null)) {
+            throw new IllegalArgumentException("Archive mode can not be combined with resume, sync, delta, dedup, sparse or verify options");
+        }
+        this.options = options;
+        this.walker = new TreeWalker(new TraversalStatistics(), options.getFilter());
+        this.metrics = options.getMetrics() != null ? options.getMetrics() : new OperationMetrics("copy");
+        metrics.addTraversal(walker.getStatistics());
+        this.throttle = options.getThrottle();
+        this.throttledEngine = throttle != null ? new ThrottledCopyEngine(throttle) : null;
+        this.deltaEngine = new DeltaCopyEngine(options.getDeltaBlockSize(), throttle);
+        this.sparseEngine = new SparseCopyEngine(SparseCopyEngine.DEFAULT_BLOCK_SIZE, throttle);
+        this.checksumEngine = options.getChecksumAlgorithm() != null
+                ? new ChecksumCopyEngine(options.getChecksumAlgorithm(), throttle)
+                : null;
+        this.hashingEngine = checksumEngine == null && options.isDedup()
+                ? new ChecksumCopyEngine(DedupIndex.ALGORITHM, throttle)
+                : checksumEngine;
+        this.smallFileEngine = options.getSmallFileThreshold() != CopyOptions.SMALL_FILES_DISABLED
+                ? new SmallFileCopyEngine(options.getSmallFileThreshold())
+                : null;
+
         this.sourceFileOrDirectory = validateSourceFileOrDirectoryAndGetFile(pathToSourceFile);
         this.destinationDirectory = validateTargetDirectoryAndGetFile(pathToDestinationDirectory);
 
@@ -48,82 +129,679 @@ public class CopyingFile {
      * Определяет тип копируемого объекта и вызывает соотвествующий метод копирования.
      *
      * @throws IOException если копируемый объект не является файлом или директорией
-     * @see #copyFile(File, File)
-     * @see #copyDirectory(File, File)
+     * @see #copyFile(Path, Path, BasicFileAttributes)
+     * @see #copyDirectory(Path, Path, BoundedCopyExecutor, BoundedCopyExecutor)
      */
     public void copy() throws IOException {
         logger.debug("Starting copy");
 
-        if (sourceFileOrDirectory.isFile()) {
-            copyFile(sourceFileOrDirectory, destinationDirectory);
-        } else if (sourceFileOrDirectory.isDirectory()) {
-            copyDirectory(sourceFileOrDirectory, destinationDirectory);
-        } else {
-            throw new IOException("Unsupported file type: " + sourceFileOrDirectory);
+        Path source = sourceFileOrDirectory.toPath();
+        BasicFileAttributes attributes = walker.readAttributes(source);
+
+        if (options.isResumable()) {
+            journal = new CopyJournal(journalFile(), source, options.getCheckpointInterval(), throttle, checksumEngine);
+        }
+        if (options.isDedup()) {
+            dedupIndex = new DedupIndex(options.getDedupMaxEntries());
+        }
+        if (checksumEngine != null) {
+            manifest = new ChecksumManifest(checksumEngine.getAlgorithm());
+        }
+
+        try {
+            if (options.getArchiveFormat() != null && attributes != null && (attributes.isRegularFile() || attributes.isDirectory())) {
+                archive(source, attributes);
+            } else if (attributes != null && attributes.isRegularFile()) {
+                copyFile(source, destinationDirectory.toPath(), attributes);
+            } else if (attributes != null && attributes.isDirectory()) {
+                logger.debug("Copying directory with parallelism {}", options.getParallelism());
+
+                try (
+                        BoundedCopyExecutor executor = createExecutor();
+                        BoundedCopyExecutor smallFileExecutor = createSmallFileExecutor()
+                ) {
+                    metrics.setQueueDepth(smallFileExecutor == null
+                            ? executor::getInFlightTasks
+                            : () -> executor.getInFlightTasks() + smallFileExecutor.getInFlightTasks());
+                    copyDirectory(source, destinationDirectory.toPath(), executor, smallFileExecutor);
+                    executor.awaitCompletion();
+                    if (smallFileExecutor != null) {
+                        smallFileExecutor.awaitCompletion();
+                    }
+                } finally {
+                    metrics.setQueueDepth(null);
+                }
+            } else {
+                throw new IOException("Unsupported file type: " + sourceFileOrDirectory);
+            }
+
+            if (manifest != null) {
+                Path manifestFile = manifestFile();
+                manifest.write(manifestFile);
+                logger.info("Checksums of {} files are written to {}", manifest.getChecksums().size(), manifestFile);
+            }
+            if (journal != null) {
+                logger.debug("Resumable copy: {} files skipped, {} files resumed", journal.getSkippedFiles(), journal.getResumedFiles());
+                journal.delete();
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+
+            // Даже частичное копирование меняет размеры директории назначения и её родителей
+            if (options.getSizeCache() != null) {
+                options.getSizeCache().invalidate(destinationDirectory.toPath());
+            }
+        }
+
+        if (deltaEngine.getMatchedBlocks() + deltaEngine.getRewrittenBlocks() > 0) {
+            logger.info("Delta copy of {}: {} blocks matched, {} blocks rewritten",
+                    sourceFileOrDirectory, deltaEngine.getMatchedBlocks(), deltaEngine.getRewrittenBlocks());
+        }
+        if (throttle != null) {
+            logger.info("Copy of {} was throttled for {} ms in total", sourceFileOrDirectory, throttle.getThrottledNanos() / 1_000_000);
+        }
+        if (sparseEngine.getSkippedBytes() > 0) {
+            logger.info("Sparse copy of {}: {} bytes of zero blocks left as holes", sourceFileOrDirectory, sparseEngine.getSkippedBytes());
+        }
+        if (dedupIndex != null) {
+            logger.info("Dedup of {}: {} files linked, {} bytes saved, {} files hashed",
+                    sourceFileOrDirectory, linkedFiles.sum(), savedBytes.sum(), dedupIndex.getHashedFiles());
+        }
+        if (smallFileEngine != null) {
+            logger.info("Small files of {}: {} files handled in batches", sourceFileOrDirectory, smallFiles.sum());
+        }
+        if (walker.getFilter() != null) {
+            logger.info("Filter of {}: {}", sourceFileOrDirectory, walker.getFilter());
+        }
+        if (options.isSync()) {
+            logger.info("Sync of {}: {} files copied, {} unchanged, {} extraneous entries deleted",
+                    sourceFileOrDirectory, copiedFiles.sum(), unchangedFiles.sum(), deletedEntries.sum());
+        }
+        logger.debug("Copying is ended successfully. {}. Traversal: {}", metrics, walker.getStatistics());
+    }
+
+    /**
+     * Записывает копию в архив {@link #getArchiveFile()} за один проход: обход дерева и чтение файлов идут в текущем потоке,
+     * части данных сжимаются в общем пуле из настроек, если он задан, иначе в собственном пуле на все процессоры.
+     * Незавершенный архив удаляется.
+     */
+    private void archive(Path source, BasicFileAttributes attributes) throws IOException {
+        Path archive = getArchiveFile();
+        boolean sharedPool = options.getParallelism() > 1 && options.getCopyPool() != null;
+        int parallelism = sharedPool ? options.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = sharedPool ? options.getCopyPool() : Executors.newFixedThreadPool(parallelism);
+        logger.debug("Archiving {} to {} with {} compression threads", source, archive, parallelism);
+
+        // Пути в архиве начинаются с имени копируемого объекта, как и при обычном копировании
+        Path base = source.toAbsolutePath().getParent();
+        boolean completed = false;
+
+        try (ArchiveWriter writer = options.getArchiveFormat().open(archive, pool, parallelism, throttle)) {
+            if (attributes.isRegularFile()) {
+                archiveFile(writer, base, source, attributes);
+            } else {
+                walker.walk(source, new EntryVisitor() {
+
+                    @Override
+                    public boolean enterDirectory(Path directory, BasicFileAttributes directoryAttributes) throws IOException {
+                        writer.addDirectory(entryName(base, directory), directoryAttributes);
+                        metrics.recordDirectory(0, -1);
+                        return true;
+                    }
+
+                    @Override
+                    public void visitFile(Path file, BasicFileAttributes fileAttributes) throws IOException {
+                        archiveFile(writer, base, file, fileAttributes);
+                    }
+
+                });
+            }
+            completed = true;
+        } finally {
+            if (!sharedPool) {
+                pool.shutdown();
+            }
+            if (!completed) {
+                Files.deleteIfExists(archive);
+            }
+        }
+
+        logger.info("Archived {} files of {} to {}", copiedFiles.sum(), sourceFileOrDirectory, archive);
+    }
+
+    private void archiveFile(ArchiveWriter writer, Path base, Path file, BasicFileAttributes attributes) throws IOException {
+        if (options.getJobControl() != null) {
+            options.getJobControl().checkpoint();
+        }
+        if (throttle != null) {
+            throttle.acquireFile();
+        }
+        long start = System.nanoTime();
+
+        writer.addFile(entryName(base, file), file, attributes);
+
+        copiedFiles.increment();
+        metrics.recordFile(attributes.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * @return путь элемента в архиве относительно base с разделителем '/'
+     */
+    private static String entryName(Path base, Path path) {
+        Path relative = base != null ? base.relativize(path.toAbsolutePath()) : path.getFileName();
+        return relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Возвращает файл архива в режиме архива: файл в директории назначения с именем копируемого объекта.
+     * Например: при копировании /home/user/example/someDirectory в /home/user/test в формате zip
+     * архив - /home/user/test/someDirectory.zip
+     *
+     * @return файл архива или null, если режим архива выключен
+     */
+    public Path getArchiveFile() {
+        ArchiveFormat format = options.getArchiveFormat();
+        return format != null ? destinationDirectory.toPath().resolve(sourceFileOrDirectory.getName() + format.getExtension()) : null;
+    }
+
+    /**
+     * Создает исполнителя задач копирования файлов: в общем пуле из настроек, если он задан, иначе в собственном пуле.
+     * Если включен быстрый путь маленьких файлов, исполнителю достается часть лимитов, оставшаяся после пула маленьких файлов.
+     */
+    private BoundedCopyExecutor createExecutor() {
+        long maxInFlightBytes = Math.max(1, options.getMaxInFlightBytes() - smallFileInFlightBytes());
+        int maxOpenFiles = Math.max(2, options.getMaxOpenFiles() - smallFileOpenFiles());
+        if (options.getParallelism() > 1 && options.getCopyPool() != null) {
+            return new BoundedCopyExecutor(options.getCopyPool(), maxInFlightBytes, maxOpenFiles);
         }
 
-        logger.debug("Copying is ended successfully");
+        return new BoundedCopyExecutor(options.getParallelism(), maxInFlightBytes, maxOpenFiles);
+    }
+
+    /**
+     * Создает отдельный пул для групп маленьких файлов. Лимиты размера копируемых данных и открытых файлов
+     * делятся поровну с основным исполнителем, чтобы вместе они не превышали настройки.
+     *
+     * @return исполнитель групп маленьких файлов или null, если быстрый путь выключен
+     */
+    private BoundedCopyExecutor createSmallFileExecutor() {
+        if (smallFileEngine == null) {
+            return null;
+        }
+
+        return new BoundedCopyExecutor(options.getSmallFileParallelism(), smallFileInFlightBytes(),
+                smallFileOpenFiles(), "small-file-worker");
+    }
+
+    /**
+     * @return доля лимита размера копируемых данных для пула маленьких файлов или 0, если быстрый путь выключен
+     */
+    private long smallFileInFlightBytes() {
+        return smallFileEngine != null ? Math.max(1, options.getMaxInFlightBytes() / 2) : 0;
+    }
+
+    /**
+     * @return доля лимита открытых файлов для пула маленьких файлов или 0, если быстрый путь выключен
+     */
+    private int smallFileOpenFiles() {
+        return smallFileEngine != null ? Math.max(2, options.getMaxOpenFiles() / 2) : 0;
+    }
+
+    /**
+     * Возвращает файл журнала возобновляемого копирования: скрытый файл в директории назначения рядом с копией.
+     * Например: при копировании /home/user/example/someDirectory в /home/user/test журнал - /home/user/test/.someDirectory.copy-journal
+     */
+    private Path journalFile() {
+        return destinationDirectory.toPath().resolve("." + sourceFileOrDirectory.getName() + ".copy-journal");
+    }
+
+    /**
+     * Возвращает файл манифеста контрольных сумм: из настроек, если он задан, иначе файл в директории назначения
+     * рядом с копией. Например: при копировании /home/user/example/someDirectory в /home/user/test
+     * с алгоритмом SHA-256 манифест - /home/user/test/someDirectory.sha256
+     */
+    private Path manifestFile() {
+        if (options.getManifestFile() != null) {
+            return options.getManifestFile();
+        }
+        return destinationDirectory.toPath().resolve(sourceFileOrDirectory.getName() + "." + manifest.getAlgorithm().getName());
+    }
+
+    /**
+     * @return манифест контрольных сумм копий или null, если проверка целостности выключена
+     */
+    public ChecksumManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return счетчики обхода дерева при копировании
+     */
+    public TraversalStatistics getTraversalStatistics() {
+        return walker.getStatistics();
+    }
+
+    /**
+     * @return метрики копирования: из настроек, если они заданы, иначе собственные
+     */
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return количество скопированных файлов
+     */
+    public long getCopiedFiles() {
+        return copiedFiles.sum();
+    }
+
+    /**
+     * @return количество блоков, совпавших с существующими копиями при поблочном обновлении
+     */
+    public long getMatchedBlocks() {
+        return deltaEngine.getMatchedBlocks();
+    }
+
+    /**
+     * @return количество блоков, перезаписанных при поблочном обновлении
+     */
+    public long getRewrittenBlocks() {
+        return deltaEngine.getRewrittenBlocks();
+    }
+
+    /**
+     * @return количество байтов нулевых блоков, оставленных дырами при копировании разреженных файлов
+     */
+    public long getSparseBytes() {
+        return sparseEngine.getSkippedBytes();
+    }
+
+    /**
+     * @return количество файлов, созданных жесткой ссылкой на копию с тем же содержимым,
+     *         в том числе замененных ссылкой после копирования
+     */
+    public long getLinkedFiles() {
+        return linkedFiles.sum();
+    }
+
+    /**
+     * @return количество байтов, которые не занимают место в назначении благодаря дедупликации
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * @return количество файлов, пропущенных в режиме синхронизации как неизменные
+     */
+    public long getUnchangedFiles() {
+        return unchangedFiles.sum();
+    }
+
+    /**
+     * @return количество файлов и директорий, удаленных из назначения в режиме синхронизации
+     */
+    public long getDeletedEntries() {
+        return deletedEntries.sum();
+    }
+
+    /**
+     * @return количество файлов, обработанных группами быстрого пути маленьких файлов
+     */
+    public long getSmallFiles() {
+        return smallFiles.sum();
     }
 
     /**
      * Копирует файл в указанную директорию назначения.
+     * Длительность копирования и размер файла записываются в метрики.
+     * Стратегия копирования выбирается по размеру файла через {@link CopyOptions#getEngineSelector()}.
+     * В режиме синхронизации неизменный файл пропускается, при дедупликации дубликат создается жесткой ссылкой.
+     * Существующая копия большого файла обновляется по блокам через {@link DeltaCopyEngine},
+     * в возобновляемом режиме копирование выполняется через журнал {@link CopyJournal},
+     * а в режиме сохранения разреженности - через {@link SparseCopyEngine}.
+     * В режиме проверки целостности контрольная сумма исходного файла добавляется в манифест с путем относительно директории назначения.
+     * Скопированные, обновленные по блокам, разреженные и скопированные через журнал файлы хешируются
+     * по данным, прочитанным при копировании. Для пропущенных при синхронизации или по журналу
+     * и связанных при дедупликации файлов данные не копируются, поэтому читается исходный файл:
+     * манифест всегда описывает источник, и последующая проверка копии обнаружит её расхождение с ним.
+     * В режимах синхронизации, возобновления, поблочного обновления и дедупликации существующая копия,
+     * связанная жесткой ссылкой с другими файлами, перед записью отсоединяется,
+     * чтобы запись на месте не изменила связанные с ней копии.
      *
      * @param copiedFile копируемый файл
      * @param directoryToCopy директория назначения, куда копируется copiedFileOrDirectory
+     * @param attributes атрибуты копируемого файла, уже прочитанные при обходе
      * @throws IOException если происходит ошибка ввода и вывода
      */
-    private void copyFile(File copiedFile, File directoryToCopy) throws IOException {
+    private void copyFile(Path copiedFile, Path directoryToCopy, BasicFileAttributes attributes) throws IOException {
+        if (options.getJobControl() != null) {
+            options.getJobControl().checkpoint();
+        }
+        if (throttle != null) {
+            throttle.acquireFile();
+        }
+        long start = System.nanoTime();
+
+        String checksum = transferFile(copiedFile, directoryToCopy, attributes);
+
+        if (manifest != null) {
+            Path destinationToCopy = directoryToCopy.resolve(copiedFile.getFileName());
+            // Пропущенные и связанные файлы не копировались: сумма копии подтвердила бы только саму копию, поэтому читается источник
+            if (checksum == null) {
+                checksum = manifest.getAlgorithm().checksum(copiedFile);
+            }
+            manifest.add(destinationDirectory.toPath().relativize(destinationToCopy).toString(), checksum);
+        }
+        metrics.recordFile(attributes.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Переносит содержимое файла выбранным способом.
+     *
+     * @return контрольная сумма, вычисленная при копировании, или null, если файл не копировался или проверка целостности выключена
+     * @see #copyFile(Path, Path, BasicFileAttributes)
+     */
+    private String transferFile(Path copiedFile, Path directoryToCopy, BasicFileAttributes attributes) throws IOException {
         /*
          * Создает файл назначения, куда будет копироваться исходный файл
          * Например: Копируем /home/user/example/text.txt в /home/user/test
-         *           Код создаст /home/user/test/text.txt, где destinationToCopy -> /home/user/test, а copiedFileOrDirectory.getName() -> text.txt
+         *           Код создаст /home/user/test/text.txt, где destinationToCopy -> /home/user/test, а copiedFileOrDirectory.getFileName() -> text.txt
          */
-        File destinationToCopy = new File(directoryToCopy, copiedFile.getName());
+        Path destinationToCopy = directoryToCopy.resolve(copiedFile.getFileName());
+
+        if (options.isSync() && FileSync.isUpToDate(copiedFile, attributes, destinationToCopy, options.isCompareContent())) {
+            unchangedFiles.increment();
+            return null;
+        }
+
+        DedupIndex.Lookup lookup = null;
+        if (dedupIndex != null && attributes.size() > 0) {
+            lookup = dedupIndex.lookup(copiedFile, attributes.size());
+            if (lookup.getDuplicate() != null && canLink(lookup.getDuplicate(), attributes)
+                    && link(lookup.getDuplicate(), destinationToCopy)) {
+                linkedFiles.increment();
+                savedBytes.add(attributes.size());
+                return null;
+            }
+        }
 
-        try (
-                FileInputStream in = new FileInputStream(copiedFile);
-                FileOutputStream out = new FileOutputStream(destinationToCopy)
-        ) {
-            byte[] buffer = new byte[BUFFER_SIZE];
+        // Копия могла быть создана жесткой ссылкой при дедупликации, в том числе предыдущим запуском.
+        // Проверяется в режимах, которые работают с существующими копиями, чтобы обычное копирование не делало лишний stat
+        if (reusesTargets() && isHardLinked(destinationToCopy)) {
+            detach(destinationToCopy, journal != null || attributes.size() >= options.getDeltaThreshold());
+        }
 
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+        String checksum = null;
+        // Хеш для дедупликации считается в тех же буферах, что и копирование; журнал копирует без него
+        ChecksumAlgorithm.Hasher dedupHasher = DedupIndex.needsCopiedDigest(lookup) ? DedupIndex.ALGORITHM.newHasher() : null;
+        boolean dedupHashed = dedupHasher != null;
+        if (attributes.size() >= options.getDeltaThreshold() && Files.isRegularFile(destinationToCopy)) {
+            // Поблочное обновление само по себе возобновляемо: повторный запуск пропустит уже совпавшие блоки
+            ChecksumAlgorithm.Hasher hasher = newHasher();
+            deltaEngine.copy(copiedFile, destinationToCopy, ChecksumAlgorithm.tee(hasher, dedupHasher));
+            checksum = hasher != null ? hasher.digest() : null;
+        } else if (journal != null) {
+            checksum = journal.copyFile(copiedFile, destinationToCopy, attributes, options.getEngineSelector());
+            dedupHashed = false;
+        } else if (options.isSparse() && attributes.size() >= sparseEngine.getBlockSize()) {
+            ChecksumAlgorithm.Hasher hasher = newHasher();
+            sparseEngine.copy(copiedFile, destinationToCopy, ChecksumAlgorithm.tee(hasher, dedupHasher));
+            checksum = hasher != null ? hasher.digest() : null;
+        } else if (checksumEngine != null || dedupHasher != null) {
+            ChecksumAlgorithm.Hasher hasher = newHasher();
+            hashingEngine.copy(copiedFile, destinationToCopy, ChecksumAlgorithm.tee(hasher, dedupHasher));
+            checksum = hasher != null ? hasher.digest() : null;
+        } else if (throttledEngine != null) {
+            throttledEngine.copy(copiedFile, destinationToCopy);
+        } else if (smallFileEngine != null && attributes.size() <= smallFileEngine.getMaxFileSize()) {
+            smallFileEngine.copy(copiedFile, destinationToCopy, attributes.size());
+        } else {
+            options.getEngineSelector()
+                    .select(attributes.size())
+                    .copy(copiedFile, destinationToCopy);
+        }
+
+        // Копии устанавливается время изменения исходного файла, по нему следующая синхронизация определит, что файл не менялся
+        if (options.isSync()) {
+            Files.setLastModifiedTime(destinationToCopy, attributes.lastModifiedTime());
+        }
+        if (lookup != null) {
+            Path duplicate = dedupIndex.register(attributes.size(), lookup, destinationToCopy,
+                    dedupHashed ? dedupHasher.digest() : null);
+            // Содержимое совпало с запомненной копией того же размера: место копии освобождается ссылкой на неё
+            if (duplicate != null && canLink(duplicate, attributes) && relink(duplicate, destinationToCopy)) {
+                linkedFiles.increment();
+                savedBytes.add(attributes.size());
+                return checksum;
             }
         }
+        copiedFiles.increment();
+        return checksum;
+    }
+
+    /**
+     * @return накопитель контрольной суммы для манифеста или null, если проверка целостности выключена
+     */
+    private ChecksumAlgorithm.Hasher newHasher() {
+        return manifest != null ? manifest.getAlgorithm().newHasher() : null;
+    }
+
+    /**
+     * Проверяет, что дубликат можно использовать для жесткой ссылки.
+     * У связанных файлов общее время изменения, поэтому в режиме синхронизации ссылка создается, только если
+     * время изменения дубликата совпадает с временем исходного файла: иначе следующая синхронизация
+     * считала бы ссылку измененной и копировала бы файл каждый раз.
+     */
+    private boolean canLink(Path duplicate, BasicFileAttributes attributes) throws IOException {
+        return !options.isSync() || Files.getLastModifiedTime(duplicate).to(TimeUnit.MILLISECONDS)
+                == attributes.lastModifiedTime().to(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true, если копирование работает с уже существующими копиями в назначении
+     */
+    private boolean reusesTargets() {
+        return options.isSync() || journal != null || dedupIndex != null || options.getDeltaThreshold() != CopyOptions.DELTA_DISABLED;
+    }
+
+    /**
+     * @return true, если у файла больше одной жесткой ссылки. Количество ссылок доступно только в Unix,
+     *         на других системах возвращает false
+     */
+    private static boolean isHardLinked(Path file) {
+        try {
+            return Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS) instanceof Integer links && links > 1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return false; // Файла нет или количество ссылок недоступно
+        }
+    }
 
+    /**
+     * Отсоединяет копию от связанных с ней жесткой ссылкой файлов.
+     *
+     * @param target копия
+     * @param keepContent true, если содержимое копии нужно сохранить: поблочное обновление и журнал
+     *                    переиспользуют уже записанные данные. Иначе копия просто удаляется
+     */
+    private static void detach(Path target, boolean keepContent) throws IOException {
+        if (!keepContent) {
+            Files.delete(target);
+            return;
+        }
+
+        Path temporary = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".detach");
+        try {
+            Files.copy(target, temporary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Заменяет готовую копию жесткой ссылкой на другую копию с тем же содержимым.
+     * Ссылка создается под временным именем и переименовывается поверх копии,
+     * поэтому при ошибке копия остается на месте.
+     *
+     * @param existing копия, на которую создается ссылка
+     * @param copy заменяемая копия
+     * @return false, если ссылку создать не удалось и копия оставлена
+     */
+    private boolean relink(Path existing, Path copy) throws IOException {
+        Path temporary = copy.resolveSibling("." + copy.getFileName() + ".link");
+        try {
+            Files.deleteIfExists(temporary);
+            Files.createLink(temporary, existing);
+            Files.move(temporary, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Cannot replace {} with a link to {}: {}", copy, existing, e.getMessage());
+            Files.deleteIfExists(temporary);
+            return false;
+        }
+    }
+
+    /**
+     * Создает файл назначения жесткой ссылкой на копию с тем же содержимым.
+     * Java не предоставляет API для reflink, поэтому используются жесткие ссылки.
+     *
+     * @param existing готовая копия с тем же содержимым
+     * @param link создаваемый файл назначения
+     * @return false, если файловая система не поддерживает жесткие ссылки и файл нужно скопировать
+     */
+    private boolean link(Path existing, Path link) {
+        try {
+            Files.deleteIfExists(link);
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Cannot link {} to {}, copying instead: {}", link, existing, e.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Рекурсирвно (если директория содержит в себе директорию/директории) копирует содержимое указанной директории в директорию назначения.
+     * Копирует содержимое указанной директории в директорию назначения, обходя дерево через {@link TreeWalker}.
+     * Директории создаются в текущем потоке в порядке обхода дерева, а копирование файлов отправляется в executor,
+     * поэтому к моменту копирования файла его директория назначения уже существует.
+     * Если включен быстрый путь маленьких файлов, такие файлы собираются в группы по директории назначения
+     * и группа копируется одной задачей в smallFileExecutor: на файл не приходится отдельная задача с резервированием лимитов.
+     * Элементы, исключенные фильтром из настроек, пропускает сам обходчик, исключенные директории не создаются.
      *
      * @param copiedDirectory копируемая директория
      * @param destinationToCopy директория назначения, куда копируется copiedDirectory
+     * @param executor исполнитель задач копирования файлов
+     * @param smallFileExecutor исполнитель групп маленьких файлов или null, если быстрый путь выключен
      * @throws IOException ошибка ввода-вывода
      */
-    private void copyDirectory(File copiedDirectory, File destinationToCopy) throws IOException {
-        /*
-         * Создает директорию назначения, куда будет копироваться исходная директория
-         * Например: мы копируем /home/user/example/someDirectory в /home/user/test
-         *           Код создаст /home/user/test/someDirectory, где destinationToCopy -> /home/user/test, а copiedFileOrDirectory.getName() -> someDirectory
-         */
-        File newDirectoryToCopy = new File(destinationToCopy, copiedDirectory.getName());
-        // Создаем директорию на устройстве
-        if (!newDirectoryToCopy.mkdir()) {
-            throw new IOException("Failed to create directory: " + newDirectoryToCopy);
-        }
-
-        File[] directoryFiles = copiedDirectory.listFiles();
-        if (directoryFiles != null) {
-            for (File file : directoryFiles) {
-                if (file.isFile()) {
-                    copyFile(file, newDirectoryToCopy);
-                } else if (file.isDirectory()) {
-                    copyDirectory(file, newDirectoryToCopy);
+    private void copyDirectory(Path copiedDirectory, Path destinationToCopy, BoundedCopyExecutor executor,
+                               BoundedCopyExecutor smallFileExecutor) throws IOException {
+        // Стек директорий назначения: на вершине директория, куда копируются файлы текущей директории обхода
+        Deque<Path> targetDirectories = new ArrayDeque<>();
+        // Незаполненные группы маленьких файлов, по одной на каждую директорию стека
+        Deque<SmallFileBatch> batches = new ArrayDeque<>();
+        boolean reuseDirectories = journal != null || options.isSync();
+
+        walker.walk(copiedDirectory, new EntryVisitor() {
+
+            @Override
+            public boolean enterDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                /*
+                 * Создает директорию назначения, куда будет копироваться исходная директория
+                 * Например: мы копируем /home/user/example/someDirectory в /home/user/test
+                 *           Код создаст /home/user/test/someDirectory, где destinationToCopy -> /home/user/test, а directory.getFileName() -> someDirectory
+                 */
+                Path parent = targetDirectories.isEmpty() ? destinationToCopy : targetDirectories.peek();
+                Path newDirectoryToCopy = parent.resolve(directory.getFileName());
+
+                // Создаем директорию на устройстве. При возобновлении и синхронизации директория может уже существовать
+                try {
+                    if (!reuseDirectories || !Files.isDirectory(newDirectoryToCopy)) {
+                        Files.createDirectory(newDirectoryToCopy);
+                    }
+                } catch (IOException e) {
+                    throw new IOException("Failed to create directory: " + newDirectoryToCopy, e);
+                }
+
+                targetDirectories.push(newDirectoryToCopy);
+                if (smallFileExecutor != null) {
+                    batches.push(new SmallFileBatch(newDirectoryToCopy));
+                }
+                metrics.recordDirectory(0, -1);
+                return true;
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Path newDirectoryToCopy = targetDirectories.peek();
+
+                if (smallFileExecutor != null && attributes.size() <= smallFileEngine.getMaxFileSize()) {
+                    SmallFileBatch batch = batches.peek();
+                    if (batch.add(file, attributes)) {
+                        batches.pop();
+                        batches.push(new SmallFileBatch(newDirectoryToCopy));
+                        submitBatch(smallFileExecutor, batch);
+                    }
+                    return;
+                }
+
+                executor.submit(attributes.size(), () -> copyFile(file, newDirectoryToCopy, attributes));
+            }
+
+            @Override
+            public void exitDirectory(Path directory) throws IOException {
+                Path newDirectoryToCopy = targetDirectories.pop();
+                if (smallFileExecutor != null) {
+                    SmallFileBatch batch = batches.pop();
+                    if (batch.count > 0) {
+                        submitBatch(smallFileExecutor, batch);
+                    }
+                }
+
+                if (options.isSync() && options.isDeleteExtraneous()) {
+                    deletedEntries.add(FileSync.deleteExtraneous(directory, newDirectoryToCopy, walker));
                 }
             }
+
+        });
+    }
+
+    private void submitBatch(BoundedCopyExecutor smallFileExecutor, SmallFileBatch batch) throws IOException {
+        smallFileExecutor.submit(batch.bytes, () -> {
+            for (int i = 0; i < batch.count; i++) {
+                copyFile(batch.files[i], batch.targetDirectory, batch.attributes[i]);
+                smallFiles.increment();
+            }
+        });
+    }
+
+    /**
+     * Группа маленьких файлов одной директории, копируемая одной задачей.
+     */
+    private static final class SmallFileBatch {
+        private final Path targetDirectory;
+        private final Path[] files = new Path[SMALL_FILE_BATCH_SIZE];
+        private final BasicFileAttributes[] attributes = new BasicFileAttributes[SMALL_FILE_BATCH_SIZE];
+        private int count;
+        private long bytes;
+
+        SmallFileBatch(Path targetDirectory) {
+            this.targetDirectory = targetDirectory;
         }
 
+        /**
+         * @return true, если группа заполнена и её нужно отправить
+         */
+        boolean add(Path file, BasicFileAttributes fileAttributes) {
+            files[count] = file;
+            attributes[count] = fileAttributes;
+            count++;
+            bytes += fileAttributes.size();
+            return count == SMALL_FILE_BATCH_SIZE;
+        }
     }
 
 }
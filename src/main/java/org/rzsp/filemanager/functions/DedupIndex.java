@@ -0,0 +1,221 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс индекса содержимого уже скопированных файлов для дедупликации при копировании директории.
+ * <p>
+ * Сначала файлы сравниваются по размеру: первый файл каждого размера запоминается без хеширования.
+ * Второй файл того же размера копируется с вычислением SHA-256 в буферах копирования, после чего хешируется
+ * ранее запомненная копия; при совпадении свежая копия заменяется жесткой ссылкой. Файлы размера, для которого
+ * уже есть хешированные записи, хешируются до копирования, чтобы при совпадении не копировать их вовсе.
+ * Поэтому файлы с уникальным размером не читаются повторно.
+ * <p>
+ * Хешируются всегда копии, на которые создаются ссылки, а не их исходные файлы:
+ * исходный файл мог измениться после копирования, и ссылка на копию со старым содержимым испортила бы назначение.
+ * Хеширование выполняется в потоках копирования, параллельно с копированием других файлов, буферы берутся из пула.
+ * <p>
+ * Индекс ограничен количеством записей: при переполнении вытесняются давно не использованные.
+ * Вытеснение только уменьшает экономию - вытесненное содержимое при повторной встрече копируется заново.
+ * Методы потокобезопасны.
+ */
+class DedupIndex {
+    private static final Logger logger = LogManager.getLogger(DedupIndex.class);
+
+    static final ChecksumAlgorithm ALGORITHM = ChecksumAlgorithm.SHA256;
+
+    private final Map<ContentKey, Path> entries; // Копии по содержимому
+    private final Map<Long, Integer> hashedSizes = new HashMap<>(); // Количество хешированных записей каждого размера
+
+    private final LongAdder hashedFiles = new LongAdder();
+
+    /**
+     * Конструктор класса DedupIndex.
+     *
+     * @param maxEntries максимальное количество запоминаемых файлов
+     */
+    DedupIndex(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContentKey, Path> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+
+                forget(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Ищет уже скопированный файл с тем же содержимым.
+     * Исходный файл хешируется, только если уже есть хешированные копии того же размера.
+     *
+     * @param source копируемый файл
+     * @param size размер копируемого файла
+     * @return результат поиска, который после копирования файла передается в {@link #register}
+     * @throws IOException если не удалось прочитать файл при хешировании
+     */
+    Lookup lookup(Path source, long size) throws IOException {
+        Path pending;
+        synchronized (this) {
+            pending = entries.remove(new ContentKey(size, null));
+            if (pending == null && !hasHashedSize(size)) {
+                return new Lookup(null, null, null); // Файлов такого размера еще не было, хешировать не нужно
+            }
+        }
+
+        if (pending != null) {
+            // Второй файл этого размера: его хеш посчитается при копировании, запомненная копия хешируется в register
+            return new Lookup(null, null, pending);
+        }
+
+        String digest = hash(source);
+        synchronized (this) {
+            return new Lookup(entries.get(new ContentKey(size, digest)), digest, null);
+        }
+    }
+
+    /**
+     * Запоминает скопированный файл.
+     * Если при поиске был найден запомненный нехешированный файл того же размера, хешируется его копия,
+     * и при совпадении содержимого возвращается она: свежую копию можно заменить ссылкой на неё.
+     *
+     * @param size размер файла
+     * @param lookup результат {@link #lookup} для этого файла
+     * @param target готовая копия файла
+     * @param copiedDigest хеш {@link #ALGORITHM}, вычисленный при копировании, или null, если файл копировался без него
+     * @return копия с тем же содержимым, найденная после копирования, или null
+     * @throws IOException если не удалось прочитать копию при хешировании
+     */
+    Path register(long size, Lookup lookup, Path target, String copiedDigest) throws IOException {
+        String digest = lookup.digest != null ? lookup.digest : copiedDigest;
+
+        if (lookup.pending != null) {
+            String pendingDigest = hash(lookup.pending);
+            synchronized (this) {
+                put(new ContentKey(size, pendingDigest), lookup.pending);
+            }
+            if (digest == null) {
+                digest = hash(target);
+            }
+            if (digest.equals(pendingDigest)) {
+                return lookup.pending;
+            }
+        } else if (digest == null) {
+            synchronized (this) {
+                if (!hasHashedSize(size)) {
+                    put(new ContentKey(size, null), target);
+                    return null;
+                }
+            }
+
+            // Пока файл копировался, файлы этого размера начали хешироваться
+            digest = hash(target);
+        }
+
+        synchronized (this) {
+            put(new ContentKey(size, digest), target);
+        }
+        return null;
+    }
+
+    /**
+     * @return true, если хеш файла нужно вычислить при копировании и передать в {@link #register}
+     */
+    static boolean needsCopiedDigest(Lookup lookup) {
+        return lookup != null && lookup.pending != null;
+    }
+
+    /**
+     * @return количество хешированных файлов
+     */
+    long getHashedFiles() {
+        return hashedFiles.sum();
+    }
+
+    private boolean hasHashedSize(long size) {
+        return hashedSizes.containsKey(size);
+    }
+
+    private void put(ContentKey key, Path target) {
+        if (entries.putIfAbsent(key, target) == null && key.digest != null) {
+            hashedSizes.merge(key.size, 1, Integer::sum);
+        }
+    }
+
+    private void forget(ContentKey key) {
+        if (key.digest != null) {
+            hashedSizes.computeIfPresent(key.size, (size, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private String hash(Path file) throws IOException {
+        String digest = ALGORITHM.checksum(file);
+        hashedFiles.increment();
+        logger.trace("Hashed {}", file);
+        return digest;
+    }
+
+    /**
+     * Результат поиска дубликата: найденная копия с тем же содержимым, хеш исходного файла, если он вычислялся,
+     * и запомненная копия того же размера, которую нужно сравнить с файлом после копирования.
+     */
+    static final class Lookup {
+        private final Path duplicate;
+        private final String digest;
+        private final Path pending;
+
+        private Lookup(Path duplicate, String digest, Path pending) {
+            this.duplicate = duplicate;
+            this.digest = digest;
+            this.pending = pending;
+        }
+
+        /**
+         * @return копия файла с тем же содержимым или null, если такой нет
+         */
+        Path getDuplicate() {
+            return duplicate;
+        }
+    }
+
+    /**
+     * Ключ содержимого: размер и хеш, хеш равен null для еще не хешированного файла.
+     */
+    private static final class ContentKey {
+        private final long size;
+        private final String digest;
+
+        ContentKey(long size, String digest) {
+            this.size = size;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ContentKey)) {
+                return false;
+            }
+            ContentKey key = (ContentKey) other;
+            return size == key.size && Objects.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(size) + Objects.hashCode(digest);
+        }
+    }
+
+}
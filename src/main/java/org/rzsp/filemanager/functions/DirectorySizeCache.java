@@ -0,0 +1,196 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс кэша размеров директорий в памяти, общий для всех операций одного процесса.
+ * Оборачивает другой {@link DirectorySizeProvider} и запоминает его результаты.
+ * <p>
+ * Запись считается устаревшей, если изменилось mtime директории. Так как mtime меняется только при изменении
+ * состава самой директории, {@link CopyingFile} после записи сбрасывает записи директории назначения и её родителей
+ * через {@link #invalidate(Path)}.
+ * <p>
+ * Размер записи - итог всего поддерева, а проверяется только mtime самой директории, поэтому файлы, созданные
+ * или измененные во вложенных директориях другими процессами, кэш не замечает. Проверка mtime всех директорий
+ * поддерева не помогает с файлами, выросшими на месте, и стоит почти как новый обход. Поэтому кэш включается явно
+ * там, где директории меняет только этот процесс, а точные размеры по умолчанию вычисляются обходом.
+ * <p>
+ * Объем кэша ограничен оценкой занимаемой памяти, при превышении вытесняются давно не использованные записи (LRU).
+ */
+public class DirectorySizeCache implements DirectorySizeProvider {
+    private static final Logger logger = LogManager.getLogger(DirectorySizeCache.class);
+
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 16L * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128; // Узел LinkedHashMap, объекты Path и Entry
+    private static final long UNKNOWN_MODIFIED = Long.MIN_VALUE;
+
+    private final DirectorySizeProvider delegate;
+    private final long maxMemoryBytes;
+
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedMemoryBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Конструктор с ограничением памяти по умолчанию {@link #DEFAULT_MAX_MEMORY_BYTES}.
+     *
+     * @param delegate источник размеров при промахе кэша
+     */
+    public DirectorySizeCache(DirectorySizeProvider delegate) {
+        this(delegate, DEFAULT_MAX_MEMORY_BYTES);
+    }
+
+    /**
+     * Конструктор класса DirectorySizeCache.
+     *
+     * @param delegate источник размеров при промахе кэша
+     * @param maxMemoryBytes примерный максимальный объем памяти, занимаемый записями кэша
+     */
+    public DirectorySizeCache(DirectorySizeProvider delegate, long maxMemoryBytes) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate size provider must be not null");
+        }
+        if (maxMemoryBytes < 1) {
+            throw new IllegalArgumentException("Max cache memory must be positive");
+        }
+
+        this.delegate = delegate;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Возвращает размер директории из кэша, если mtime директории не изменилось, иначе вычисляет его заново.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @return размер директории в байтах
+     */
+    @Override
+    public long getDirectorySize(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        long modified = readModified(key);
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && modified != UNKNOWN_MODIFIED && entry.modified == modified) {
+                hits++;
+                return entry.size;
+            }
+            misses++;
+        }
+
+        // Вычисляем без блокировки, чтобы долгий обход не останавливал другие запросы к кэшу
+        long size = delegate.getDirectorySize(directory);
+
+        if (modified != UNKNOWN_MODIFIED) {
+            put(key, new Entry(size, modified, ENTRY_OVERHEAD_BYTES + 2L * key.toString().length()));
+        }
+        return size;
+    }
+
+    /**
+     * Удаляет записи директории, всех её поддиректорий и всех её родителей,
+     * так как их размеры изменились после записи в директорию.
+     *
+     * @param directory директория, в которую выполнялась запись
+     */
+    public synchronized void invalidate(Path directory) {
+        Path changed = directory.toAbsolutePath().normalize();
+        int removed = 0;
+
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Entry> entry = iterator.next();
+            Path cached = entry.getKey();
+            if (cached.startsWith(changed) || changed.startsWith(cached)) {
+                usedMemoryBytes -= entry.getValue().memoryBytes;
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        logger.debug("Size cache invalidated {} entries for {}", removed, changed);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses, %d entries, %d evictions", hits, misses, entries.size(), evictions);
+    }
+
+    private synchronized void put(Path key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedMemoryBytes -= previous.memoryBytes;
+        }
+        usedMemoryBytes += entry.memoryBytes;
+
+        // В порядке доступа первой идет давно не использованная запись
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedMemoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            usedMemoryBytes -= iterator.next().memoryBytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static long readModified(Path directory) {
+        try {
+            return Files.readAttributes(directory, BasicFileAttributes.class)
+                    .lastModifiedTime()
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return UNKNOWN_MODIFIED;
+        }
+    }
+
+    @Override
+    public TraversalStatistics getTraversalStatistics() {
+        return delegate.getTraversalStatistics();
+    }
+
+    /**
+     * Запись кэша: размер директории и её mtime на момент вычисления.
+     */
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final long memoryBytes;
+
+        Entry(long size, long modified, long memoryBytes) {
+            this.size = size;
+            this.modified = modified;
+            this.memoryBytes = memoryBytes;
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package org.rzsp.filemanager.functions;
+
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Класс, параллельно вычисляющий размер директории в {@link ForkJoinPool}.
+ * Каждая поддиректория обрабатывается отдельной задачей, а большие директории дополнительно делятся на части.
+ * Размеры хранятся в примитивных полях задач, поэтому суммирование не создает объектов {@link Long}.
+ * Элементы читаются через {@link TreeWalker}: один stat на элемент.
+ * Если у обходчика задан фильтр, исключенные файлы не учитываются, а исключенные поддиректории не читаются.
+ */
+public class DirectorySizeCalculator implements DirectorySizeProvider {
+    static final int SPLIT_THRESHOLD = 256; // Максимальное количество элементов директории в одной задаче
+
+    private final ForkJoinPool pool;
+    private final TreeWalker walker;
+
+    /**
+     * Конструктор, использующий общий пул {@link ForkJoinPool#commonPool()}.
+     */
+    public DirectorySizeCalculator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Конструктор класса DirectorySizeCalculator.
+     *
+     * @param pool пул, в котором выполняется обход
+     */
+    public DirectorySizeCalculator(ForkJoinPool pool) {
+        this(pool, new TreeWalker());
+    }
+
+    /**
+     * Конструктор класса DirectorySizeCalculator с заданным обходчиком.
+     *
+     * @param pool пул, в котором выполняется обход
+     * @param walker обходчик, через который читаются директории и атрибуты
+     */
+    public DirectorySizeCalculator(ForkJoinPool pool, TreeWalker walker) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Fork-join pool must be not null");
+        }
+        if (walker == null) {
+            throw new IllegalArgumentException("Tree walker must be not null");
+        }
+
+        this.pool = pool;
+        this.walker = walker;
+    }
+
+    public TreeWalker getWalker() {
+        return walker;
+    }
+
+    /**
+     * Возвращает суммарный размер всех файлов директории и её поддиректорий.
+     * Нечитаемые директории считаются пустыми.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @return размер директории в байтах
+     */
+    @Override
+    public long getDirectorySize(Path directory) {
+        return getDirectorySize(directory, directory);
+    }
+
+    /**
+     * Возвращает размер поддиректории обхода, начатого в root: шаблоны путей фильтра сравниваются с путями относительно root.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @param root корень обхода
+     * @return размер директории в байтах
+     */
+    long getDirectorySize(Path directory, Path root) {
+        SizeTask task = new SizeTask(walker, root, directory);
+        pool.invoke(task);
+        return task.size;
+    }
+
+    @Override
+    public TraversalStatistics getTraversalStatistics() {
+        return walker.getStatistics();
+    }
+
+    /**
+     * Задача подсчета размера части элементов директории.
+     * Если задача создана для директории, она сама получает список её элементов.
+     */
+    private static final class SizeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeWalker walker;
+        private final Path root;
+        private final Path directory;
+        private Path[] entries;
+        private final int from;
+        private int to;
+
+        private long size;
+        private SizeTask next; // Связный список дочерних задач, чтобы не создавать коллекцию на каждую директорию
+
+        SizeTask(TreeWalker walker, Path root, Path directory) {
+            this.walker = walker;
+            this.root = root;
+            this.directory = directory;
+            this.from = 0;
+        }
+
+        SizeTask(TreeWalker walker, Path root, Path[] entries, int from, int to) {
+            this.walker = walker;
+            this.root = root;
+            this.directory = null;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (directory != null) {
+                entries = walker.listDirectory(directory);
+                if (entries == null) {
+                    return;
+                }
+                to = entries.length;
+            }
+
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                SizeTask left = new SizeTask(walker, root, entries, from, middle);
+                SizeTask right = new SizeTask(walker, root, entries, middle, to);
+                invokeAll(left, right);
+                size = left.size + right.size;
+                return;
+            }
+
+            SizeTask subtasks = null;
+            long filesSize = 0;
+
+            for (int i = from; i < to; i++) {
+                BasicFileAttributes attributes = walker.readAttributes(entries[i]);
+                if (attributes == null || !walker.accept(root, entries[i], attributes)) {
+                    continue;
+                }
+
+                if (attributes.isDirectory()) {
+                    SizeTask subtask = new SizeTask(walker, root, entries[i]);
+                    subtask.next = subtasks;
+                    subtasks = subtask;
+                    subtask.fork();
+                } else if (attributes.isRegularFile()) {
+                    filesSize += attributes.size();
+                }
+            }
+
+            for (SizeTask subtask = subtasks; subtask != null; subtask = subtask.next) {
+                subtask.join();
+                filesSize += subtask.size;
+            }
+
+            size = filesSize;
+        }
+    }
+
+}
@@ -0,0 +1,425 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс постоянного индекса размеров директорий.
+ * Для каждой директории хранит время изменения (mtime), суммарный размер её собственных файлов,
+ * количество элементов, агрегированные размер и количество элементов поддерева, а также список поддиректорий.
+ * <p>
+ * При повторном запросе директория перечитывается, только если изменилось её mtime, то есть в ней были созданы,
+ * удалены или переименованы элементы. Для неизмененных директорий выполняется один stat, а размер берется из индекса.
+ * Итоги пересчитываются снизу вверх до запрошенной директории.
+ * <p>
+ * Поддиректория уже проиндексированного дерева берется из этого дерева, а при запросе родителя сохраненных деревьев
+ * они становятся поддеревьями нового корня, поэтому одна директория не сканируется и не хранится дважды.
+ * <p>
+ * Изменение содержимого файла на месте не меняет mtime директории, поэтому такие изменения индекс не замечает
+ * до следующего изменения самой директории.
+ * <p>
+ * Индекс хранится в компактном двоичном файле и сохраняется через {@link #save()}.
+ */
+public class DirectorySizeIndex implements DirectorySizeProvider {
+    private static final Logger logger = LogManager.getLogger(DirectorySizeIndex.class);
+
+    private static final int MAGIC = 0x46_4D_53_49; // "FMSI"
+    private static final int VERSION = 1;
+    private static final long NOT_SCANNED = Long.MIN_VALUE;
+
+    private final Path indexFile;
+    private final TreeWalker walker;
+    private final Map<String, Node> roots = new HashMap<>();
+
+    private long rescannedDirectories;
+    private long reusedDirectories;
+
+    /**
+     * Конструктор класса DirectorySizeIndex.
+     * Если файл индекса существует, загружает его.
+     *
+     * @param indexFile файл индекса
+     * @throws IOException если файл индекса не удалось прочитать или он поврежден
+     */
+    public DirectorySizeIndex(Path indexFile) throws IOException {
+        this(indexFile, new TreeWalker());
+    }
+
+    /**
+     * Конструктор класса DirectorySizeIndex с заданным обходчиком.
+     *
+     * @param indexFile файл индекса
+     * @param walker обходчик, через который читаются директории и атрибуты
+     * @throws IOException если файл индекса не удалось прочитать или он поврежден
+     */
+    public DirectorySizeIndex(Path indexFile, TreeWalker walker) throws IOException {
+        if (indexFile == null) {
+            throw new IllegalArgumentException("Index file must be not null");
+        }
+        if (walker == null) {
+            throw new IllegalArgumentException("Tree walker must be not null");
+        }
+
+        this.indexFile = indexFile;
+        this.walker = walker;
+
+        if (Files.exists(indexFile)) {
+            load();
+        }
+    }
+
+    /**
+     * Возвращает размер директории, перечитывая только директории с изменившимся mtime.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @return размер директории в байтах или 0, если директорию не удалось прочитать
+     */
+    @Override
+    public synchronized long getDirectorySize(Path directory) {
+        Node node = refresh(directory);
+        return node == null ? 0 : node.totalSize;
+    }
+
+    /**
+     * Возвращает количество файлов и директорий в поддереве, перечитывая только директории с изменившимся mtime.
+     *
+     * @param directory директория
+     * @return количество элементов поддерева или 0, если директорию не удалось прочитать
+     */
+    public synchronized long getEntryCount(Path directory) {
+        Node node = refresh(directory);
+        return node == null ? 0 : node.totalEntries;
+    }
+
+    public synchronized long getRescannedDirectories() {
+        return rescannedDirectories;
+    }
+
+    public synchronized long getReusedDirectories() {
+        return reusedDirectories;
+    }
+
+    /**
+     * Атомарно сохраняет индекс в файл: сначала во временный файл рядом, затем переименованием.
+     *
+     * @throws IOException если индекс не удалось записать
+     */
+    public synchronized void save() throws IOException {
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(roots.size());
+            for (Map.Entry<String, Node> root : roots.entrySet()) {
+                out.writeUTF(root.getKey());
+                writeNode(out, root.getValue());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Directory size index is saved to {}", indexFile);
+    }
+
+    private Node refresh(Path directory) {
+        Path absolute = directory.toAbsolutePath().normalize();
+        Node node = findOrCreate(absolute);
+        if (node == null) {
+            return null;
+        }
+
+        long rescannedBefore = rescannedDirectories;
+        long reusedBefore = reusedDirectories;
+        boolean exists = refresh(absolute, node);
+        logger.debug("Index refresh of {}: {} directories rescanned, {} reused",
+                absolute, rescannedDirectories - rescannedBefore, reusedDirectories - reusedBefore);
+
+        if (!exists) {
+            roots.remove(absolute.toString());
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Находит узел директории в сохраненном дереве, которое её содержит, или создает новый корень.
+     * Если узла еще нет в дереве, директории на пути к нему перечитываются при изменившемся mtime.
+     * Сохраненные деревья внутри нового корня переносятся в него.
+     *
+     * @return узел директории или null, если директории нет в содержащем её дереве
+     */
+    private Node findOrCreate(Path absolute) {
+        for (Map.Entry<String, Node> root : roots.entrySet()) {
+            Path rootPath = Path.of(root.getKey());
+            if (absolute.startsWith(rootPath)) {
+                return find(rootPath, root.getValue(), absolute);
+            }
+        }
+
+        Node root = new Node(absolute.toString());
+        List<String> nested = new ArrayList<>();
+        for (String rootPath : roots.keySet()) {
+            if (Path.of(rootPath).startsWith(absolute)) {
+                nested.add(rootPath);
+            }
+        }
+        for (String rootPath : nested) {
+            adopt(root, absolute.relativize(Path.of(rootPath)), roots.remove(rootPath));
+            logger.debug("Index tree of {} is moved under {}", rootPath, absolute);
+        }
+
+        roots.put(absolute.toString(), root);
+        return root;
+    }
+
+    private Node find(Path rootPath, Node root, Path absolute) {
+        Node node = root;
+        Path current = rootPath;
+        for (Path name : rootPath.relativize(absolute)) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+
+            Node child = node.child(name.toString());
+            if (child == null && rescanIfModified(current, node)) {
+                child = node.child(name.toString());
+            }
+            if (child == null) {
+                return null;
+            }
+            node = child;
+            current = current.resolve(name);
+        }
+        return node;
+    }
+
+    /**
+     * Перечитывает только сам узел, если mtime директории изменилось. Итоги узла пересчитываются при его запросе.
+     *
+     * @return true, если директория была перечитана
+     */
+    private boolean rescanIfModified(Path directory, Node node) {
+        BasicFileAttributes attributes = walker.readAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            return false;
+        }
+
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (node.modified == modified) {
+            return false;
+        }
+        rescan(directory, node);
+        node.modified = modified;
+        rescannedDirectories++;
+        return true;
+    }
+
+    /**
+     * Переносит сохраненное дерево в новый корень. Промежуточные директории создаются непросканированными,
+     * при их сканировании уже известные поддиревья сохраняются.
+     */
+    private static void adopt(Node root, Path relative, Node subtree) {
+        Node parent = root;
+        for (int i = 0; i < relative.getNameCount() - 1; i++) {
+            String name = relative.getName(i).toString();
+            Node child = parent.child(name);
+            if (child == null) {
+                child = new Node(name);
+                parent.children.add(child);
+            }
+            parent = child;
+        }
+
+        Node moved = new Node(relative.getFileName().toString());
+        moved.modified = subtree.modified;
+        moved.filesSize = subtree.filesSize;
+        moved.entryCount = subtree.entryCount;
+        moved.totalSize = subtree.totalSize;
+        moved.totalEntries = subtree.totalEntries;
+        moved.children.addAll(subtree.children);
+        parent.children.add(moved);
+    }
+
+    /**
+     * Обновляет узел и его поддерево.
+     *
+     * @return false, если директория больше не существует
+     */
+    private boolean refresh(Path directory, Node node) {
+        BasicFileAttributes attributes = walker.readAttributes(directory);
+        if (attributes == null || !attributes.isDirectory()) {
+            return false;
+        }
+
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (node.modified != modified) {
+            rescan(directory, node);
+            node.modified = modified;
+            rescannedDirectories++;
+        } else {
+            reusedDirectories++;
+        }
+
+        long totalSize = node.filesSize;
+        long totalEntries = node.entryCount;
+
+        List<Node> removed = null;
+        for (Node child : node.children) {
+            if (refresh(directory.resolve(child.name), child)) {
+                totalSize += child.totalSize;
+                totalEntries += child.totalEntries;
+            } else {
+                if (removed == null) {
+                    removed = new ArrayList<>();
+                }
+                removed.add(child);
+            }
+        }
+        if (removed != null) {
+            node.children.removeAll(removed);
+            node.modified = NOT_SCANNED; // Состав директории изменился без изменения её mtime, перечитаем в следующий раз
+        }
+
+        node.totalSize = totalSize;
+        node.totalEntries = totalEntries;
+        return true;
+    }
+
+    /**
+     * Перечитывает элементы директории: суммирует размеры файлов и обновляет список поддиректорий,
+     * сохраняя узлы уже известных поддиректорий.
+     */
+    private void rescan(Path directory, Node node) {
+        Path[] entries = walker.listDirectory(directory);
+
+        Map<String, Node> previousChildren = new HashMap<>();
+        for (Node child : node.children) {
+            previousChildren.put(child.name, child);
+        }
+
+        node.children.clear();
+        node.filesSize = 0;
+        node.entryCount = 0;
+
+        if (entries == null) {
+            return;
+        }
+
+        for (Path entry : entries) {
+            BasicFileAttributes attributes = walker.readAttributes(entry);
+            if (attributes == null) {
+                continue;
+            }
+
+            if (attributes.isDirectory()) {
+                String name = entry.getFileName().toString();
+                Node child = previousChildren.get(name);
+                node.children.add(child != null ? child : new Node(name));
+                node.entryCount++;
+            } else if (attributes.isRegularFile()) {
+                node.filesSize += attributes.size();
+                node.entryCount++;
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("File " + indexFile + " is not a directory size index");
+            }
+            if (in.readInt() != VERSION) {
+                logger.info("Directory size index {} has unsupported version and will be rebuilt", indexFile);
+                return;
+            }
+
+            int rootCount = in.readInt();
+            for (int i = 0; i < rootCount; i++) {
+                String rootPath = in.readUTF();
+                roots.put(rootPath, readNode(in));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Directory size index " + indexFile + " is truncated", e);
+        }
+
+        logger.debug("Directory size index is loaded from {}", indexFile);
+    }
+
+    private static void writeNode(DataOutputStream out, Node node) throws IOException {
+        out.writeUTF(node.name);
+        out.writeLong(node.modified);
+        out.writeLong(node.filesSize);
+        out.writeInt(node.entryCount);
+        out.writeLong(node.totalSize);
+        out.writeLong(node.totalEntries);
+        out.writeInt(node.children.size());
+        for (Node child : node.children) {
+            writeNode(out, child);
+        }
+    }
+
+    private static Node readNode(DataInputStream in) throws IOException {
+        Node node = new Node(in.readUTF());
+        node.modified = in.readLong();
+        node.filesSize = in.readLong();
+        node.entryCount = in.readInt();
+        node.totalSize = in.readLong();
+        node.totalEntries = in.readLong();
+
+        int childCount = in.readInt();
+        for (int i = 0; i < childCount; i++) {
+            node.children.add(readNode(in));
+        }
+        return node;
+    }
+
+    @Override
+    public TraversalStatistics getTraversalStatistics() {
+        return walker.getStatistics();
+    }
+
+    /**
+     * Узел индекса, соответствующий одной директории.
+     */
+    private static final class Node {
+        private final String name;
+        private long modified = NOT_SCANNED;
+        private long filesSize;     // Размер файлов, лежащих непосредственно в директории
+        private int entryCount;     // Количество файлов и поддиректорий непосредственно в директории
+        private long totalSize;     // Размер всего поддерева
+        private long totalEntries;  // Количество элементов всего поддерева
+        private final List<Node> children = new ArrayList<>();
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        Node child(String name) {
+            for (Node child : children) {
+                if (child.name.equals(name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.rzsp.filemanager.functions;
+
+/**
+ * Интерфейс получателя результатов {@link GetSizeOfDirectory#calculateSizes(DirectorySizeListener)}.
+ * Результаты приходят по мере готовности: файлы сразу, директории по завершении подсчета их размера,
+ * поэтому порядок вызовов не совпадает с порядком элементов в директории.
+ * Вызовы методов не пересекаются по времени, реализации не обязаны быть потокобезопасными.
+ */
+public interface DirectorySizeListener {
+
+    /**
+     * Вызывается, когда размер файла или поддиректории готов.
+     *
+     * @param name название элемента
+     * @param size размер элемента в байтах
+     * @param directory true, если элемент является директорией
+     */
+    void onEntry(String name, long size, boolean directory);
+
+    /**
+     * Вызывается для элемента, атрибуты которого не удалось прочитать.
+     *
+     * @param name название элемента
+     */
+    default void onUnreadable(String name) {
+    }
+
+    /**
+     * Вызывается после каждого готового элемента с промежуточным итогом.
+     *
+     * @param partialSize суммарный размер готовых элементов
+     * @param completedEntries количество готовых элементов
+     * @param totalEntries общее количество элементов директории
+     */
+    default void onProgress(long partialSize, int completedEntries, int totalEntries) {
+    }
+
+    /**
+     * Вызывается один раз после обработки всех элементов.
+     *
+     * @param totalSize размер всей директории
+     */
+    default void onComplete(long totalSize) {
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.rzsp.filemanager.functions;
+
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+
+import java.nio.file.Path;
+
+/**
+ * Интерфейс источника размеров директорий для {@link GetSizeOfDirectory}.
+ * Реализации могут вычислять размер обходом дерева или брать его из сохраненных ранее результатов.
+ */
+public interface DirectorySizeProvider {
+
+    /**
+     * Возвращает суммарный размер всех файлов директории и её поддиректорий.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @return размер директории в байтах
+     */
+    long getDirectorySize(Path directory);
+
+    /**
+     * @return счетчики обхода, через который читаются директории, или null, если источник не обходит дерево
+     */
+    default TraversalStatistics getTraversalStatistics() {
+        return null;
+    }
+
+}
@@ -0,0 +1,392 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.EntryVisitor;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Класс отслеживания размеров директорий дерева в реальном времени через {@link WatchService}.
+ * Дерево обходится один раз при создании, каждая директория регистрируется в WatchService.
+ * Дальше размеры обновляются по событиям создания, изменения и удаления без повторного обхода:
+ * <ul>
+ *     <li>для каждой директории хранятся размеры её собственных файлов, их сумма и размер всего поддерева;</li>
+ *     <li>события одной директории обрабатываются пачкой: каждый созданный, измененный или удаленный файл
+ *     читается одним stat без перечитывания директории, разница с сохраненным размером добавляется
+ *     к директории и всем её родителям;</li>
+ *     <li>созданная поддиректория обходится и регистрируется целиком, размер удаленной вычитается из родителей;</li>
+ *     <li>при переполнении очереди событий ({@link java.nio.file.StandardWatchEventKinds#OVERFLOW})
+ *     заново обходится только поддерево директории, события которой были потеряны.</li>
+ * </ul>
+ * Размеры файлов хранятся по имени в таблице их директории, поэтому событие одного файла не требует
+ * перечитывать все файлы директории, а память растет с количеством файлов дерева.
+ * События обрабатываются фоновым потоком после {@link #start()} или вызовами {@link #processEvents(long, TimeUnit)}.
+ * Размеры директорий вне отслеживаемого дерева вычисляются обходом через {@link DirectorySizeCalculator}.
+ */
+public class DirectorySizeWatcher implements DirectorySizeProvider, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(DirectorySizeWatcher.class);
+
+    private final Path root;
+    private final TreeWalker walker = new TreeWalker();
+    private final DirectorySizeCalculator calculator = new DirectorySizeCalculator(ForkJoinPool.commonPool(), walker);
+    private final WatchService watchService;
+
+    private final Map<Path, Node> nodes = new HashMap<>();
+    private final Map<WatchKey, Node> nodesByKey = new HashMap<>();
+
+    private Thread thread;
+    private long appliedEvents;
+    private long rescans;
+
+    /**
+     * Конструктор класса DirectorySizeWatcher. Выполняет начальный обход дерева.
+     *
+     * @param root корень отслеживаемого дерева
+     * @throws IOException если WatchService недоступен или корень не удалось обойти
+     * @throws IllegalArgumentException если root null
+     */
+    public DirectorySizeWatcher(Path root) throws IOException {
+        if (root == null) {
+            throw new IllegalArgumentException("Watched directory must be not null");
+        }
+
+        this.root = root.toAbsolutePath().normalize();
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            synchronized (this) {
+                if (scan(this.root, null) == null) {
+                    throw new IOException("Cannot watch " + this.root + ": not a directory");
+                }
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        logger.debug("Watching {}: {} directories, {} bytes", this.root, nodes.size(), getDirectorySize(this.root));
+    }
+
+    /**
+     * Запускает фоновый поток, который обрабатывает события до вызова {@link #close()}.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    handle(watchService.take());
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                logger.debug("Watching {} is stopped", root);
+            }
+        }, "directory-size-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Обрабатывает события, накопленные к моменту вызова, ожидая первое из них не дольше timeout.
+     *
+     * @param timeout максимальное время ожидания первого события
+     * @param unit единица измерения timeout
+     * @return true, если было обработано хотя бы одно событие
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public boolean processEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        WatchKey key = watchService.poll(timeout, unit);
+        if (key == null) {
+            return false;
+        }
+
+        do {
+            handle(key);
+        } while ((key = watchService.poll()) != null);
+        return true;
+    }
+
+    /**
+     * Возвращает размер директории отслеживаемого дерева без обращения к файловой системе.
+     * Для директорий вне дерева размер вычисляется обходом.
+     *
+     * @param directory директория, размер которой хотим вернуть
+     * @return размер директории в байтах
+     */
+    @Override
+    public long getDirectorySize(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+
+        synchronized (this) {
+            Node node = nodes.get(key);
+            if (node != null) {
+                return node.totalBytes;
+            }
+        }
+
+        return calculator.getDirectorySize(directory);
+    }
+
+    /**
+     * Заново обходит поддерево директории и исправляет размеры её родителей.
+     * Вызывается автоматически при переполнении очереди событий.
+     *
+     * @param directory директория отслеживаемого дерева
+     * @throws IllegalArgumentException если директория не отслеживается
+     */
+    public synchronized void rescan(Path directory) {
+        Node node = nodes.get(directory.toAbsolutePath().normalize());
+        if (node == null) {
+            throw new IllegalArgumentException("Directory is not watched: " + directory);
+        }
+
+        rescans++;
+        Node parent = node.parent;
+        remove(node);
+
+        Node rescanned = scan(node.path, parent);
+        addToAncestors(parent, (rescanned != null ? rescanned.totalBytes : 0) - node.totalBytes);
+    }
+
+    /**
+     * @return количество примененных событий файловой системы
+     */
+    public synchronized long getAppliedEvents() {
+        return appliedEvents;
+    }
+
+    /**
+     * @return количество повторных обходов поддеревьев после переполнения очереди событий
+     */
+    public synchronized long getRescans() {
+        return rescans;
+    }
+
+    /**
+     * @return количество отслеживаемых директорий
+     */
+    public synchronized int getWatchedDirectories() {
+        return nodes.size();
+    }
+
+    @Override
+    public TraversalStatistics getTraversalStatistics() {
+        return walker.getStatistics();
+    }
+
+    /**
+     * Останавливает фоновый поток и освобождает WatchService.
+     *
+     * @throws IOException если WatchService не удалось закрыть
+     */
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        synchronized (this) {
+            running = thread;
+        }
+        if (running != null) {
+            running.interrupt();
+        }
+
+        watchService.close();
+    }
+
+    /**
+     * Применяет пачку событий одной директории и возвращает её ключ в очередь WatchService.
+     */
+    private synchronized void handle(WatchKey key) {
+        Node node = nodesByKey.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+
+        if (node != null) {
+            // Несколько событий одного файла в пачке требуют одного stat
+            Set<Path> changedEntries = new LinkedHashSet<>();
+            for (WatchEvent<?> event : events) {
+                appliedEvents++;
+
+                if (event.kind() == OVERFLOW) {
+                    logger.warn("Events of {} were lost, rescanning subtree", node.path);
+                    rescan(node.path);
+                    break;
+                }
+
+                Path name = (Path) event.context();
+                Node childNode = nodes.get(node.path.resolve(name));
+                if (event.kind() == ENTRY_DELETE && childNode != null) {
+                    remove(childNode);
+                    addToAncestors(node, -childNode.totalBytes);
+                } else if (childNode == null) {
+                    changedEntries.add(name);
+                }
+            }
+
+            // Директория могла быть удалена в процессе обработки её же событий
+            if (nodes.get(node.path) == node) {
+                for (Path name : changedEntries) {
+                    refreshEntry(node, name);
+                }
+            }
+        }
+
+        key.reset();
+    }
+
+    /**
+     * Читает атрибуты одного элемента директории одним stat и переносит разницу с сохраненным размером на родителей.
+     * Удаленный файл или элемент, который больше не является обычным файлом, убирается из таблицы размеров,
+     * а созданная поддиректория обходится и регистрируется целиком.
+     */
+    private void refreshEntry(Node node, Path name) {
+        Path child = node.path.resolve(name);
+        BasicFileAttributes attributes = walker.readAttributes(child);
+        boolean regularFile = attributes != null && attributes.isRegularFile();
+
+        Long previous = regularFile ? node.fileSizes.put(name, attributes.size()) : node.fileSizes.remove(name);
+        long delta = (regularFile ? attributes.size() : 0) - (previous != null ? previous : 0);
+        node.ownBytes += delta;
+        addToAncestors(node, delta);
+
+        if (attributes != null && attributes.isDirectory() && !nodes.containsKey(child)) {
+            Node created = scan(child, node);
+            if (created != null) {
+                addToAncestors(node, created.totalBytes);
+            }
+        }
+    }
+
+    /**
+     * Обходит поддерево и регистрирует каждую его директорию. Размеры родителей parent не меняются.
+     *
+     * @return узел директории или null, если её не удалось обойти
+     */
+    private Node scan(Path directory, Node parent) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Node[] top = new Node[1];
+
+        try {
+            walker.walk(directory, new EntryVisitor() {
+
+                @Override
+                public boolean enterDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                    Node enclosing = stack.isEmpty() ? parent : stack.peek();
+                    Path normalized = path.toAbsolutePath().normalize();
+                    if (nodes.containsKey(normalized)) {
+                        return false; // Уже учтена, например через символическую ссылку
+                    }
+
+                    Node node = new Node(normalized, enclosing);
+                    // Регистрация до чтения содержимого: файлы, созданные во время обхода, придут событиями
+                    node.key = normalized.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    nodes.put(normalized, node);
+                    nodesByKey.put(node.key, node);
+                    if (enclosing != null) {
+                        enclosing.children.add(node);
+                    }
+
+                    stack.push(node);
+                    return true;
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attributes) {
+                    Node node = stack.peek();
+                    node.fileSizes.put(file.getFileName(), attributes.size());
+                    node.ownBytes += attributes.size();
+                    node.totalBytes += attributes.size();
+                }
+
+                @Override
+                public void exitDirectory(Path path) {
+                    Node node = stack.pop();
+                    if (!stack.isEmpty()) {
+                        stack.peek().totalBytes += node.totalBytes;
+                    } else {
+                        top[0] = node;
+                    }
+                }
+
+            });
+        } catch (IOException e) {
+            logger.warn("Cannot watch {}: {}", directory, e.getMessage());
+            // Частично зарегистрированное поддерево удаляется, чтобы не учитывать его размер дважды
+            while (stack.size() > 1) {
+                stack.pop();
+            }
+            if (!stack.isEmpty()) {
+                remove(stack.pop());
+            }
+            return null;
+        }
+
+        return top[0];
+    }
+
+    /**
+     * Удаляет узел и все его поддиректории и отменяет их регистрацию. Размеры родителей не меняются.
+     */
+    private void remove(Node node) {
+        if (node.parent != null) {
+            node.parent.children.remove(node);
+        }
+
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node current = pending.pop();
+            current.key.cancel();
+            nodes.remove(current.path);
+            nodesByKey.remove(current.key);
+            current.children.forEach(pending::push);
+        }
+    }
+
+    private static void addToAncestors(Node node, long delta) {
+        for (Node current = node; current != null && delta != 0; current = current.parent) {
+            current.totalBytes += delta;
+        }
+    }
+
+    /**
+     * Отслеживаемая директория: её собственные файлы и всё поддерево.
+     */
+    private static final class Node {
+        private final Path path;
+        private final Node parent;
+        private final List<Node> children = new ArrayList<>();
+        private final Map<Path, Long> fileSizes = new HashMap<>(); // Размеры собственных файлов по имени
+        private WatchKey key;
+        private long ownBytes;
+        private long totalBytes;
+
+        Node(Path path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс сравнения источника и назначения в режиме синхронизации {@link CopyOptions#isSync()}.
+ * Файл считается неизменным, если размер и время изменения копии совпадают с исходным файлом,
+ * а при {@link CopyOptions#isCompareContent()} - если совпадает содержимое.
+ * Время изменения сравнивается с точностью до миллисекунды, так как файловые системы хранят его с разной точностью.
+ */
+final class FileSync {
+    private static final Logger logger = LogManager.getLogger(FileSync.class);
+
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    private FileSync() {
+    }
+
+    /**
+     * Проверяет, что копия файла не требует обновления.
+     *
+     * @param source исходный файл
+     * @param attributes атрибуты исходного файла
+     * @param target файл назначения
+     * @param compareContent true, чтобы сравнивать содержимое вместо времени изменения
+     * @return true, если копирование файла можно пропустить
+     * @throws IOException если не удалось прочитать файлы при сравнении содержимого
+     */
+    static boolean isUpToDate(Path source, BasicFileAttributes attributes, Path target, boolean compareContent) throws IOException {
+        BasicFileAttributes targetAttributes;
+        try {
+            targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        if (!targetAttributes.isRegularFile() || targetAttributes.size() != attributes.size()) {
+            return false;
+        }
+
+        if (compareContent) {
+            return sameContent(source, target);
+        }
+
+        return targetAttributes.lastModifiedTime().to(TimeUnit.MILLISECONDS)
+                == attributes.lastModifiedTime().to(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Сравнивает содержимое двух файлов одинакового размера блоками, останавливаясь на первом отличии.
+     */
+    static boolean sameContent(Path first, Path second) throws IOException {
+        byte[] firstBuffer = new byte[COMPARE_BUFFER_SIZE];
+        byte[] secondBuffer = new byte[COMPARE_BUFFER_SIZE];
+
+        try (
+                InputStream firstIn = Files.newInputStream(first);
+                InputStream secondIn = Files.newInputStream(second)
+        ) {
+            while (true) {
+                int firstRead = firstIn.readNBytes(firstBuffer, 0, COMPARE_BUFFER_SIZE);
+                int secondRead = secondIn.readNBytes(secondBuffer, 0, COMPARE_BUFFER_SIZE);
+
+                if (firstRead != secondRead
+                        || Arrays.mismatch(firstBuffer, 0, firstRead, secondBuffer, 0, secondRead) != -1) {
+                    return false;
+                }
+                if (firstRead < COMPARE_BUFFER_SIZE) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет из директории назначения элементы, которых нет в исходной директории.
+     * Если исходную директорию не удалось прочитать, ничего не удаляется.
+     *
+     * @param sourceDirectory исходная директория
+     * @param targetDirectory её копия
+     * @param walker обход, через который читается исходная директория
+     * @return количество удаленных файлов и директорий
+     * @throws IOException если не удалось прочитать директорию назначения или удалить элемент
+     */
+    static long deleteExtraneous(Path sourceDirectory, Path targetDirectory, TreeWalker walker) throws IOException {
+        Path[] sourceEntries = walker.listDirectory(sourceDirectory);
+        if (sourceEntries == null) {
+            logger.warn("Source directory {} is not readable, extraneous files in {} are kept", sourceDirectory, targetDirectory);
+            return 0;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (Path entry : sourceEntries) {
+            names.add(entry.getFileName().toString());
+        }
+
+        long deleted = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(targetDirectory)) {
+            for (Path entry : stream) {
+                if (!names.contains(entry.getFileName().toString())) {
+                    deleted += deleteRecursively(entry);
+                }
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Удаляет файл или директорию со всем содержимым. Символические ссылки удаляются без перехода по ним.
+     */
+    private static long deleteRecursively(Path path) throws IOException {
+        long[] deleted = {0};
+
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                deleted[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException {
+                if (exception != null) {
+                    throw exception;
+                }
+                Files.delete(directory);
+                deleted[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        logger.debug("Deleted extraneous {}", path);
+        return deleted[0];
+    }
+
+}
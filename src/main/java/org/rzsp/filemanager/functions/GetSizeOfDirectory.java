@@ -2,9 +2,25 @@ package org.rzsp.filemanager.functions;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.jobs.JobControl;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+import org.rzsp.filemanager.traversal.EntryFilter;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
 
 import java.io.File;
-import java.util.Arrays;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.rzsp.filemanager.validators.GetSizeOfDirectoryValidator.*;
 
@@ -15,75 +31,301 @@ public class GetSizeOfDirectory {
     private static final Logger logger = LogManager.getLogger(GetSizeOfDirectory.class);
 
     private final File targetDirectory;
+    private final DirectorySizeProvider sizeProvider;
+    private final DirectorySizeCalculator filteredCalculator; // Подсчет с фильтром, null если фильтр не задан
+    private final TreeWalker walker;
+    private final OperationMetrics metrics = new OperationMetrics("size");
+    private JobControl jobControl;
 
     /**
      * Конструктор класса GetSizeOfDirectory.
      * Валидирует строковый путь к директории, получая на выходе объект {@link File}.
+     * Размеры поддиректорий вычисляются в общем пуле {@link java.util.concurrent.ForkJoinPool}.
      *
      * @param pathToDirectory строковый путь к директории, размер файлов которой хотим вывести
      */
     public GetSizeOfDirectory(String pathToDirectory) {
+        this(pathToDirectory, new DirectorySizeCalculator());
+    }
+
+    /**
+     * Конструктор класса GetSizeOfDirectory с заданным источником размеров.
+     *
+     * @param pathToDirectory строковый путь к директории, размер файлов которой хотим вывести
+     * @param sizeProvider источник размеров поддиректорий
+     */
+    public GetSizeOfDirectory(String pathToDirectory, DirectorySizeProvider sizeProvider) {
+        this(pathToDirectory, sizeProvider, null);
+    }
+
+    /**
+     * Конструктор класса GetSizeOfDirectory с фильтром элементов.
+     * Размеры с фильтром отличаются от полных, поэтому они всегда вычисляются обходом, без кэша и индекса,
+     * исключенные поддиректории не читаются.
+     *
+     * @param pathToDirectory строковый путь к директории, размер файлов которой хотим вывести
+     * @param filter фильтр элементов
+     */
+    public GetSizeOfDirectory(String pathToDirectory, EntryFilter filter) {
+        this(pathToDirectory, null, requireFilter(filter));
+    }
+
+    private GetSizeOfDirectory(String pathToDirectory, DirectorySizeProvider sizeProvider, EntryFilter filter) {
         logger.debug("Initializing get directory constructor");
 
+        if (sizeProvider == null && filter == null) {
+            throw new IllegalArgumentException("Size provider must be not null");
+        }
+
         this.targetDirectory = validateGetSizeDirectory(pathToDirectory);
+        this.walker = new TreeWalker(new TraversalStatistics(), filter);
+        this.filteredCalculator = filter != null ? new DirectorySizeCalculator(ForkJoinPool.commonPool(), walker) : null;
+        this.sizeProvider = filteredCalculator != null ? filteredCalculator : sizeProvider;
+
+        metrics.addTraversal(walker.getStatistics());
+        if (filteredCalculator == null) {
+            metrics.addTraversal(sizeProvider.getTraversalStatistics());
+        }
 
         logger.debug("Get directory constructor is successfully initializing");
     }
 
+    private static EntryFilter requireFilter(EntryFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Entry filter must be not null");
+        }
+        return filter;
+    }
+
     /**
      * Выводит на экран все названия файлов/директорией и их размеры, которые находятся в выбранной директории.
-     * Работает с полем targetDirectory. Создает массив объекта {@link File} из всех файлов и директорией, которые находятся в {@link File} targetDirectory.
-     * через цикл ForEach работает с массивом.
-     * Если объект {@link File} является файлом, то выводит его название и размер в байтах.
-     * Если объект {@link File} является директорией, то выводит его название и размер в байтах, полученный через вызов {@link #getDirectorySize(File)}.
+     * Строки выводятся по мере готовности через {@link #calculateSizes(DirectorySizeListener)}: файлы сразу,
+     * директории по завершении подсчета их размера. Пока подсчет идет, последняя строка консоли показывает промежуточный итог.
      */
     public void printNameAndByteSizeOfAllFilesInDirectory() {
+        printNameAndByteSizeOfAllFilesInDirectory(System.out);
+    }
+
+    /**
+     * Выводит все названия файлов/директорией и их размеры в заданный поток вывода.
+     *
+     * @param out поток вывода
+     * @see #printNameAndByteSizeOfAllFilesInDirectory()
+     */
+    public void printNameAndByteSizeOfAllFilesInDirectory(PrintStream out) {
         logger.debug("Starting getting size of all files in directory");
 
-        File[] filesAndDirectoryInDirectory = targetDirectory.listFiles();
+        calculateSizes(new ConsoleSizeListener(out));
+
+        logger.debug("Getting size of all files in directory is ended successfully. {}. Traversal: {}", metrics, walker.getStatistics());
+    }
+
+    public JobControl getJobControl() {
+        return jobControl;
+    }
+
+    /**
+     * Задает управление фоновой задачей. Пауза и отмена проверяются перед подсчетом каждой поддиректории,
+     * поддиректория, подсчет которой уже начат, подсчитывается до конца.
+     * Чтобы задача на паузе не занимала потоки пула, одновременно подсчитывается не больше поддиректорий,
+     * чем потоков в общем пуле, а следующие запускаются после точки проверки.
+     *
+     * @param jobControl управление задачей или null
+     */
+    public void setJobControl(JobControl jobControl) {
+        this.jobControl = jobControl;
+    }
+
+    /**
+     * @return метрики подсчета: файлы, поддиректории, длительность подсчета каждой поддиректории и чтения директорий
+     */
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Вычисляет размеры всех файлов и директорий, которые находятся в выбранной директории, и передает их в listener по мере готовности.
+     * Получает элементы targetDirectory через {@link TreeWalker} и читает атрибуты каждого элемента один раз.
+     * Размеры поддиректорий вычисляются одновременно через {@link #getDirectorySize(Path)},
+     * поэтому первый результат не ждет самую большую поддиректорию.
+     * Элементы, исключенные фильтром, не передаются в listener.
+     *
+     * @param listener получатель результатов
+     * @throws IllegalArgumentException если директорию не удалось прочитать
+     * @throws UncheckedIOException с {@link InterruptedIOException}, если задача была отменена
+     */
+    public void calculateSizes(DirectorySizeListener listener) {
+        Path[] filesAndDirectoryInDirectory = walker.listDirectory(targetDirectory.toPath());
         if (filesAndDirectoryInDirectory == null) {
             throw new IllegalArgumentException("Cannot read directory");
         }
 
-        for (File fileOrDirectory : filesAndDirectoryInDirectory) {
-            if (fileOrDirectory.isFile()) {
-                System.out.println(fileOrDirectory.getName() + ": " + fileOrDirectory.length() + " bytes");
-            } else if (fileOrDirectory.isDirectory()) {
-                System.out.println(fileOrDirectory.getName() + ": " + getDirectorySize(fileOrDirectory) + " bytes");
-            } else {
-                System.out.println(fileOrDirectory.getName() + " is not readable");
+        ProgressState progress = new ProgressState(listener, filesAndDirectoryInDirectory.length);
+        List<CompletableFuture<Void>> directorySizes = new ArrayList<>();
+        AtomicInteger pendingDirectories = new AtomicInteger();
+        metrics.setQueueDepth(pendingDirectories::get);
+        // Без управления задачей все поддиректории отправляются в пул сразу
+        Semaphore startedDirectories = jobControl != null ? new Semaphore(ForkJoinPool.getCommonPoolParallelism()) : null;
+
+        try {
+            for (Path fileOrDirectory : filesAndDirectoryInDirectory) {
+                long start = System.nanoTime();
+                BasicFileAttributes attributes = walker.readAttributes(fileOrDirectory);
+                String name = fileOrDirectory.getFileName().toString();
+
+                if (attributes != null && !walker.accept(targetDirectory.toPath(), fileOrDirectory, attributes)) {
+                    progress.excluded();
+                } else if (attributes != null && attributes.isRegularFile()) {
+                    metrics.recordFile(attributes.size(), System.nanoTime() - start);
+                    progress.entry(name, attributes.size(), false);
+                } else if (attributes != null && attributes.isDirectory()) {
+                    if (startedDirectories != null) {
+                        checkpoint();
+                        startedDirectories.acquireUninterruptibly();
+                    }
+                    pendingDirectories.incrementAndGet();
+                    directorySizes.add(CompletableFuture
+                            .supplyAsync(() -> {
+                                try {
+                                    long directoryStart = System.nanoTime();
+                                    long size = getDirectorySize(fileOrDirectory);
+                                    metrics.recordDirectory(size, System.nanoTime() - directoryStart);
+                                    return size;
+                                } finally {
+                                    pendingDirectories.decrementAndGet();
+                                    if (startedDirectories != null) {
+                                        startedDirectories.release();
+                                    }
+                                }
+                            })
+                            .thenAccept(size -> progress.entry(name, size, true)));
+                } else {
+                    progress.unreadable(name);
+                }
             }
+
+            CompletableFuture.allOf(directorySizes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        } finally {
+            metrics.setQueueDepth(null);
         }
 
-        logger.debug("Getting size of all files in directory is ended successfully");
+        progress.complete();
+    }
+
+    /**
+     * Точка проверки задачи между поддиректориями.
+     */
+    private void checkpoint() {
+        try {
+            jobControl.checkpoint();
+        } catch (InterruptedIOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
      * Метод, возвращающий размер переданной директории.
-     * Создает массив объекта {@link File} из всех файлов и директорией, которые находятся в заданной директории.
-     * Для возвращения размера используется потоковый интерфейс, который суммирует размеры всех файлов и рекурсивно вычисляет размер поддиректорией.
+     * Размер берется из {@link DirectorySizeProvider}, по умолчанию вычисляется параллельно через {@link DirectorySizeCalculator}.
+     * С фильтром размер вычисляется обходом с путями относительно выбранной директории.
      *
      * @param directory директория, размер которой хотим вернуть
      * @return размер директории
      */
-    private Long getDirectorySize(File directory) {
-        File[] files = directory.listFiles();
+    private long getDirectorySize(Path directory) {
+        if (filteredCalculator != null) {
+            return filteredCalculator.getDirectorySize(directory, targetDirectory.toPath());
+        }
+        return sizeProvider.getDirectorySize(directory);
+    }
+
+    /**
+     * Состояние подсчета: промежуточный итог и количество готовых элементов.
+     * Все вызовы listener выполняются под блокировкой этого объекта.
+     */
+    private static final class ProgressState {
+        private final DirectorySizeListener listener;
+        private final int totalEntries;
+
+        private long partialSize;
+        private int completedEntries;
 
-        if (files == null || files.length == 0) {
-            return 0L;
+        ProgressState(DirectorySizeListener listener, int totalEntries) {
+            this.listener = listener;
+            this.totalEntries = totalEntries;
         }
 
-        return Arrays.stream(files)
-                .mapToLong(file -> {
-                    if (file.isDirectory()) {
-                        return getDirectorySize(file);
-                    } else if (file.isFile()) {
-                        return file.length();
-                    } else {
-                        return 0;
-                    }
-                })
-                .sum();
+        synchronized void entry(String name, long size, boolean directory) {
+            partialSize += size;
+            completedEntries++;
+            listener.onEntry(name, size, directory);
+            listener.onProgress(partialSize, completedEntries, totalEntries);
+        }
+
+        synchronized void excluded() {
+            completedEntries++;
+            listener.onProgress(partialSize, completedEntries, totalEntries);
+        }
+
+        synchronized void unreadable(String name) {
+            completedEntries++;
+            listener.onUnreadable(name);
+            listener.onProgress(partialSize, completedEntries, totalEntries);
+        }
+
+        synchronized void complete() {
+            listener.onComplete(partialSize);
+        }
+    }
+
+    /**
+     * Получатель, выводящий результаты в консоль.
+     * Строка прогресса печатается без перевода строки и затирается следующей строкой результата.
+     * Если вывод идет не в терминал, строка прогресса не печатается.
+     */
+    private static final class ConsoleSizeListener implements DirectorySizeListener {
+        private final PrintStream out;
+        private final boolean interactive;
+        private int progressLength;
+
+        ConsoleSizeListener(PrintStream out) {
+            this.out = out;
+            this.interactive = out == System.out && System.console() != null;
+        }
+
+        @Override
+        public void onEntry(String name, long size, boolean directory) {
+            printLine(name + ": " + size + " bytes");
+        }
+
+        @Override
+        public void onUnreadable(String name) {
+            printLine(name + " is not readable");
+        }
+
+        @Override
+        public void onProgress(long partialSize, int completedEntries, int totalEntries) {
+            if (interactive && completedEntries < totalEntries) {
+                String progress = "[" + completedEntries + "/" + totalEntries + "] " + partialSize + " bytes so far...";
+                out.print(progress);
+                out.flush();
+                progressLength = progress.length();
+            }
+        }
+
+        @Override
+        public void onComplete(long totalSize) {
+            printLine("Total: " + totalSize + " bytes");
+        }
+
+        private void printLine(String line) {
+            if (progressLength > 0) {
+                out.print("\r" + " ".repeat(progressLength) + "\r");
+                progressLength = 0;
+            }
+            out.println(line);
+        }
     }
 
 }
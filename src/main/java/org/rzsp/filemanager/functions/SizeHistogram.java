@@ -0,0 +1,88 @@
+package org.rzsp.filemanager.functions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс гистограммы количества и суммарного размера файлов по группам, например по расширению.
+ * Количество групп ограничено: файлы групп сверх предела учитываются в группе {@link #OTHER},
+ * поэтому память не зависит от количества файлов и разнообразия их имен.
+ * Класс не потокобезопасный.
+ */
+public final class SizeHistogram {
+    public static final String OTHER = "(other)";
+
+    private final int maxGroups;
+    private final Map<String, long[]> groups = new HashMap<>(); // Группа -> {количество файлов, суммарный размер}
+
+    /**
+     * Конструктор класса SizeHistogram.
+     *
+     * @param maxGroups максимальное количество групп, не считая {@link #OTHER}
+     * @throws IllegalArgumentException если количество групп не положительное
+     */
+    public SizeHistogram(int maxGroups) {
+        if (maxGroups < 1) {
+            throw new IllegalArgumentException("Histogram groups count must be positive");
+        }
+
+        this.maxGroups = maxGroups;
+    }
+
+    /**
+     * @param group группа файла
+     * @param size размер файла
+     */
+    public void record(String group, long size) {
+        long[] bucket = groups.get(group);
+        if (bucket == null) {
+            bucket = groups.size() < maxGroups || group.equals(OTHER)
+                    ? groups.computeIfAbsent(group, key -> new long[2])
+                    : groups.computeIfAbsent(OTHER, key -> new long[2]);
+        }
+
+        bucket[0]++;
+        bucket[1] += size;
+    }
+
+    /**
+     * @return группы по убыванию суммарного размера
+     */
+    public List<Bucket> getBuckets() {
+        List<Bucket> buckets = new ArrayList<>(groups.size());
+        groups.forEach((group, values) -> buckets.add(new Bucket(group, values[0], values[1])));
+        buckets.sort((first, second) -> Long.compare(second.bytes, first.bytes));
+
+        return buckets;
+    }
+
+    /**
+     * Группа гистограммы: название, количество файлов и их суммарный размер.
+     */
+    public static final class Bucket {
+        private final String group;
+        private final long files;
+        private final long bytes;
+
+        Bucket(String group, long files, long bytes) {
+            this.group = group;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+}
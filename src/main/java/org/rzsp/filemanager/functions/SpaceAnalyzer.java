@@ -0,0 +1,219 @@
+package org.rzsp.filemanager.functions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.EntryVisitor;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.rzsp.filemanager.validators.GetSizeOfDirectoryValidator.*;
+
+/**
+ * Класс анализа занятого места в дереве директорий за один обход.
+ * Находит N самых больших файлов и N самых больших директорий на любой глубине через {@link TopEntries},
+ * строит гистограммы размеров по расширению файлов и по возрасту (времени последнего изменения).
+ * Размеры директорий накапливаются в стеке по глубине обхода, поэтому память зависит от N, глубины дерева
+ * и количества расширений, но не от количества файлов и директорий.
+ */
+public class SpaceAnalyzer {
+    private static final Logger logger = LogManager.getLogger(SpaceAnalyzer.class);
+
+    public static final int DEFAULT_TOP = 10;
+    public static final int MAX_EXTENSIONS = 1000;
+    public static final String NO_EXTENSION = "(none)";
+
+    private static final long[] AGE_LIMITS_DAYS = {1, 7, 30, 365};
+    private static final String[] AGE_GROUPS = {"< 1 day", "< 1 week", "< 1 month", "< 1 year", ">= 1 year"};
+
+    private final File targetDirectory;
+    private final TreeWalker walker = new TreeWalker();
+    private final TopEntries largestFiles;
+    private final TopEntries largestDirectories;
+    private final SizeHistogram extensions = new SizeHistogram(MAX_EXTENSIONS);
+    private final long[] ageFiles = new long[AGE_GROUPS.length];
+    private final long[] ageBytes = new long[AGE_GROUPS.length];
+
+    private long totalSize;
+    private long files;
+    private long directories;
+
+    /**
+     * Конструктор класса SpaceAnalyzer.
+     *
+     * @param pathToDirectory строковый путь к анализируемой директории
+     * @param top количество самых больших файлов и директорий в отчете
+     * @throws IllegalArgumentException если путь не является директорией или количество не положительное
+     */
+    public SpaceAnalyzer(String pathToDirectory, int top) {
+        this.targetDirectory = validateGetSizeDirectory(pathToDirectory);
+        this.largestFiles = new TopEntries(top);
+        this.largestDirectories = new TopEntries(top);
+    }
+
+    /**
+     * Обходит дерево один раз и собирает отчет. Сама анализируемая директория в самые большие директории не входит,
+     * её размер - {@link #getTotalSize()}.
+     *
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public void analyze() throws IOException {
+        logger.debug("Starting space analysis of {}", targetDirectory);
+
+        Path root = targetDirectory.toPath();
+        long now = System.currentTimeMillis();
+
+        walker.walk(root, new EntryVisitor() {
+            // Размеры директорий текущего пути обхода: вершина - директория, файлы которой сейчас обходятся
+            private long[] stack = new long[64];
+            private int depth;
+
+            @Override
+            public boolean enterDirectory(Path directory, BasicFileAttributes attributes) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = 0;
+                return true;
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attributes) {
+                long size = attributes.size();
+                files++;
+                stack[depth - 1] += size;
+                largestFiles.offer(size, file);
+                extensions.record(extension(file), size);
+
+                int age = ageGroup(TimeUnit.MILLISECONDS.toDays(now - attributes.lastModifiedTime().toMillis()));
+                ageFiles[age]++;
+                ageBytes[age] += size;
+            }
+
+            @Override
+            public void exitDirectory(Path directory) {
+                long size = stack[--depth];
+                if (depth > 0) {
+                    directories++;
+                    stack[depth - 1] += size;
+                    largestDirectories.offer(size, directory);
+                } else {
+                    totalSize = size;
+                }
+            }
+
+        });
+
+        logger.debug("Space analysis is ended successfully: {} files, {} directories. Traversal: {}",
+                files, directories, walker.getStatistics());
+    }
+
+    /**
+     * Выводит отчет анализа: итог, самые большие файлы и директории, гистограммы по расширению и возрасту.
+     *
+     * @param out поток вывода
+     */
+    public void print(PrintStream out) {
+        out.println("Total: " + totalSize + " bytes in " + files + " files and " + directories + " directories");
+
+        out.println("Largest files:");
+        largestFiles.toList().forEach(entry -> out.println("  " + entry.getSize() + " bytes  " + entry.getPath()));
+
+        out.println("Largest directories:");
+        largestDirectories.toList().forEach(entry -> out.println("  " + entry.getSize() + " bytes  " + entry.getPath()));
+
+        out.println("By extension:");
+        extensions.getBuckets().forEach(bucket -> printBucket(out, bucket));
+
+        out.println("By age:");
+        getAgeHistogram().forEach(bucket -> printBucket(out, bucket));
+    }
+
+    private static void printBucket(PrintStream out, SizeHistogram.Bucket bucket) {
+        out.println("  " + bucket.getGroup() + ": " + bucket.getBytes() + " bytes in " + bucket.getFiles() + " files");
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * @return количество директорий, не считая анализируемой
+     */
+    public long getDirectories() {
+        return directories;
+    }
+
+    /**
+     * @return самые большие файлы по убыванию размера
+     */
+    public List<TopEntries.Entry> getLargestFiles() {
+        return largestFiles.toList();
+    }
+
+    /**
+     * @return самые большие директории по убыванию размера
+     */
+    public List<TopEntries.Entry> getLargestDirectories() {
+        return largestDirectories.toList();
+    }
+
+    /**
+     * @return группы по расширению по убыванию суммарного размера
+     */
+    public List<SizeHistogram.Bucket> getExtensionHistogram() {
+        return extensions.getBuckets();
+    }
+
+    /**
+     * @return группы по возрасту от новых файлов к старым, включая пустые группы
+     */
+    public List<SizeHistogram.Bucket> getAgeHistogram() {
+        List<SizeHistogram.Bucket> buckets = new ArrayList<>(AGE_GROUPS.length);
+        for (int i = 0; i < AGE_GROUPS.length; i++) {
+            buckets.add(new SizeHistogram.Bucket(AGE_GROUPS[i], ageFiles[i], ageBytes[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * @return счетчики обхода дерева при анализе
+     */
+    public TraversalStatistics getTraversalStatistics() {
+        return walker.getStatistics();
+    }
+
+    /**
+     * Возвращает расширение файла в нижнем регистре. Точка в начале имени, как у скрытых файлов, расширением не считается.
+     */
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+
+        return dot > 0 && dot < name.length() - 1 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : NO_EXTENSION;
+    }
+
+    private static int ageGroup(long days) {
+        for (int i = 0; i < AGE_LIMITS_DAYS.length; i++) {
+            if (days < AGE_LIMITS_DAYS[i]) {
+                return i;
+            }
+        }
+        return AGE_LIMITS_DAYS.length;
+    }
+
+}
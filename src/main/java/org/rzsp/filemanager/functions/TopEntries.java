@@ -0,0 +1,128 @@
+package org.rzsp.filemanager.functions;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Класс ограниченного набора N самых больших элементов.
+ * Хранит двоичную min-кучу в массиве размеров long[] и параллельном массиве путей: в вершине - наименьший из N,
+ * поэтому проверка очередного элемента - одно сравнение, а вставка - O(log N) без упаковки размеров в Long.
+ * Путь элемента преобразуется в строку, только если элемент попадает в набор.
+ * Класс не потокобезопасный.
+ */
+public final class TopEntries {
+    private final long[] sizes;
+    private final String[] paths;
+    private int count;
+
+    /**
+     * Конструктор класса TopEntries.
+     *
+     * @param capacity количество хранимых элементов
+     * @throws IllegalArgumentException если количество не положительное
+     */
+    public TopEntries(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Top entries count must be positive");
+        }
+
+        this.sizes = new long[capacity];
+        this.paths = new String[capacity];
+    }
+
+    /**
+     * Добавляет элемент, если он больше наименьшего из хранимых или набор ещё не заполнен.
+     *
+     * @param size размер элемента
+     * @param path путь элемента
+     */
+    public void offer(long size, Path path) {
+        if (count < sizes.length) {
+            sizes[count] = size;
+            paths[count] = path.toString();
+            siftUp(count++);
+        } else if (size > sizes[0]) {
+            sizes[0] = size;
+            paths[0] = path.toString();
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return хранимые элементы по убыванию размера
+     */
+    public List<Entry> toList() {
+        Entry[] entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new Entry(paths[i], sizes[i]);
+        }
+        Arrays.sort(entries, (first, second) -> Long.compare(second.size, first.size));
+
+        return new ArrayList<>(Arrays.asList(entries));
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (sizes[parent] <= sizes[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+
+            if (left < count && sizes[left] < sizes[smallest]) {
+                smallest = left;
+            }
+            if (right < count && sizes[right] < sizes[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(smallest, index);
+            index = smallest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        long size = sizes[first];
+        sizes[first] = sizes[second];
+        sizes[second] = size;
+
+        String path = paths[first];
+        paths[first] = paths[second];
+        paths[second] = path;
+    }
+
+    /**
+     * Элемент набора: путь и размер.
+     */
+    public static final class Entry {
+        private final String path;
+        private final long size;
+
+        Entry(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.rzsp.filemanager.functions.archive;
+
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Форматы архивов, в которые {@link org.rzsp.filemanager.functions.CopyingFile} может записать копию.
+ * Оба формата сжимаются через {@link ParallelDeflater}: части данных сжимаются параллельно во всех потоках пула.
+ * В tar.gz части режутся по всему потоку tar, поэтому маленькие файлы тоже сжимаются параллельно.
+ * В zip у каждого файла свой поток deflate, маленькие файлы сжимаются параллельно друг с другом.
+ */
+public enum ArchiveFormat {
+
+    TAR_GZ(".tar.gz") {
+        @Override
+        public ArchiveWriter open(Path archive, ExecutorService pool, int parallelism, CopyThrottle throttle) throws IOException {
+            return new TarGzArchiveWriter(archive, pool, ParallelDeflater.DEFAULT_CHUNK_SIZE, maxPending(parallelism), throttle);
+        }
+    },
+
+    ZIP(".zip") {
+        @Override
+        public ArchiveWriter open(Path archive, ExecutorService pool, int parallelism, CopyThrottle throttle) throws IOException {
+            return new ZipArchiveWriter(archive, pool, ParallelDeflater.DEFAULT_CHUNK_SIZE, maxPending(parallelism), throttle);
+        }
+    };
+
+    private final String extension;
+
+    ArchiveFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Создает архив и открывает его на запись.
+     *
+     * @param archive файл архива
+     * @param pool пул потоков сжатия
+     * @param parallelism количество потоков пула, определяет, сколько частей сжимается одновременно
+     * @param throttle ограничение скорости чтения файлов или null, токены запрашиваются на каждое чтение
+     * @return запись архива
+     * @throws IOException если файл архива не удалось создать
+     */
+    public abstract ArchiveWriter open(Path archive, ExecutorService pool, int parallelism, CopyThrottle throttle) throws IOException;
+
+    /**
+     * @return расширение файла архива с точкой, например ".tar.gz"
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Находит формат по названию.
+     *
+     * @param name "zip", "tar.gz" или "tgz"
+     * @return формат архива
+     * @throws IllegalArgumentException если формат не поддерживается
+     */
+    public static ArchiveFormat fromName(String name) {
+        return switch (name.strip().toLowerCase(Locale.ROOT)) {
+            case "zip" -> ZIP;
+            case "tar.gz", "tgz" -> TAR_GZ;
+            default -> throw new IllegalArgumentException("Unknown archive format: " + name + ", expected zip or tar.gz");
+        };
+    }
+
+    /**
+     * Очередь записи вмещает две части на поток: пока одни части пишутся, следующие уже сжимаются.
+     */
+    private static int maxPending(int parallelism) {
+        return Math.max(2, 2 * parallelism);
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.rzsp.filemanager.functions.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Интерфейс записи дерева файлов в архив за один проход.
+ * Элементы добавляются в порядке обхода: директория - до своих файлов.
+ * Содержимое каждого файла читается один раз и сразу передается на сжатие.
+ */
+public interface ArchiveWriter extends Closeable {
+
+    /**
+     * Добавляет директорию.
+     *
+     * @param name путь директории в архиве с разделителем '/'
+     * @param attributes атрибуты директории
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    void addDirectory(String name, BasicFileAttributes attributes) throws IOException;
+
+    /**
+     * Добавляет файл, читая его содержимое.
+     *
+     * @param name путь файла в архиве с разделителем '/'
+     * @param file добавляемый файл
+     * @param attributes атрибуты файла, уже прочитанные при обходе
+     * @return количество прочитанных байтов файла
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    long addFile(String name, Path file, BasicFileAttributes attributes) throws IOException;
+
+    /**
+     * Дописывает оставшиеся сжатые данные и служебные структуры архива и закрывает файл архива.
+     *
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    @Override
+    void close() throws IOException;
+
+}
@@ -0,0 +1,283 @@
+package org.rzsp.filemanager.functions.archive;
+
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Класс параллельного сжатия потоков deflate частями, как в pigz.
+ * Данные потока делятся на части по chunkSize байтов, каждая часть сжимается в пуле потоков отдельным {@link Deflater}.
+ * Все части, кроме последней, завершаются {@link Deflater#SYNC_FLUSH} и выравниваются по байту,
+ * поэтому их склейка - один корректный поток deflate. Сжатие части начинается со словаря из последних 32 КБ
+ * предыдущей части, чтобы степень сжатия почти не отличалась от последовательной.
+ * <p>
+ * Результат записывается в порядке очереди сегментов: сжатые части, готовые байты заголовков и отложенные сегменты,
+ * байты которых вычисляются в момент записи, например по размеру уже записанных сжатых данных.
+ * Очередь ограничена maxPending сегментами, поэтому в памяти одновременно не больше maxPending частей.
+ * Класс не потокобезопасный: все методы вызываются из одного потока.
+ */
+final class ParallelDeflater {
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int chunkSize;
+    private final int level;
+    private final int maxPending;
+    private final CopyThrottle throttle;
+    private final Deque<Segment> pending = new ArrayDeque<>();
+
+    private final byte[] chunk;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private int chunkLength;
+    private byte[] dictionary; // Конец предыдущей части текущего потока или null в начале потока
+    private Stream stream = new Stream();
+    private long position;
+
+    /**
+     * Сегмент выходных данных, байты которого вычисляются в потоке записи в порядке очереди.
+     */
+    interface Segment {
+        byte[] resolve() throws IOException;
+    }
+
+    /**
+     * Конструктор класса ParallelDeflater.
+     *
+     * @param out поток, в который записываются сегменты
+     * @param pool пул потоков сжатия
+     * @param chunkSize размер части, сжимаемой одной задачей
+     * @param level уровень сжатия {@link Deflater}
+     * @param maxPending максимальное количество сегментов, ожидающих записи
+     * @param throttle ограничение скорости чтения файлов или null
+     */
+    ParallelDeflater(OutputStream out, ExecutorService pool, int chunkSize, int level, int maxPending, CopyThrottle throttle) {
+        this.out = out;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.level = level;
+        this.maxPending = maxPending;
+        this.throttle = throttle;
+        this.chunk = new byte[chunkSize];
+    }
+
+    /**
+     * Добавляет данные в текущий поток deflate. Контрольная сумма CRC32 вычисляется здесь же, за тот же проход.
+     */
+    void deflate(byte[] data, int offset, int length) throws IOException {
+        stream.crc.update(data, offset, length);
+        stream.size += length;
+
+        while (length > 0) {
+            int copied = Math.min(length, chunkSize - chunkLength);
+            System.arraycopy(data, offset, chunk, chunkLength, copied);
+            chunkLength += copied;
+            offset += copied;
+            length -= copied;
+
+            if (chunkLength == chunkSize) {
+                submitChunk(false);
+            }
+        }
+    }
+
+    /**
+     * Читает файл и добавляет его содержимое в текущий поток deflate, не больше limit байтов.
+     * Токены ограничения скорости запрашиваются на каждое чтение, а не на весь файл заранее.
+     *
+     * @return количество добавленных байтов, меньше размера файла, если файл был усечен во время чтения
+     */
+    long deflateFile(Path file, long limit) throws IOException {
+        long total = 0;
+
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            while (total < limit) {
+                readBuffer.clear().limit((int) Math.min(READ_BUFFER_SIZE, limit - total));
+                int read = in.read(readBuffer);
+                if (read == -1) {
+                    break;
+                }
+                if (throttle != null) {
+                    throttle.acquireBytes(read);
+                }
+                deflate(readBuffer.array(), 0, read);
+                total += read;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Завершает текущий поток deflate и начинает новый.
+     *
+     * @return завершенный поток: его размер и CRC32 известны сразу, размер сжатых данных - после записи его частей
+     */
+    Stream finishStream() throws IOException {
+        submitChunk(true);
+
+        Stream finished = stream;
+        stream = new Stream();
+        dictionary = null;
+        return finished;
+    }
+
+    /**
+     * Добавляет готовые байты между потоками deflate, например заголовок архива.
+     */
+    void writeRaw(byte[] bytes) throws IOException {
+        enqueue(() -> bytes);
+    }
+
+    /**
+     * Добавляет сегмент, байты которого будут вычислены после записи всех предыдущих сегментов.
+     */
+    void writeDeferred(Segment segment) throws IOException {
+        enqueue(segment);
+    }
+
+    /**
+     * @return количество несжатых байтов, добавленных в текущий поток deflate
+     */
+    long getStreamSize() {
+        return stream.size;
+    }
+
+    /**
+     * @return количество байтов, уже записанных в выходной поток. В отложенном сегменте - смещение самого сегмента
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Записывает все ожидающие сегменты.
+     */
+    void drain() throws IOException {
+        while (!pending.isEmpty()) {
+            writeHead();
+        }
+    }
+
+    /**
+     * Отбрасывает ожидающие сегменты после ошибки. Уже запущенные задачи сжатия завершатся сами.
+     */
+    void abort() {
+        pending.clear();
+    }
+
+    private void submitChunk(boolean finish) throws IOException {
+        if (chunkLength == 0 && !finish) {
+            return;
+        }
+
+        byte[] input = Arrays.copyOf(chunk, chunkLength);
+        byte[] previous = dictionary;
+        Stream owner = stream;
+        Future<byte[]> compressed = pool.submit(() -> compress(input, previous, finish));
+
+        dictionary = chunkLength > 0
+                ? Arrays.copyOfRange(chunk, Math.max(0, chunkLength - DICTIONARY_SIZE), chunkLength)
+                : dictionary;
+        chunkLength = 0;
+
+        enqueue(() -> {
+            byte[] bytes = await(compressed);
+            owner.compressedSize += bytes.length;
+            return bytes;
+        });
+    }
+
+    private byte[] compress(byte[] input, byte[] previous, boolean finish) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (previous != null) {
+                deflater.setDictionary(previous);
+            }
+            deflater.setInput(input);
+            if (finish) {
+                deflater.finish();
+            }
+
+            byte[] output = new byte[input.length + input.length / 1000 + 64];
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(output, length, output.length - length, finish ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // Поток готов, если сжаты все данные и выходной буфер не был заполнен полностью
+                boolean done = finish ? deflater.finished() : length < output.length;
+                if (done) {
+                    return Arrays.copyOf(output, length);
+                }
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void enqueue(Segment segment) throws IOException {
+        pending.add(segment);
+        while (pending.size() > maxPending) {
+            writeHead();
+        }
+    }
+
+    private void writeHead() throws IOException {
+        byte[] bytes = pending.poll().resolve();
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression was interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    /**
+     * Один поток deflate: несжатый размер, CRC32 и размер сжатых данных.
+     */
+    static final class Stream {
+        private final CRC32 crc = new CRC32();
+        private long size;
+        private long compressedSize;
+
+        long getCrc() {
+            return crc.getValue();
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package org.rzsp.filemanager.functions.archive;
+
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Класс записи архива tar, сжатого gzip.
+ * Весь поток tar - один поток deflate, который {@link ParallelDeflater} сжимает частями параллельно,
+ * в файл записывается один член gzip: заголовок, сжатые части и CRC32 с размером потока tar.
+ * Заголовки tar в формате ustar, длинные пути записываются расширением GNU LongLink,
+ * размеры файлов от 8 ГБ - в двоичной кодировке GNU.
+ */
+final class TarGzArchiveWriter implements ArchiveWriter {
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final ParallelDeflater deflater;
+    private final byte[] padding = new byte[RECORD_SIZE];
+
+    TarGzArchiveWriter(Path archive, ExecutorService pool, int chunkSize, int maxPending, CopyThrottle throttle) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(archive), 256 * 1024);
+        this.deflater = new ParallelDeflater(out, pool, chunkSize, Deflater.DEFAULT_COMPRESSION, maxPending, throttle);
+        deflater.writeRaw(GZIP_HEADER);
+    }
+
+    @Override
+    public void addDirectory(String name, BasicFileAttributes attributes) throws IOException {
+        writeHeader(name.endsWith("/") ? name : name + "/", '5', 0755, 0, attributes);
+    }
+
+    @Override
+    public long addFile(String name, Path file, BasicFileAttributes attributes) throws IOException {
+        long size = attributes.size();
+        writeHeader(name, '0', 0644, size, attributes);
+
+        // Размер уже записан в заголовок: файл, усеченный во время чтения, дополняется нулями, выросший - обрезается
+        long read = deflater.deflateFile(file, size);
+        for (long remaining = size - read; remaining > 0; remaining -= Math.min(remaining, padding.length)) {
+            write(padding, (int) Math.min(remaining, padding.length));
+        }
+        pad(BLOCK_SIZE);
+
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // Конец архива - два нулевых блока, архив дополняется до целой записи tar
+            write(padding, 2 * BLOCK_SIZE);
+            pad(RECORD_SIZE);
+
+            ParallelDeflater.Stream stream = deflater.finishStream();
+            deflater.writeDeferred(() -> new byte[]{
+                    (byte) stream.getCrc(), (byte) (stream.getCrc() >>> 8), (byte) (stream.getCrc() >>> 16), (byte) (stream.getCrc() >>> 24),
+                    (byte) stream.getSize(), (byte) (stream.getSize() >>> 8), (byte) (stream.getSize() >>> 16), (byte) (stream.getSize() >>> 24)
+            });
+            deflater.drain();
+        } catch (IOException e) {
+            deflater.abort();
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeader(String name, char type, int mode, long size, BasicFileAttributes attributes) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String prefix = "";
+
+        if (nameBytes.length > 100) {
+            int split = splitPoint(nameBytes);
+            if (split > 0) {
+                prefix = new String(nameBytes, 0, split, StandardCharsets.UTF_8);
+                name = new String(nameBytes, split + 1, nameBytes.length - split - 1, StandardCharsets.UTF_8);
+            } else {
+                // Путь не делится на prefix и name: полный путь записывается отдельным элементом GNU LongLink
+                byte[] longName = new byte[nameBytes.length + 1];
+                System.arraycopy(nameBytes, 0, longName, 0, nameBytes.length);
+                write(header("././@LongLink", "", 'L', 0644, longName.length, 0));
+                write(longName, longName.length);
+                pad(BLOCK_SIZE);
+            }
+        }
+
+        write(header(name, prefix, type, mode, size, attributes.lastModifiedTime().to(TimeUnit.SECONDS)));
+    }
+
+    /**
+     * @return индекс '/', по которому путь делится на prefix до 155 байтов и name до 100 байтов, или -1
+     */
+    private static int splitPoint(byte[] name) {
+        for (int i = Math.min(155, name.length - 2); i > 0; i--) {
+            if (name[i] == '/' && name.length - i - 1 <= 100) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] header(String name, String prefix, char type, int mode, long size, long mtime) {
+        byte[] header = new byte[BLOCK_SIZE];
+
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        if (size <= MAX_OCTAL_SIZE) {
+            putOctal(header, 124, 12, size);
+        } else {
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        putOctal(header, 136, 12, Math.max(0, mtime));
+        header[156] = (byte) type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+        putString(header, 345, 155, prefix);
+
+        // Контрольная сумма считается с пробелами на месте самого поля и записывается шестью цифрами, нулем и пробелом
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte value : header) {
+            checksum += value & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[154] = 0;
+
+        return header;
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    /**
+     * Записывает число восьмеричными цифрами с ведущими нулями и завершающим нулевым байтом.
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        putString(header, offset, length - 1, "0".repeat(Math.max(0, length - 1 - octal.length())) + octal);
+    }
+
+    private void write(byte[] block) throws IOException {
+        write(block, block.length);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        deflater.deflate(bytes, 0, length);
+    }
+
+    /**
+     * Дополняет поток tar нулями до границы alignment.
+     */
+    private void pad(int alignment) throws IOException {
+        int remainder = (int) (deflater.getStreamSize() % alignment);
+        if (remainder != 0) {
+            write(padding, alignment - remainder);
+        }
+    }
+
+}
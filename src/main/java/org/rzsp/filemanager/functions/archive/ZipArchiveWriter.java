@@ -0,0 +1,273 @@
+package org.rzsp.filemanager.functions.archive;
+
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * Класс записи архива zip.
+ * {@link java.util.zip.ZipOutputStream} сжимает элементы последовательно, поэтому структуры zip записываются здесь:
+ * содержимое каждого файла - отдельный поток deflate в {@link ParallelDeflater}, а CRC32 и размеры записываются
+ * после данных в дескрипторе (флаг 3), так как размер сжатых данных известен только после сжатия.
+ * Заголовки и дескрипторы - отложенные сегменты, они вычисляются в момент записи, когда известны смещения и размеры.
+ * Элементы от 4 ГБ, смещения за 4 ГБ и больше 65535 элементов записываются в формате Zip64.
+ * Центральный каталог хранит по записи на элемент архива и записывается при закрытии.
+ */
+final class ZipArchiveWriter implements ArchiveWriter {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int MADE_BY_UNIX = 3 << 8;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    // Сжатые данные могут быть чуть больше исходных, поэтому Zip64 включается для файлов от 4 ГБ с запасом
+    private static final long ZIP64_ENTRY_THRESHOLD = ZIP64_LIMIT - 64L * 1024 * 1024;
+
+    private final OutputStream out;
+    private final ParallelDeflater deflater;
+    private final List<Entry> entries = new ArrayList<>();
+
+    ZipArchiveWriter(Path archive, ExecutorService pool, int chunkSize, int maxPending, CopyThrottle throttle) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(archive), 256 * 1024);
+        this.deflater = new ParallelDeflater(out, pool, chunkSize, Deflater.DEFAULT_COMPRESSION, maxPending, throttle);
+    }
+
+    @Override
+    public void addDirectory(String name, BasicFileAttributes attributes) throws IOException {
+        Entry entry = new Entry(name.endsWith("/") ? name : name + "/", attributes, true, false);
+        entries.add(entry);
+
+        deflater.writeDeferred(() -> {
+            entry.offset = deflater.getPosition();
+            return localHeader(entry);
+        });
+    }
+
+    @Override
+    public long addFile(String name, Path file, BasicFileAttributes attributes) throws IOException {
+        Entry entry = new Entry(name, attributes, false, attributes.size() >= ZIP64_ENTRY_THRESHOLD);
+        entries.add(entry);
+
+        deflater.writeDeferred(() -> {
+            entry.offset = deflater.getPosition();
+            return localHeader(entry);
+        });
+
+        long read = deflater.deflateFile(file, Long.MAX_VALUE);
+        if (read >= ZIP64_ENTRY_THRESHOLD && !entry.zip64) {
+            throw new IOException("File " + file + " grew beyond 4 GB while archiving");
+        }
+
+        ParallelDeflater.Stream stream = deflater.finishStream();
+        deflater.writeDeferred(() -> {
+            entry.crc = stream.getCrc();
+            entry.size = stream.getSize();
+            entry.compressedSize = stream.getCompressedSize();
+            return dataDescriptor(entry);
+        });
+
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deflater.drain();
+
+            long centralDirectoryOffset = deflater.getPosition();
+            long centralDirectorySize = 0;
+            for (Entry entry : entries) {
+                byte[] header = centralHeader(entry);
+                out.write(header);
+                centralDirectorySize += header.length;
+            }
+
+            long end = centralDirectoryOffset + centralDirectorySize;
+            boolean zip64 = entries.size() >= 0xFFFF || centralDirectoryOffset >= ZIP64_LIMIT || centralDirectorySize >= ZIP64_LIMIT;
+            if (zip64) {
+                out.write(zip64End(centralDirectoryOffset, centralDirectorySize, end));
+            }
+            out.write(end(centralDirectoryOffset, centralDirectorySize, zip64));
+        } catch (IOException e) {
+            deflater.abort();
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] localHeader(Entry entry) {
+        ByteBuffer header = buffer(30 + entry.name.length + (entry.zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER)
+                .putShort((short) (entry.zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) entry.flags())
+                .putShort((short) entry.method())
+                .putInt(entry.dosTime)
+                .putInt(0) // CRC32 и размеры - в дескрипторе после данных
+                .putInt(entry.zip64 ? (int) ZIP64_LIMIT : 0)
+                .putInt(entry.zip64 ? (int) ZIP64_LIMIT : 0)
+                .putShort((short) entry.name.length)
+                .putShort((short) (entry.zip64 ? 20 : 0))
+                .put(entry.name);
+        if (entry.zip64) {
+            header.putShort((short) 0x0001).putShort((short) 16).putLong(0).putLong(0);
+        }
+        return header.array();
+    }
+
+    private static byte[] dataDescriptor(Entry entry) {
+        ByteBuffer descriptor = buffer(entry.zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR).putInt((int) entry.crc);
+        if (entry.zip64) {
+            descriptor.putLong(entry.compressedSize).putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize).putInt((int) entry.size);
+        }
+        return descriptor.array();
+    }
+
+    private static byte[] centralHeader(Entry entry) {
+        boolean size64 = entry.size >= ZIP64_LIMIT;
+        boolean compressed64 = entry.compressedSize >= ZIP64_LIMIT;
+        boolean offset64 = entry.offset >= ZIP64_LIMIT;
+        int extraLength = (size64 || compressed64 || offset64 ? 4 : 0) + (size64 ? 8 : 0) + (compressed64 ? 8 : 0) + (offset64 ? 8 : 0);
+        int version = entry.zip64 || extraLength > 0 ? VERSION_ZIP64 : VERSION;
+
+        ByteBuffer header = buffer(46 + entry.name.length + extraLength);
+        header.putInt(CENTRAL_HEADER)
+                .putShort((short) (MADE_BY_UNIX | version))
+                .putShort((short) version)
+                .putShort((short) entry.flags())
+                .putShort((short) entry.method())
+                .putInt(entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt(compressed64 ? (int) ZIP64_LIMIT : (int) entry.compressedSize)
+                .putInt(size64 ? (int) ZIP64_LIMIT : (int) entry.size)
+                .putShort((short) entry.name.length)
+                .putShort((short) extraLength)
+                .putShort((short) 0) // Комментарий
+                .putShort((short) 0) // Номер диска
+                .putShort((short) 0) // Внутренние атрибуты
+                .putInt(entry.directory ? (040755 << 16) | 0x10 : 0100644 << 16)
+                .putInt(offset64 ? (int) ZIP64_LIMIT : (int) entry.offset)
+                .put(entry.name);
+
+        if (extraLength > 0) {
+            header.putShort((short) 0x0001).putShort((short) (extraLength - 4));
+            if (size64) {
+                header.putLong(entry.size);
+            }
+            if (compressed64) {
+                header.putLong(entry.compressedSize);
+            }
+            if (offset64) {
+                header.putLong(entry.offset);
+            }
+        }
+        return header.array();
+    }
+
+    private byte[] zip64End(long centralDirectoryOffset, long centralDirectorySize, long recordOffset) {
+        ByteBuffer record = buffer(56 + 20);
+        record.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY)
+                .putLong(44)
+                .putShort((short) (MADE_BY_UNIX | VERSION_ZIP64))
+                .putShort((short) VERSION_ZIP64)
+                .putInt(0)
+                .putInt(0)
+                .putLong(entries.size())
+                .putLong(entries.size())
+                .putLong(centralDirectorySize)
+                .putLong(centralDirectoryOffset);
+        record.putInt(ZIP64_LOCATOR)
+                .putInt(0)
+                .putLong(recordOffset)
+                .putInt(1);
+        return record.array();
+    }
+
+    private byte[] end(long centralDirectoryOffset, long centralDirectorySize, boolean zip64) {
+        ByteBuffer record = buffer(22);
+        short count = (short) (zip64 ? 0xFFFF : entries.size());
+        record.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort(count)
+                .putShort(count)
+                .putInt(zip64 ? (int) ZIP64_LIMIT : (int) centralDirectorySize)
+                .putInt(zip64 ? (int) ZIP64_LIMIT : (int) centralDirectoryOffset)
+                .putShort((short) 0);
+        return record.array();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Элемент архива: данные для центрального каталога.
+     */
+    private static final class Entry {
+        private final byte[] name;
+        private final int dosTime;
+        private final boolean directory;
+        private final boolean zip64;
+        private long offset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        Entry(String name, BasicFileAttributes attributes, boolean directory, boolean zip64) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime(attributes.lastModifiedTime().toMillis());
+            this.directory = directory;
+            this.zip64 = zip64;
+        }
+
+        int flags() {
+            return directory ? FLAG_UTF8 : FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+        }
+
+        int method() {
+            return directory ? 0 : Deflater.DEFLATED;
+        }
+
+        /**
+         * Время в формате MS-DOS с точностью до двух секунд, годы ограничены диапазоном 1980-2107.
+         */
+        private static int dosTime(long millis) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+            int year = Math.min(Math.max(time.getYear(), 1980), 2107);
+
+            return (year - 1980) << 25
+                    | time.getMonthValue() << 21
+                    | time.getDayOfMonth() << 16
+                    | time.getHour() << 11
+                    | time.getMinute() << 5
+                    | time.getSecond() >> 1;
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс общего пула прямых буферов одного размера.
+ * Буферы хранятся в {@link ArrayBlockingQueue} с заранее выделенным массивом, поэтому взятие и возврат буфера
+ * не создают объектов, в отличие от очередей на узлах. Если пул пуст, выделяется новый буфер,
+ * если пул полон, возвращенный буфер отдается сборщику мусора. Пул потокобезопасный.
+ */
+public class BufferPool {
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+    private final LongAdder allocatedBuffers = new LongAdder();
+
+    /**
+     * Конструктор класса BufferPool.
+     *
+     * @param bufferSize размер буфера в байтах
+     * @param maxPooledBuffers максимальное количество буферов, хранимых в пуле
+     * @throws IllegalArgumentException если размер или количество не положительные
+     */
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        if (maxPooledBuffers < 1) {
+            throw new IllegalArgumentException("Pooled buffers count must be positive");
+        }
+
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * @return очищенный буфер из пула или новый прямой буфер, если пул пуст
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocatedBuffers.increment();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Возвращает буфер в пул. После возврата буфер нельзя использовать.
+     *
+     * @param buffer буфер, полученный через {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return количество буферов, выделенных за всё время работы пула
+     */
+    public long getAllocatedBuffers() {
+        return allocatedBuffers.sum();
+    }
+
+}
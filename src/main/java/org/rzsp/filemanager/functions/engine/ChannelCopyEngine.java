@@ -0,0 +1,35 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Стратегия копирования без промежуточного буфера через {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * На Linux ядро выполняет перенос через sendfile/copy_file_range, и данные не копируются в пространство пользователя.
+ */
+public class ChannelCopyEngine implements CopyEngine {
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            long size = in.size();
+            long position = 0;
+
+            // transferTo может перенести меньше запрошенного, поэтому вызываем его в цикле
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break; // Файл был усечен во время копирования
+                }
+                position += transferred;
+            }
+
+            return position;
+        }
+    }
+
+}
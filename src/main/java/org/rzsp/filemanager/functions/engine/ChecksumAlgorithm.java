@@ -0,0 +1,193 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/**
+ * Алгоритмы контрольных сумм для проверки целостности копий.
+ * CRC32C - быстрая некриптографическая сумма с аппаратной поддержкой в JDK, обнаруживает случайные повреждения.
+ * SHA-256 - криптографическая сумма, совместимая с sha256sum.
+ */
+public enum ChecksumAlgorithm {
+
+    CRC32C("crc32c") {
+        @Override
+        public Hasher newHasher() {
+            CRC32C crc = new CRC32C();
+            return new Hasher() {
+                @Override
+                public void update(ByteBuffer data) {
+                    crc.update(data);
+                }
+
+                @Override
+                public String digest() {
+                    return String.format("%08x", crc.getValue());
+                }
+            };
+        }
+    },
+
+    SHA256("sha256") {
+        @Override
+        public Hasher newHasher() {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported", e);
+            }
+
+            return new Hasher() {
+                @Override
+                public void update(ByteBuffer data) {
+                    digest.update(data);
+                }
+
+                @Override
+                public String digest() {
+                    return HexFormat.of().formatHex(digest.digest());
+                }
+            };
+        }
+    };
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Общий для всех алгоритмов пул: проверка манифеста и повторное чтение копий не выделяют буфер на каждый файл
+    private static final BufferPool READ_BUFFERS = new BufferPool(READ_BUFFER_SIZE, BufferPool.DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final String name;
+
+    ChecksumAlgorithm(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Накопитель контрольной суммы одного потока данных.
+     */
+    public interface Hasher {
+
+        /**
+         * Добавляет к сумме оставшиеся байты буфера, позиция буфера переходит в его limit.
+         *
+         * @param data данные
+         */
+        void update(ByteBuffer data);
+
+        /**
+         * @return контрольная сумма в шестнадцатеричном виде
+         */
+        String digest();
+
+    }
+
+    /**
+     * @return новый накопитель контрольной суммы
+     */
+    public abstract Hasher newHasher();
+
+    /**
+     * @return название алгоритма в манифестах и аргументах командной строки
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Вычисляет контрольную сумму файла, читая его блоками.
+     *
+     * @param file файл
+     * @return контрольная сумма в шестнадцатеричном виде
+     * @throws IOException если файл не удалось прочитать
+     */
+    public String checksum(Path file) throws IOException {
+        Hasher hasher = newHasher();
+
+        try (FileChannel in = FileChannels.openForRead(file)) {
+            update(hasher, in, Long.MAX_VALUE);
+        }
+
+        return hasher.digest();
+    }
+
+    /**
+     * Добавляет к сумме байты канала, начиная с его текущей позиции.
+     *
+     * @param hasher накопитель контрольной суммы
+     * @param in канал, позиция которого сдвигается на прочитанные байты
+     * @param length максимальное количество байтов, чтение останавливается раньше на конце файла
+     * @throws IOException если канал не удалось прочитать
+     */
+    public static void update(Hasher hasher, FileChannel in, long length) throws IOException {
+        ByteBuffer buffer = READ_BUFFERS.acquire();
+
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = in.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                buffer.flip();
+                hasher.update(buffer);
+                buffer.clear();
+                remaining -= read;
+            }
+        } finally {
+            READ_BUFFERS.release(buffer);
+        }
+    }
+
+    /**
+     * Объединяет два накопителя, чтобы одни и те же данные добавлялись к двум контрольным суммам.
+     *
+     * @param first первый накопитель или null
+     * @param second второй накопитель или null
+     * @return накопитель, передающий данные обоим, или единственный ненулевой из них;
+     *         {@link Hasher#digest()} объединенного накопителя возвращает сумму первого
+     */
+    public static Hasher tee(Hasher first, Hasher second) {
+        if (first == null || second == null) {
+            return first != null ? first : second;
+        }
+
+        return new Hasher() {
+            @Override
+            public void update(ByteBuffer data) {
+                second.update(data.duplicate());
+                first.update(data);
+            }
+
+            @Override
+            public String digest() {
+                return first.digest();
+            }
+        };
+    }
+
+    /**
+     * Находит алгоритм по названию.
+     *
+     * @param name название алгоритма, например "sha256" или "crc32c"
+     * @return алгоритм
+     * @throws IllegalArgumentException если алгоритм с таким названием не поддерживается
+     */
+    public static ChecksumAlgorithm fromName(String name) {
+        String normalized = name.strip().toLowerCase(Locale.ROOT).replace("-", "");
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(normalized)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum algorithm: " + name + ", expected crc32c or sha256");
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Стратегия копирования с вычислением контрольной суммы на лету.
+ * Каждый блок читается в прямой буфер, добавляется к контрольной сумме и записывается в файл назначения,
+ * поэтому для контрольной суммы файл не читается повторно.
+ * Буферы берутся из {@link BufferPool} и переиспользуются между копированиями, в том числе из разных потоков.
+ * Если задано ограничение скорости, токены запрашиваются до взятия буфера из пула.
+ */
+public class ChecksumCopyEngine implements CopyEngine {
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ChecksumAlgorithm algorithm;
+    private final CopyThrottle throttle;
+    private final BufferPool buffers = new BufferPool(BUFFER_SIZE, BufferPool.DEFAULT_MAX_POOLED_BUFFERS);
+
+    /**
+     * Конструктор класса ChecksumCopyEngine.
+     *
+     * @param algorithm алгоритм контрольной суммы
+     * @param throttle ограничение скорости или null
+     * @throws IllegalArgumentException если алгоритм null
+     */
+    public ChecksumCopyEngine(ChecksumAlgorithm algorithm, CopyThrottle throttle) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Checksum algorithm must be not null");
+        }
+
+        this.algorithm = algorithm;
+        this.throttle = throttle;
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            return transfer(in, out, in.size(), algorithm.newHasher());
+        }
+    }
+
+    /**
+     * Копирует файл, добавляя скопированные данные к переданному накопителю.
+     *
+     * @param source копируемый файл
+     * @param target файл назначения
+     * @param hasher накопитель контрольной суммы, алгоритм которого может отличаться от алгоритма стратегии
+     * @return количество скопированных байтов
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public long copy(Path source, Path target, ChecksumAlgorithm.Hasher hasher) throws IOException {
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            return transfer(in, out, in.size(), hasher);
+        }
+    }
+
+    /**
+     * Копирует файл и возвращает контрольную сумму скопированных данных.
+     *
+     * @param source копируемый файл
+     * @param target файл назначения
+     * @return контрольная сумма в шестнадцатеричном виде
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public String copyWithChecksum(Path source, Path target) throws IOException {
+        ChecksumAlgorithm.Hasher hasher = algorithm.newHasher();
+
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            transfer(in, out, in.size(), hasher);
+        }
+
+        return hasher.digest();
+    }
+
+    /**
+     * Копирует данные между текущими позициями каналов, добавляя их к контрольной сумме.
+     *
+     * @param in канал исходного файла
+     * @param out канал файла назначения
+     * @param length количество копируемых байтов
+     * @param hasher накопитель контрольной суммы
+     * @return количество скопированных байтов, меньше length, если исходный файл был усечен
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public long transfer(FileChannel in, FileChannel out, long length, ChecksumAlgorithm.Hasher hasher) throws IOException {
+        long copied = 0;
+
+        while (copied < length) {
+            if (throttle != null) {
+                throttle.acquireBytes(Math.min(BUFFER_SIZE, length - copied));
+            }
+
+            ByteBuffer buffer = buffers.acquire();
+            try {
+                buffer.limit((int) Math.min(BUFFER_SIZE, length - copied));
+                int read = in.read(buffer);
+                if (read == -1) {
+                    break; // Файл был усечен во время копирования
+                }
+
+                buffer.flip();
+                hasher.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                copied += read;
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+
+        return copied;
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Интерфейс стратегии копирования содержимого одного файла.
+ * Реализации отличаются способом переноса байтов, но дают одинаковый результат.
+ */
+public interface CopyEngine {
+
+    /**
+     * Копирует содержимое исходного файла в файл назначения.
+     * Если файл назначения существует, он перезаписывается.
+     *
+     * @param source копируемый файл
+     * @param target файл назначения
+     * @return количество скопированных байтов
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    long copy(Path source, Path target) throws IOException;
+
+}
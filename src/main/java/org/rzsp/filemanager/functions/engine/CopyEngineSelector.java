@@ -0,0 +1,62 @@
+package org.rzsp.filemanager.functions.engine;
+
+/**
+ * Класс, выбирающий стратегию копирования для файла по его размеру.
+ * Файлы меньше порога копируются через {@link StreamCopyEngine}, остальные через {@link ChannelCopyEngine}
+ * или через заданную стратегию для больших файлов, например {@link PipelinedCopyEngine}.
+ */
+public class CopyEngineSelector {
+    public static final long DEFAULT_ZERO_COPY_THRESHOLD = 64 * 1024; // Начиная с 64 КБ выгоднее копирование без буфера
+
+    private final long zeroCopyThreshold;
+
+    private final CopyEngine streamEngine = new StreamCopyEngine();
+    private final CopyEngine largeFileEngine;
+
+    /**
+     * Конструктор с порогом по умолчанию {@link #DEFAULT_ZERO_COPY_THRESHOLD}.
+     */
+    public CopyEngineSelector() {
+        this(DEFAULT_ZERO_COPY_THRESHOLD);
+    }
+
+    /**
+     * Конструктор класса CopyEngineSelector.
+     *
+     * @param zeroCopyThreshold размер файла в байтах, начиная с которого используется {@link ChannelCopyEngine}
+     * @throws IllegalArgumentException если порог отрицательный
+     */
+    public CopyEngineSelector(long zeroCopyThreshold) {
+        this(zeroCopyThreshold, new ChannelCopyEngine());
+    }
+
+    /**
+     * Конструктор с заданной стратегией копирования больших файлов.
+     *
+     * @param threshold размер файла в байтах, начиная с которого используется largeFileEngine
+     * @param largeFileEngine стратегия копирования файлов не меньше порога
+     * @throws IllegalArgumentException если порог отрицательный или стратегия null
+     */
+    public CopyEngineSelector(long threshold, CopyEngine largeFileEngine) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Zero-copy threshold must be not negative");
+        }
+        if (largeFileEngine == null) {
+            throw new IllegalArgumentException("Copy engine must be not null");
+        }
+
+        this.zeroCopyThreshold = threshold;
+        this.largeFileEngine = largeFileEngine;
+    }
+
+    /**
+     * Возвращает стратегию копирования для файла заданного размера.
+     *
+     * @param fileSize размер копируемого файла в байтах
+     * @return стратегия копирования
+     */
+    public CopyEngine select(long fileSize) {
+        return fileSize < zeroCopyThreshold ? streamEngine : largeFileEngine;
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс ограничения скорости копирования по байтам и файлам в секунду.
+ * Каждое ограничение - корзина токенов с запасом на одну секунду работы.
+ * Запрос оплачивается заранее: если токены есть, запрос выполняется сразу и может увести корзину в долг,
+ * следующие запросы ждут, пока долг не будет погашен. Поэтому средняя скорость не превышает заданную.
+ * <p>
+ * Один экземпляр разделяется всеми потоками параллельного копирования.
+ * Ограничения можно менять во время копирования, ожидающие потоки сразу получают новое значение.
+ * Токены запрашиваются до чтения очередной части файла, поэтому ожидающий поток не держит буферы.
+ */
+public class CopyThrottle {
+    public static final long UNLIMITED = 0;
+
+    private final TokenBucket bytes;
+    private final TokenBucket files;
+    private final LongAdder throttledNanos = new LongAdder();
+
+    /**
+     * Конструктор класса CopyThrottle.
+     *
+     * @param bytesPerSecond ограничение байтов в секунду, {@link #UNLIMITED} - без ограничения
+     * @param filesPerSecond ограничение файлов в секунду, {@link #UNLIMITED} - без ограничения
+     * @throws IllegalArgumentException если ограничение отрицательное
+     */
+    public CopyThrottle(long bytesPerSecond, long filesPerSecond) {
+        this.bytes = new TokenBucket(checkRate(bytesPerSecond));
+        this.files = new TokenBucket(checkRate(filesPerSecond));
+    }
+
+    public long getBytesPerSecond() {
+        return bytes.getRate();
+    }
+
+    /**
+     * @param bytesPerSecond новое ограничение байтов в секунду, {@link #UNLIMITED} - без ограничения
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        bytes.setRate(checkRate(bytesPerSecond));
+    }
+
+    public long getFilesPerSecond() {
+        return files.getRate();
+    }
+
+    /**
+     * @param filesPerSecond новое ограничение файлов в секунду, {@link #UNLIMITED} - без ограничения
+     */
+    public void setFilesPerSecond(long filesPerSecond) {
+        files.setRate(checkRate(filesPerSecond));
+    }
+
+    /**
+     * Ожидает разрешения прочитать и записать заданное количество байтов.
+     *
+     * @param amount количество байтов
+     * @throws InterruptedIOException если поток был прерван во время ожидания
+     */
+    public void acquireBytes(long amount) throws InterruptedIOException {
+        acquire(bytes, amount);
+    }
+
+    /**
+     * Ожидает разрешения начать копирование очередного файла.
+     *
+     * @throws InterruptedIOException если поток был прерван во время ожидания
+     */
+    public void acquireFile() throws InterruptedIOException {
+        acquire(files, 1);
+    }
+
+    /**
+     * @return суммарное время ожидания всех потоков в наносекундах
+     */
+    public long getThrottledNanos() {
+        return throttledNanos.sum();
+    }
+
+    private void acquire(TokenBucket bucket, long amount) throws InterruptedIOException {
+        try {
+            long waited = bucket.acquire(amount);
+            if (waited > 0) {
+                throttledNanos.add(waited);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copying was interrupted while throttled");
+        }
+    }
+
+    private static long checkRate(long rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate limit must be not negative");
+        }
+        return rate;
+    }
+
+    /**
+     * Корзина токенов, пополняемая со скоростью rate в секунду до запаса в одну секунду.
+     */
+    private static final class TokenBucket {
+        private long rate;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(long rate) {
+            this.rate = rate;
+            this.tokens = rate;
+        }
+
+        synchronized long getRate() {
+            return rate;
+        }
+
+        synchronized void setRate(long rate) {
+            refill();
+            this.rate = rate;
+            this.tokens = Math.min(tokens, rate);
+            notifyAll();
+        }
+
+        /**
+         * @return время ожидания в наносекундах
+         */
+        synchronized long acquire(long amount) throws InterruptedException {
+            long start = System.nanoTime();
+
+            while (rate != UNLIMITED) {
+                refill();
+                if (tokens >= 0) {
+                    tokens -= amount;
+                    break;
+                }
+
+                long waitNanos = (long) Math.ceil(-tokens * 1e9 / rate);
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+
+            return System.nanoTime() - start;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            if (rate != UNLIMITED) {
+                tokens = Math.min(rate, tokens + (now - lastRefill) * (double) rate / 1e9);
+            }
+            lastRefill = now;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Стратегия обновления существующей копии большого файла по блокам.
+ * Исходный файл и файл назначения делятся на блоки фиксированного размера, которые сравниваются побайтно
+ * через отображенные в память окна {@link FileChannel#map}. Перезаписываются на месте только отличающиеся блоки,
+ * поэтому изменение нескольких килобайтов в образе диска приводит к записи нескольких блоков, а не всего файла.
+ * <p>
+ * Оба файла локальны, поэтому блоки сравниваются напрямую, без контрольных сумм: чтение обоих файлов
+ * требуется в любом случае, а прямое сравнение не дает ложных совпадений.
+ * Счетчики совпавших и перезаписанных блоков накапливаются по всем файлам, скопированным этим экземпляром.
+ * Если задано ограничение скорости, токены запрашиваются перед сравнением каждого блока:
+ * блок читается из обоих файлов, даже если не перезаписывается.
+ */
+public class DeltaCopyEngine implements CopyEngine {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024; // Размер отображаемого в память окна файла
+
+    private final int blockSize;
+    private final long windowSize;
+    private final CopyThrottle throttle;
+    private final LongAdder matchedBlocks = new LongAdder();
+    private final LongAdder rewrittenBlocks = new LongAdder();
+
+    /**
+     * Конструктор с размером блока {@link #DEFAULT_BLOCK_SIZE}.
+     */
+    public DeltaCopyEngine() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Конструктор класса DeltaCopyEngine.
+     *
+     * @param blockSize размер сравниваемого блока в байтах
+     * @throws IllegalArgumentException если размер блока не положительный
+     */
+    public DeltaCopyEngine(int blockSize) {
+        this(blockSize, null);
+    }
+
+    /**
+     * Конструктор с ограничением скорости.
+     *
+     * @param blockSize размер сравниваемого блока в байтах
+     * @param throttle ограничение скорости или null
+     * @throws IllegalArgumentException если размер блока не положительный
+     */
+    public DeltaCopyEngine(int blockSize, CopyThrottle throttle) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.blockSize = blockSize;
+        this.windowSize = Math.max(1, WINDOW_SIZE / blockSize) * blockSize;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Обновляет файл назначения до содержимого исходного файла, перезаписывая только отличающиеся блоки.
+     * Если файл назначения не существует, он создается и все блоки считаются перезаписанными.
+     *
+     * @return количество записанных байтов
+     */
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        return copy(source, target, null);
+    }
+
+    /**
+     * Обновляет файл назначения и добавляет к контрольной сумме все блоки исходного файла.
+     * Блоки уже отображены в память для сравнения, поэтому для контрольной суммы файлы не читаются повторно.
+     *
+     * @param source исходный файл
+     * @param target файл назначения
+     * @param hasher накопитель контрольной суммы исходного файла или null
+     * @return количество записанных байтов
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public long copy(Path source, Path target, ChecksumAlgorithm.Hasher hasher) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source, READ);
+                FileChannel out = FileChannel.open(target, READ, WRITE, CREATE)
+        ) {
+            long size = in.size();
+            long targetSize = out.size();
+            long written = 0;
+
+            for (long windowStart = 0; windowStart < size; windowStart += windowSize) {
+                int length = (int) Math.min(windowSize, size - windowStart);
+                int comparable = (int) Math.max(0, Math.min(length, targetSize - windowStart));
+
+                MappedByteBuffer sourceWindow = in.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+                MappedByteBuffer targetWindow = comparable > 0 ? out.map(FileChannel.MapMode.READ_ONLY, windowStart, comparable) : null;
+
+                for (int offset = 0; offset < length; offset += blockSize) {
+                    int blockLength = Math.min(blockSize, length - offset);
+                    if (throttle != null) {
+                        throttle.acquireBytes(blockLength);
+                    }
+                    ByteBuffer sourceBlock = sourceWindow.slice(offset, blockLength);
+                    if (hasher != null) {
+                        hasher.update(sourceBlock.duplicate());
+                    }
+
+                    if (offset + blockLength <= comparable && sourceBlock.mismatch(targetWindow.slice(offset, blockLength)) == -1) {
+                        matchedBlocks.increment();
+                        continue;
+                    }
+
+                    long position = windowStart + offset;
+                    while (sourceBlock.hasRemaining()) {
+                        position += out.write(sourceBlock, position);
+                    }
+                    written += blockLength;
+                    rewrittenBlocks.increment();
+                }
+            }
+
+            if (targetSize > size) {
+                out.truncate(size);
+            }
+
+            return written;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return количество блоков, совпавших с файлом назначения
+     */
+    public long getMatchedBlocks() {
+        return matchedBlocks.sum();
+    }
+
+    /**
+     * @return количество перезаписанных блоков
+     */
+    public long getRewrittenBlocks() {
+        return rewrittenBlocks.sum();
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Открытие каналов файлов с заранее созданными наборами опций.
+ * {@link FileChannel#open(Path, OpenOption...)} создает новый HashSet опций при каждом вызове,
+ * здесь наборы общие, и на открытие файла приходятся только объекты самого канала.
+ */
+final class FileChannels {
+    private static final Set<OpenOption> READ_OPTIONS = Set.of(READ);
+    private static final Set<OpenOption> WRITE_OPTIONS = Set.of(WRITE, CREATE, TRUNCATE_EXISTING);
+    private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+
+    private FileChannels() {
+    }
+
+    /**
+     * @return канал чтения файла
+     */
+    static FileChannel openForRead(Path file) throws IOException {
+        return FileChannel.open(file, READ_OPTIONS, NO_ATTRIBUTES);
+    }
+
+    /**
+     * @return канал записи файла: файл создается, если его нет, иначе усекается
+     */
+    static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, WRITE_OPTIONS, NO_ATTRIBUTES);
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Стратегия копирования с перекрытием чтения и записи.
+ * Используется кольцо из depth прямых буферов: чтение следующих блоков через {@link AsynchronousFileChannel}
+ * выполняется в фоне, пока текущий поток записывает уже прочитанные блоки в файл назначения.
+ * При копировании между разными устройствами оба устройства заняты одновременно,
+ * и скорость копирования определяется более медленным из них, а не суммой задержек.
+ * <p>
+ * Кольца буферов переиспользуются между копированиями, в том числе из разных потоков.
+ */
+public class PipelinedCopyEngine implements CopyEngine {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_DEPTH = 4;
+
+    private final int bufferSize;
+    private final int depth;
+    private final Queue<ByteBuffer[]> rings = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Конструктор с размером буфера {@link #DEFAULT_BUFFER_SIZE} и глубиной {@link #DEFAULT_DEPTH}.
+     */
+    public PipelinedCopyEngine() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Конструктор класса PipelinedCopyEngine.
+     *
+     * @param bufferSize размер одного буфера кольца в байтах
+     * @param depth количество буферов кольца, то есть сколько блоков может быть прочитано наперед
+     * @throws IllegalArgumentException если размер буфера или глубина не положительные
+     */
+    public PipelinedCopyEngine(int bufferSize, int depth) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be positive");
+        }
+
+        this.bufferSize = bufferSize;
+        this.depth = depth;
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        ByteBuffer[] ring = acquireRing();
+
+        try (
+                AsynchronousFileChannel in = AsynchronousFileChannel.open(source, READ);
+                FileChannel out = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)
+        ) {
+            return copy(in, out, ring);
+        } finally {
+            rings.offer(ring);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private long copy(AsynchronousFileChannel in, FileChannel out, ByteBuffer[] ring) throws IOException {
+        @SuppressWarnings("unchecked")
+        Future<Integer>[] pending = (Future<Integer>[]) new Future<?>[depth];
+        long[] positions = new long[depth];
+
+        long size = in.size();
+        long readPosition = 0;
+        long written = 0;
+
+        try {
+            // Запускаем чтение во все буферы кольца
+            for (int slot = 0; slot < depth && readPosition < size; slot++) {
+                positions[slot] = readPosition;
+                pending[slot] = startRead(in, ring[slot], readPosition, size);
+                readPosition += bufferSize;
+            }
+
+            for (int slot = 0; pending[slot] != null; slot = (slot + 1) % depth) {
+                ByteBuffer buffer = ring[slot];
+                int read = await(pending[slot]);
+                pending[slot] = null;
+
+                // Асинхронное чтение может вернуть меньше запрошенного, дочитываем блок до конца
+                while (read >= 0 && buffer.hasRemaining()) {
+                    read = await(in.read(buffer, positions[slot] + buffer.position()));
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+
+                if (readPosition < size) {
+                    positions[slot] = readPosition;
+                    pending[slot] = startRead(in, buffer, readPosition, size);
+                    readPosition += bufferSize;
+                }
+            }
+        } finally {
+            // Буферы возвращаются в пул только после завершения всех начатых чтений
+            for (Future<Integer> future : pending) {
+                if (future != null) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        // Ошибка уже не важна, копирование завершается исключением
+                    }
+                }
+            }
+        }
+
+        return written;
+    }
+
+    private Future<Integer> startRead(AsynchronousFileChannel in, ByteBuffer buffer, long position, long size) {
+        buffer.clear();
+        buffer.limit((int) Math.min(bufferSize, size - position));
+        return in.read(buffer, position);
+    }
+
+    private static int await(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copying was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private ByteBuffer[] acquireRing() {
+        ByteBuffer[] ring = rings.poll();
+        if (ring != null) {
+            return ring;
+        }
+
+        ring = new ByteBuffer[depth];
+        for (int i = 0; i < depth; i++) {
+            ring[i] = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return ring;
+    }
+
+}
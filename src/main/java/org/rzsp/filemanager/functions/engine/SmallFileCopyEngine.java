@@ -0,0 +1,81 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Стратегия копирования маленьких файлов: файл целиком читается в буфер из пула и записывается одним вызовом.
+ * Размер файла уже известен из обхода, поэтому чтение останавливается, как только прочитан весь файл,
+ * без лишнего чтения до конца файла. На файл приходятся только открытие, одно чтение, одна запись и закрытие.
+ * Буферы имеют размер максимального маленького файла и общие для всех потоков.
+ */
+public class SmallFileCopyEngine implements CopyEngine {
+    public static final int DEFAULT_MAX_FILE_SIZE = 16 * 1024;
+
+    private final BufferPool buffers;
+
+    /**
+     * Конструктор класса SmallFileCopyEngine.
+     *
+     * @param maxFileSize максимальный размер файла, который копируется через эту стратегию
+     * @throws IllegalArgumentException если размер не положительный
+     */
+    public SmallFileCopyEngine(int maxFileSize) {
+        if (maxFileSize < 1) {
+            throw new IllegalArgumentException("Max small file size must be positive");
+        }
+
+        this.buffers = new BufferPool(maxFileSize, BufferPool.DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    public int getMaxFileSize() {
+        return buffers.getBufferSize();
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        return copy(source, target, -1);
+    }
+
+    /**
+     * Копирует файл, размер которого известен.
+     * Копия соответствует размеру файла на момент чтения атрибутов: дописанные после этого данные не копируются,
+     * файл, который стал больше буфера, копируется через буфер по частям.
+     *
+     * @param source исходный файл
+     * @param target файл назначения
+     * @param expectedSize размер файла из атрибутов или -1, если он неизвестен и файл читается до конца
+     * @return количество скопированных байтов
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public long copy(Path source, Path target, long expectedSize) throws IOException {
+        long copiedBytes = 0;
+        ByteBuffer buffer = buffers.acquire();
+
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            boolean endOfFile = expectedSize == 0;
+            while (!endOfFile) {
+                int read = in.read(buffer);
+                endOfFile = read == -1 || copiedBytes + buffer.position() == expectedSize;
+
+                if (endOfFile || !buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        copiedBytes += out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+
+        return copiedBytes;
+    }
+
+}
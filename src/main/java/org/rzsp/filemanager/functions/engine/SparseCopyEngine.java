@@ -0,0 +1,147 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Стратегия копирования разреженных файлов с сохранением дыр.
+ * Файл назначения сразу получает полный размер исходного файла одним вызовом setLength,
+ * затем исходный файл читается блоками, и блоки из одних нулей не записываются - на их месте остаются дыры.
+ * <p>
+ * Java не предоставляет SEEK_DATA/SEEK_HOLE и fallocate, поэтому дыры определяются по нулевым блокам,
+ * а размер файла назначения задается заранее через ftruncate без выделения места на диске.
+ * Нулевые блоки внутри данных тоже становятся дырами, что не меняет содержимого файла.
+ * Если задано ограничение скорости, токены запрашиваются перед чтением каждого блока.
+ * Буферы блоков берутся из собственного пула, поэтому на каждый файл буфер не выделяется.
+ */
+public class SparseCopyEngine implements CopyEngine {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final int blockSize;
+    private final CopyThrottle throttle;
+    private final ByteBuffer zeroBlock;
+    private final BufferPool buffers;
+    private final LongAdder skippedBytes = new LongAdder();
+
+    /**
+     * Конструктор с размером блока {@link #DEFAULT_BLOCK_SIZE}.
+     */
+    public SparseCopyEngine() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Конструктор класса SparseCopyEngine.
+     *
+     * @param blockSize размер проверяемого на нули блока, не меньше размера блока файловой системы
+     * @throws IllegalArgumentException если размер блока не положительный
+     */
+    public SparseCopyEngine(int blockSize) {
+        this(blockSize, null);
+    }
+
+    /**
+     * Конструктор с ограничением скорости.
+     *
+     * @param blockSize размер проверяемого на нули блока, не меньше размера блока файловой системы
+     * @param throttle ограничение скорости или null
+     * @throws IllegalArgumentException если размер блока не положительный
+     */
+    public SparseCopyEngine(int blockSize, CopyThrottle throttle) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.blockSize = blockSize;
+        this.throttle = throttle;
+        this.zeroBlock = ByteBuffer.allocateDirect(blockSize).asReadOnlyBuffer();
+        this.buffers = new BufferPool(blockSize, BufferPool.DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        return copy(source, target, null);
+    }
+
+    /**
+     * Копирует файл и добавляет к контрольной сумме все прочитанные блоки, включая нулевые.
+     *
+     * @param source исходный файл
+     * @param target файл назначения
+     * @param hasher накопитель контрольной суммы исходного файла или null
+     * @return количество скопированных байтов
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    public long copy(Path source, Path target, ChecksumAlgorithm.Hasher hasher) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source, READ);
+                RandomAccessFile out = new RandomAccessFile(target.toFile(), "rw")
+        ) {
+            long size = in.size();
+
+            // Старое содержимое отбрасывается, чтобы непрочитанные участки были дырами, а не старыми данными
+            out.setLength(0);
+            out.setLength(size);
+
+            FileChannel outChannel = out.getChannel();
+            ByteBuffer buffer = buffers.acquire();
+            long position = 0;
+
+            try {
+                while (position < size) {
+                    if (throttle != null) {
+                        throttle.acquireBytes(Math.min(blockSize, size - position));
+                    }
+                    buffer.clear();
+                    int read = in.read(buffer, position);
+                    if (read <= 0) {
+                        break; // Файл был усечен во время копирования
+                    }
+                    buffer.flip();
+                    if (hasher != null) {
+                        hasher.update(buffer.duplicate());
+                    }
+
+                    if (buffer.mismatch(zeroBlock.slice(0, read)) == -1) {
+                        skippedBytes.add(read);
+                    } else {
+                        long writePosition = position;
+                        while (buffer.hasRemaining()) {
+                            writePosition += outChannel.write(buffer, writePosition);
+                        }
+                    }
+                    position += read;
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+
+            return position;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return пул буферов блоков
+     */
+    public BufferPool getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * @return количество байтов нулевых блоков, оставленных дырами
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.sum();
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Стратегия копирования через буфер в памяти: каждый блок читается в буфер и затем записывается в файл назначения.
+ * Используется для небольших файлов и как запасной вариант.
+ * Буферы прямые и берутся из {@link BufferPool}, каналы открываются через {@link FileChannels},
+ * поэтому в установившемся режиме копирование файла создает только объекты каналов.
+ * Буфер размером с порог {@link CopyEngineSelector#DEFAULT_ZERO_COPY_THRESHOLD} копирует небольшой файл за одно чтение.
+ */
+public class StreamCopyEngine implements CopyEngine {
+    public static final int BUFFER_SIZE = 64 * 1024; // Размер буфера для копирования файла
+
+    private final BufferPool buffers;
+
+    /**
+     * Конструктор с собственным пулом буферов размером {@link #BUFFER_SIZE}.
+     */
+    public StreamCopyEngine() {
+        this(new BufferPool(BUFFER_SIZE, BufferPool.DEFAULT_MAX_POOLED_BUFFERS));
+    }
+
+    /**
+     * Конструктор класса StreamCopyEngine.
+     *
+     * @param buffers пул буферов, может быть общим с другими стратегиями
+     * @throws IllegalArgumentException если пул null
+     */
+    public StreamCopyEngine(BufferPool buffers) {
+        if (buffers == null) {
+            throw new IllegalArgumentException("Buffer pool must be not null");
+        }
+
+        this.buffers = buffers;
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        long copiedBytes = 0;
+        ByteBuffer buffer = buffers.acquire();
+
+        try (
+                FileChannel in = FileChannels.openForRead(source);
+                FileChannel out = FileChannels.openForWrite(target)
+        ) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    copiedBytes += out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+
+        return copiedBytes;
+    }
+
+}
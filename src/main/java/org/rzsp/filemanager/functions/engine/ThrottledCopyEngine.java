@@ -0,0 +1,75 @@
+package org.rzsp.filemanager.functions.engine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Стратегия копирования с ограничением скорости через {@link CopyThrottle}.
+ * Файл переносится частями через {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * перед каждой частью запрашиваются токены. Данные не проходят через буферы в пространстве пользователя,
+ * поэтому поток, ожидающий токены, не удерживает память.
+ */
+public class ThrottledCopyEngine implements CopyEngine {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final CopyThrottle throttle;
+    private final int chunkSize;
+
+    /**
+     * Конструктор с размером части {@link #DEFAULT_CHUNK_SIZE}.
+     *
+     * @param throttle ограничение скорости
+     */
+    public ThrottledCopyEngine(CopyThrottle throttle) {
+        this(throttle, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Конструктор класса ThrottledCopyEngine.
+     *
+     * @param throttle ограничение скорости
+     * @param chunkSize размер части файла, для которой запрашиваются токены
+     * @throws IllegalArgumentException если ограничение null или размер части не положительный
+     */
+    public ThrottledCopyEngine(CopyThrottle throttle, int chunkSize) {
+        if (throttle == null) {
+            throw new IllegalArgumentException("Throttle must be not null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        this.throttle = throttle;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public long copy(Path source, Path target) throws IOException {
+        try (
+                FileChannel in = FileChannel.open(source, READ);
+                FileChannel out = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)
+        ) {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long chunkEnd = Math.min(size, position + chunkSize);
+                throttle.acquireBytes(chunkEnd - position);
+
+                while (position < chunkEnd) {
+                    long transferred = in.transferTo(position, chunkEnd - position, out);
+                    if (transferred <= 0) {
+                        return position; // Файл был усечен во время копирования
+                    }
+                    position += transferred;
+                }
+            }
+
+            return position;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.rzsp.filemanager.jobs;
+
+import org.rzsp.filemanager.metrics.OperationMetrics;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс задачи {@link JobScheduler}: описание, состояние, прогресс и результат одной операции.
+ * Состояние меняет только планировщик, задача управляется через {@link JobControl}.
+ */
+public class Job {
+
+    /**
+     * Состояние задачи.
+     */
+    public enum State {
+        QUEUED, RUNNING, PAUSED, COMPLETED, FAILED, CANCELLED;
+
+        /**
+         * @return true, если задача завершилась и больше не изменится
+         */
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final int id;
+    private final String description;
+    private final Set<Object> devices;
+    private final OperationMetrics metrics;
+    private final JobScheduler.Task task;
+    private final JobControl control = new JobControl();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile State state = State.QUEUED; // Без учета паузы, она хранится в control
+    private volatile String error;
+
+    Job(int id, String description, Set<Object> devices, OperationMetrics metrics, JobScheduler.Task task) {
+        this.id = id;
+        this.description = description;
+        this.devices = devices;
+        this.metrics = metrics;
+        this.task = task;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return текущее состояние: ожидающая или выполняемая задача на паузе находится в состоянии {@link State#PAUSED}
+     */
+    public State getState() {
+        State current = state;
+        return !current.isFinished() && control.isPaused() ? State.PAUSED : current;
+    }
+
+    /**
+     * @return метрики операции или null, если они не заданы
+     */
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return строка прогресса из метрик операции или пустая строка, если метрики не заданы
+     */
+    public String getProgress() {
+        return metrics != null ? metrics.progressLine() : "";
+    }
+
+    /**
+     * @return сообщение ошибки задачи в состоянии {@link State#FAILED} или null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Ожидает завершения задачи.
+     *
+     * @param timeout максимальное время ожидания
+     * @param unit единица измерения timeout
+     * @return true, если задача завершилась
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * @return строка для списка задач, например "#2 RUNNING copy /data to /backup - copy: 120.5 MB, 310 files, ..."
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder("#").append(id).append(' ').append(getState()).append(' ').append(description);
+        String progress = getProgress();
+        if (!progress.isEmpty() && state != State.QUEUED) {
+            line.append(" - ").append(progress);
+        }
+        if (error != null) {
+            line.append(" - error: ").append(error);
+        }
+        return line.toString();
+    }
+
+    JobControl getControl() {
+        return control;
+    }
+
+    Set<Object> getDevices() {
+        return devices;
+    }
+
+    JobScheduler.Task getTask() {
+        return task;
+    }
+
+    State getScheduledState() {
+        return state;
+    }
+
+    void setRunning() {
+        state = State.RUNNING;
+    }
+
+    void finish(State result, String message) {
+        error = message;
+        state = result;
+        finished.countDown();
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.rzsp.filemanager.jobs;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Класс управления выполняемой задачей: пауза и отмена.
+ * Задача сама вызывает {@link #checkpoint()} между единицами работы, например перед копированием каждого файла,
+ * поэтому пауза и отмена применяются на границе файла: уже начатый файл копируется до конца.
+ * Пока задача не на паузе и не отменена, {@link #checkpoint()} не берет блокировку.
+ */
+public class JobControl {
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+
+    /**
+     * Ставит задачу на паузу: следующий вызов {@link #checkpoint()} будет ждать {@link #resume()} или {@link #cancel()}.
+     */
+    public synchronized void pause() {
+        if (!cancelled) {
+            paused = true;
+        }
+    }
+
+    /**
+     * Снимает задачу с паузы.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Отменяет задачу: следующий вызов {@link #checkpoint()} выбросит исключение. Отмена снимает паузу.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        paused = false;
+        notifyAll();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Точка проверки между единицами работы задачи: ждет, пока задача на паузе, и прерывает задачу после отмены.
+     *
+     * @throws InterruptedIOException если задача отменена или поток был прерван во время паузы
+     */
+    public void checkpoint() throws InterruptedIOException {
+        if (!paused && !cancelled) {
+            return;
+        }
+
+        synchronized (this) {
+            while (paused) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Job was interrupted");
+                }
+            }
+        }
+
+        if (cancelled) {
+            throw new InterruptedIOException("Job was cancelled");
+        }
+    }
+
+}
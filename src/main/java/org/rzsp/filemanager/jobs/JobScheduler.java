@@ -0,0 +1,308 @@
+package org.rzsp.filemanager.jobs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс планировщика фоновых задач интерактивного режима: копирование и подсчет размеров выполняются,
+ * пока меню принимает следующие команды.
+ * Каждая задача выполняется в своем потоке, но одновременно на одном устройстве выполняется не больше
+ * jobsPerDevice задач. Устройства задачи - хранилища {@link java.nio.file.FileStore} её путей,
+ * например источника и назначения копирования. Задача запускается, только когда свободны все её устройства,
+ * остальные ждут в очереди в порядке добавления, поэтому задачи на разных дисках идут одновременно,
+ * а на одном диске не мешают друг другу.
+ * Задача на паузе продолжает занимать свои устройства.
+ */
+public class JobScheduler implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(JobScheduler.class);
+
+    public static final int DEFAULT_JOBS_PER_DEVICE = 1;
+
+    private static final long AWAIT_POLL_MILLIS = 100; // Как часто ожидание всех задач проверяет, не поставлена ли задача на паузу
+
+    /**
+     * Операция задачи. Между единицами работы операция вызывает {@link JobControl#checkpoint()}.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run(JobControl control) throws Exception;
+    }
+
+    private final int jobsPerDevice;
+    private final ExecutorService threads;
+
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>();
+    private final Map<Object, Integer> runningJobsPerDevice = new HashMap<>();
+    private int nextId = 1;
+
+    /**
+     * Конструктор класса JobScheduler.
+     *
+     * @param jobsPerDevice максимальное количество задач, одновременно выполняемых на одном устройстве
+     * @throws IllegalArgumentException если ограничение не положительное
+     */
+    public JobScheduler(int jobsPerDevice) {
+        if (jobsPerDevice < 1) {
+            throw new IllegalArgumentException("Jobs per device must be positive");
+        }
+
+        this.jobsPerDevice = jobsPerDevice;
+        AtomicInteger counter = new AtomicInteger();
+        this.threads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "job-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Добавляет задачу в очередь и запускает её, если свободны все её устройства.
+     *
+     * @param description описание задачи для списка задач
+     * @param paths пути, по которым определяются устройства задачи
+     * @param metrics метрики операции, из которых берется прогресс, может быть null
+     * @param task операция
+     * @return добавленная задача
+     * @throws IllegalArgumentException если описание, пути или операция null
+     */
+    public Job submit(String description, Collection<Path> paths, OperationMetrics metrics, Task task) {
+        if (description == null || paths == null || task == null) {
+            throw new IllegalArgumentException("Job description, paths and task must be not null");
+        }
+
+        // Хранилища определяются до блокировки: это обращения к файловой системе
+        Set<Object> devices = new HashSet<>();
+        for (Path path : paths) {
+            devices.add(deviceOf(path));
+        }
+
+        synchronized (this) {
+            Job job = new Job(nextId++, description, devices, metrics, task);
+            jobs.put(job.getId(), job);
+            logger.info("Job {} is submitted: {}", job.getId(), description);
+
+            schedule();
+            return job;
+        }
+    }
+
+    /**
+     * @return все задачи сессии в порядке добавления
+     */
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * @return задача с указанным номером или null
+     */
+    public synchronized Job getJob(int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Отменяет задачу. Ожидающая задача отменяется сразу, выполняемая - в следующей точке проверки.
+     *
+     * @return false, если задачи нет или она уже завершилась
+     */
+    public synchronized boolean cancel(int id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getScheduledState().isFinished()) {
+            return false;
+        }
+
+        job.getControl().cancel();
+        if (job.getScheduledState() == Job.State.QUEUED) {
+            job.finish(Job.State.CANCELLED, null);
+            logger.info("Job {} is cancelled before start", id);
+        }
+        return true;
+    }
+
+    /**
+     * Ставит задачу на паузу. Ожидающая задача на паузе не запускается.
+     *
+     * @return false, если задачи нет или она уже завершилась
+     */
+    public synchronized boolean pause(int id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getScheduledState().isFinished()) {
+            return false;
+        }
+
+        job.getControl().pause();
+        return true;
+    }
+
+    /**
+     * Снимает задачу с паузы.
+     *
+     * @return false, если задачи нет или она уже завершилась
+     */
+    public synchronized boolean resume(int id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getScheduledState().isFinished()) {
+            return false;
+        }
+
+        job.getControl().resume();
+        schedule();
+        return true;
+    }
+
+    /**
+     * @return количество задач, которые еще не завершились
+     */
+    public synchronized int getActiveJobs() {
+        int active = 0;
+        for (Job job : jobs.values()) {
+            if (!job.getScheduledState().isFinished()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Ожидает завершения всех задач, которые могут продвинуться без действий пользователя.
+     * Задачи на паузе не ожидаются, как и ожидающие в очереди задачи, устройства которых заняты задачами на паузе:
+     * ожидание возвращается, когда не осталось выполняемых задач не на паузе.
+     *
+     * @throws InterruptedException если поток был прерван во время ожидания
+     */
+    public void awaitAll() throws InterruptedException {
+        Job running;
+        while ((running = findRunningJob()) != null) {
+            // Задачу могут поставить на паузу во время ожидания, поэтому оно периодически перепроверяется
+            running.await(AWAIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Отменяет все задачи на паузе.
+     *
+     * @return количество отмененных задач
+     */
+    public synchronized int cancelPaused() {
+        int cancelled = 0;
+        for (Job job : jobs.values()) {
+            if (job.getState() == Job.State.PAUSED && cancel(job.getId())) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Отменяет все незавершенные задачи и останавливает потоки планировщика.
+     */
+    @Override
+    public void close() {
+        for (Job job : getJobs()) {
+            cancel(job.getId());
+        }
+        threads.shutdown();
+    }
+
+    /**
+     * Запускает ожидающие задачи, все устройства которых свободны. Вызывается под блокировкой планировщика.
+     */
+    private void schedule() {
+        for (Job job : jobs.values()) {
+            if (job.getScheduledState() != Job.State.QUEUED || job.getControl().isPaused() || !hasFreeSlots(job.getDevices())) {
+                continue;
+            }
+
+            for (Object device : job.getDevices()) {
+                runningJobsPerDevice.merge(device, 1, Integer::sum);
+            }
+            job.setRunning();
+            logger.info("Job {} is started", job.getId());
+            threads.execute(() -> run(job));
+        }
+    }
+
+    /**
+     * @return выполняемая задача не на паузе или null, если таких нет.
+     *         Ожидающие задачи запускаются под той же блокировкой, под которой завершается задача, занимавшая их устройства,
+     *         поэтому задача, которая может запуститься, к этому моменту уже выполняется
+     */
+    private synchronized Job findRunningJob() {
+        for (Job job : jobs.values()) {
+            if (job.getScheduledState() == Job.State.RUNNING && !job.getControl().isPaused()) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasFreeSlots(Set<Object> devices) {
+        for (Object device : devices) {
+            if (runningJobsPerDevice.getOrDefault(device, 0) >= jobsPerDevice) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void run(Job job) {
+        Job.State result;
+        String error = null;
+
+        try {
+            job.getTask().run(job.getControl());
+            result = job.getControl().isCancelled() ? Job.State.CANCELLED : Job.State.COMPLETED;
+        } catch (Exception e) {
+            if (job.getControl().isCancelled()) {
+                result = Job.State.CANCELLED;
+            } else {
+                result = Job.State.FAILED;
+                error = e.getMessage();
+                logger.error("Job {} failed: {}", job.getId(), e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            for (Object device : job.getDevices()) {
+                runningJobsPerDevice.computeIfPresent(device, (key, running) -> running > 1 ? running - 1 : null);
+            }
+            job.finish(result, error);
+            logger.info("Job {} is {}", job.getId(), result);
+
+            schedule();
+        }
+    }
+
+    /**
+     * Возвращает хранилище пути. Для еще не созданного пути берется хранилище ближайшего существующего родителя.
+     */
+    static Object deviceOf(Path path) {
+        Path absolute = path.toAbsolutePath();
+        for (Path current = absolute; current != null; current = current.getParent()) {
+            try {
+                return Files.getFileStore(current);
+            } catch (IOException e) {
+                // Путь еще не существует или недоступен, проверяем родителя
+            }
+        }
+        return absolute.getRoot();
+    }
+
+}
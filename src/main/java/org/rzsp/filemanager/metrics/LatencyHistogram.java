@@ -0,0 +1,106 @@
+package org.rzsp.filemanager.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс гистограммы длительностей операций.
+ * Границы корзин - степени двойки микросекунд от 1 мкс до 2^24 мкс (около 17 секунд), плюс корзина для более долгих операций.
+ * Запись - одно атомарное увеличение счетчика корзины, поэтому гистограмма пригодна для горячего пути
+ * и может обновляться из нескольких потоков.
+ */
+public class LatencyHistogram {
+    private static final int BOUNDED_BUCKETS = 25;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDED_BUCKETS + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Записывает длительность одной операции.
+     *
+     * @param nanos длительность в наносекундах
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Добавляет к гистограмме все записи другой гистограммы.
+     *
+     * @param other гистограмма, записи которой добавляются
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.addAndGet(i, other.buckets.get(i));
+        }
+        count.add(other.getCount());
+        sumNanos.add(other.getSumNanos());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return количество корзин, включая последнюю корзину без верхней границы
+     */
+    public int getBucketCount() {
+        return buckets.length();
+    }
+
+    /**
+     * @param bucket номер корзины
+     * @return верхняя граница корзины в микросекундах или {@link Long#MAX_VALUE} для последней корзины
+     */
+    public long getUpperBoundMicros(int bucket) {
+        return bucket < BOUNDED_BUCKETS ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param bucket номер корзины
+     * @return количество операций в корзине
+     */
+    public long getBucketValue(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Оценивает перцентиль длительности по границам корзин.
+     *
+     * @param quantile доля от 0 до 1, например 0.99
+     * @return верхняя граница корзины, в которую попадает перцентиль, в микросекундах, или 0, если записей нет
+     */
+    public long getPercentileMicros(double quantile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return getUpperBoundMicros(i);
+            }
+        }
+        return getUpperBoundMicros(buckets.length() - 1);
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = Math.max(1, (nanos + 999) / 1000);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1); // Наименьшая степень двойки не меньше micros
+        return Math.min(bucket, BOUNDED_BUCKETS);
+    }
+
+}
@@ -0,0 +1,306 @@
+package org.rzsp.filemanager.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Класс метрик одной операции копирования или подсчета размера.
+ * Считает обработанные байты, файлы и директории, длительность обработки каждого элемента
+ * (копирования файла или подсчета размера поддиректории) и длительность чтения директорий,
+ * а также показывает текущую глубину очереди параллельных задач.
+ * <p>
+ * Снимок метрик экспортируется в JSON ({@link #toJson()}) или в текстовом формате Prometheus ({@link #toPrometheus()}),
+ * {@link #writeTo(Path)} выбирает формат по расширению файла. Счетчики потокобезопасны.
+ */
+public class OperationMetrics {
+    private static final Logger logger = LogManager.getLogger(OperationMetrics.class);
+
+    private final String operation;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LatencyHistogram entryLatency = new LatencyHistogram();
+    private final List<TraversalStatistics> traversals = new CopyOnWriteArrayList<>();
+
+    private volatile IntSupplier queueDepth = () -> 0;
+    private volatile long totalBytes = -1;
+
+    /**
+     * Конструктор класса OperationMetrics.
+     *
+     * @param operation название операции, используется в именах метрик, например "copy" или "size"
+     * @throws IllegalArgumentException если название пустое или содержит символы, кроме латинских букв и '_'
+     */
+    public OperationMetrics(String operation) {
+        if (operation == null || !operation.matches("[a-z_]+")) {
+            throw new IllegalArgumentException("Operation name must consist of lowercase letters and '_'");
+        }
+
+        this.operation = operation;
+    }
+
+    /**
+     * Записывает обработанный файл.
+     *
+     * @param size размер файла в байтах
+     * @param nanos длительность обработки файла в наносекундах
+     */
+    public void recordFile(long size, long nanos) {
+        files.increment();
+        bytes.add(size);
+        entryLatency.record(nanos);
+    }
+
+    /**
+     * Записывает обработанную директорию.
+     *
+     * @param size байты, учтенные при обработке директории, например её размер при подсчете размеров
+     * @param nanos длительность обработки директории в наносекундах или -1, если она не измерялась
+     */
+    public void recordDirectory(long size, long nanos) {
+        directories.increment();
+        bytes.add(size);
+        if (nanos >= 0) {
+            entryLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Подключает счетчики обхода, длительности чтения директорий из них попадают в метрики.
+     *
+     * @param statistics счетчики обхода
+     */
+    public void addTraversal(TraversalStatistics statistics) {
+        if (statistics != null && !traversals.contains(statistics)) {
+            traversals.add(statistics);
+        }
+    }
+
+    /**
+     * @param queueDepth источник текущего количества ожидающих и выполняемых параллельных задач
+     */
+    public void setQueueDepth(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth != null ? queueDepth : () -> 0;
+    }
+
+    /**
+     * @param totalBytes ожидаемый объем операции в байтах для оценки оставшегося времени, -1 если неизвестен
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public LatencyHistogram getEntryLatency() {
+        return entryLatency;
+    }
+
+    /**
+     * @return объединенная гистограмма длительностей чтения директорий всех подключенных обходов
+     */
+    public LatencyHistogram getListingLatency() {
+        LatencyHistogram listingLatency = new LatencyHistogram();
+        for (TraversalStatistics statistics : traversals) {
+            listingLatency.add(statistics.getListingLatency());
+        }
+        return listingLatency;
+    }
+
+    /**
+     * @return время с начала операции в секундах
+     */
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    /**
+     * @return средняя скорость обработки с начала операции в байтах в секунду
+     */
+    public double getBytesPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed > 0 ? getBytes() / elapsed : 0;
+    }
+
+    /**
+     * @return оценка оставшегося времени в секундах или -1, если объем операции неизвестен или скорость еще не измерена
+     */
+    public long getEtaSeconds() {
+        double speed = getBytesPerSecond();
+        if (totalBytes < 0 || speed <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, totalBytes - getBytes()) / speed);
+    }
+
+    /**
+     * @return строка прогресса для консоли, например "copy: 120.5 MB, 310 files, 12 dirs, 85.2 MB/s, ETA 14 s, queue 8"
+     */
+    public String progressLine() {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%s: %.1f MB", operation, getBytes() / 1e6));
+        if (totalBytes >= 0) {
+            line.append(String.format(Locale.ROOT, " of %.1f MB", totalBytes / 1e6));
+        }
+        line.append(String.format(Locale.ROOT, ", %d files, %d dirs, %.1f MB/s", getFiles(), getDirectories(), getBytesPerSecond() / 1e6));
+
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            line.append(", ETA ").append(eta).append(" s");
+        }
+
+        int queue = getQueueDepth();
+        if (queue > 0) {
+            line.append(", queue ").append(queue);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return снимок метрик в формате JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"operation\": \"").append(operation).append("\",\n");
+        json.append(String.format(Locale.ROOT, "  \"elapsedSeconds\": %.3f,\n", getElapsedSeconds()));
+        json.append("  \"bytes\": ").append(getBytes()).append(",\n");
+        json.append("  \"totalBytes\": ").append(totalBytes).append(",\n");
+        json.append("  \"files\": ").append(getFiles()).append(",\n");
+        json.append("  \"directories\": ").append(getDirectories()).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"bytesPerSecond\": %.1f,\n", getBytesPerSecond()));
+        json.append("  \"etaSeconds\": ").append(getEtaSeconds()).append(",\n");
+        json.append("  \"queueDepth\": ").append(getQueueDepth()).append(",\n");
+        json.append("  \"entryLatency\": ");
+        appendJson(json, entryLatency);
+        json.append(",\n  \"listingLatency\": ");
+        appendJson(json, getListingLatency());
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * @return снимок метрик в текстовом формате Prometheus
+     */
+    public String toPrometheus() {
+        String prefix = "filemanager_" + operation;
+        StringBuilder text = new StringBuilder();
+
+        appendMetric(text, prefix + "_bytes_total", "counter", "Bytes processed", getBytes());
+        appendMetric(text, prefix + "_files_total", "counter", "Files processed", getFiles());
+        appendMetric(text, prefix + "_directories_total", "counter", "Directories processed", getDirectories());
+        appendMetric(text, prefix + "_queue_depth", "gauge", "Parallel tasks waiting or running", getQueueDepth());
+        text.append("# HELP ").append(prefix).append("_elapsed_seconds Time since the operation started\n");
+        text.append("# TYPE ").append(prefix).append("_elapsed_seconds gauge\n");
+        text.append(prefix).append("_elapsed_seconds ").append(String.format(Locale.ROOT, "%.3f", getElapsedSeconds())).append('\n');
+        appendPrometheus(text, prefix + "_entry_duration_seconds", "Time to process one file or subdirectory", entryLatency);
+        appendPrometheus(text, prefix + "_listing_duration_seconds", "Time to list one directory", getListingLatency());
+
+        return text.toString();
+    }
+
+    /**
+     * Записывает снимок метрик в файл: в JSON, если имя файла оканчивается на ".json", иначе в формате Prometheus.
+     * Файл заменяется атомарно, поэтому читатель никогда не видит частично записанный снимок.
+     *
+     * @param file файл снимка
+     * @throws IOException если файл не удалось записать
+     */
+    public void writeTo(Path file) throws IOException {
+        String content = file.getFileName().toString().endsWith(".json") ? toJson() : toPrometheus();
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temporary, content, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        logger.debug("Metrics of {} are written to {}", operation, file);
+    }
+
+    @Override
+    public String toString() {
+        return progressLine();
+    }
+
+    private static void appendJson(StringBuilder json, LatencyHistogram histogram) {
+        json.append(String.format(Locale.ROOT,
+                "{\"count\": %d, \"sumSeconds\": %.6f, \"p50Micros\": %d, \"p99Micros\": %d, \"buckets\": {",
+                histogram.getCount(), histogram.getSumNanos() / 1e9,
+                histogram.getPercentileMicros(0.5), histogram.getPercentileMicros(0.99)));
+
+        boolean first = true;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            if (histogram.getBucketValue(i) == 0) {
+                continue;
+            }
+            long bound = histogram.getUpperBoundMicros(i);
+            json.append(first ? "" : ", ")
+                    .append('"').append(bound == Long.MAX_VALUE ? "+Inf" : String.valueOf(bound)).append("\": ")
+                    .append(histogram.getBucketValue(i));
+            first = false;
+        }
+        json.append("}}");
+    }
+
+    private static void appendMetric(StringBuilder text, String name, String type, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendPrometheus(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+
+        long cumulative = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            cumulative += histogram.getBucketValue(i);
+            long bound = histogram.getUpperBoundMicros(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : String.format(Locale.ROOT, "%.6f", bound / 1e6);
+            text.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        text.append(name).append("_sum ").append(String.format(Locale.ROOT, "%.6f", histogram.getSumNanos() / 1e9)).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.rzsp.filemanager.metrics;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс живой строки прогресса операции в консоли.
+ * Фоновый поток периодически перепечатывает {@link OperationMetrics#progressLine()} в одной строке через '\r'.
+ * При закрытии строка стирается, чтобы следующий вывод начинался с чистой строки.
+ */
+public class ProgressReporter implements AutoCloseable {
+    private final OperationMetrics metrics;
+    private final PrintStream out;
+    private final ScheduledExecutorService scheduler;
+
+    private int printedLength;
+
+    private ProgressReporter(OperationMetrics metrics, PrintStream out, long periodMillis) {
+        this.metrics = metrics;
+        this.out = out;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleAtFixedRate(this::print, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Запускает печать прогресса.
+     *
+     * @param metrics метрики операции
+     * @param out поток вывода, обычно консоль
+     * @param periodMillis период обновления строки в миллисекундах
+     * @return запущенный репортер, который нужно закрыть по окончании операции
+     */
+    public static ProgressReporter start(OperationMetrics metrics, PrintStream out, long periodMillis) {
+        if (metrics == null || out == null) {
+            throw new IllegalArgumentException("Metrics and output must be not null");
+        }
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Progress period must be positive");
+        }
+
+        return new ProgressReporter(metrics, out, periodMillis);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            clear();
+            out.flush();
+        }
+    }
+
+    private synchronized void print() {
+        String line = metrics.progressLine();
+        clear();
+        out.print(line);
+        out.flush();
+        printedLength = line.length();
+    }
+
+    private void clear() {
+        if (printedLength > 0) {
+            out.print("\r" + " ".repeat(printedLength) + "\r");
+            printedLength = 0;
+        }
+    }
+
+}
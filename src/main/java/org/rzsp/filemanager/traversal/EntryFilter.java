@@ -0,0 +1,330 @@
+package org.rzsp.filemanager.traversal;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Класс фильтра элементов дерева, применяемого во время обхода через {@link TreeWalker}.
+ * Правила компилируются один раз при добавлении, поэтому проверка элемента не разбирает шаблоны заново.
+ * <ul>
+ *     <li>исключающие правила (шаблон glob, регулярное выражение, размер, возраст) проверяются по порядку,
+ *     первое совпавшее исключает элемент. Исключенная директория отсекается до чтения её содержимого;</li>
+ *     <li>включающие шаблоны образуют одно правило: если они заданы, файл, не совпавший ни с одним из них, исключается.
+ *     Директории обходятся всегда, чтобы найти в них подходящие файлы.</li>
+ * </ul>
+ * Шаблон glob без '/' сравнивается с именем элемента на любой глубине, например "node_modules" или "*.tmp",
+ * шаблон с '/' и регулярное выражение - с путем относительно корня обхода с разделителем '/'.
+ * Размер и возраст проверяются только у файлов. Каждое правило считает исключенные им элементы,
+ * для отсеченной директории это одна запись, а не количество элементов её поддерева.
+ * Правила добавляются до начала обхода, после этого проверка потокобезопасна.
+ */
+public class EntryFilter {
+    private final List<Rule> excludeRules = new ArrayList<>();
+    private final List<Rule> includeRules = new ArrayList<>();
+    private final LongAdder notIncludedFiles = new LongAdder();
+    private final long now = System.currentTimeMillis(); // Возраст файлов отсчитывается от момента создания фильтра
+
+    /**
+     * Правило фильтра и количество исключенных им элементов.
+     */
+    public static final class Rule {
+        private final String description;
+        private final boolean appliesToDirectories;
+        private final Matcher matcher;
+        private final LongAdder prunedEntries = new LongAdder();
+
+        private Rule(String description, boolean appliesToDirectories, Matcher matcher) {
+            this.description = description;
+            this.appliesToDirectories = appliesToDirectories;
+            this.matcher = matcher;
+        }
+
+        /**
+         * @return описание правила, например "exclude node_modules" или "max-size 1048576"
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return количество элементов, исключенных правилом
+         */
+        public long getPrunedEntries() {
+            return prunedEntries.sum();
+        }
+
+        @Override
+        public String toString() {
+            return description + ": " + getPrunedEntries() + " pruned";
+        }
+    }
+
+    @FunctionalInterface
+    private interface Matcher {
+        boolean matches(EntryPath entry, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Исключает файлы и директории, совпавшие с шаблоном glob.
+     *
+     * @param glob шаблон, например "node_modules", "*.tmp" или "build/cache/**"
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если шаблон неверный
+     */
+    public EntryFilter exclude(String glob) {
+        excludeRules.add(new Rule("exclude " + glob, true, globMatcher(glob)));
+        return this;
+    }
+
+    /**
+     * Исключает файлы и директории, относительный путь которых содержит совпадение с регулярным выражением.
+     *
+     * @param regex регулярное выражение, например "(^|/)\\.git$"
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если выражение неверное
+     */
+    public EntryFilter excludeRegex(String regex) {
+        excludeRules.add(new Rule("exclude-regex " + regex, true, regexMatcher(regex)));
+        return this;
+    }
+
+    /**
+     * Оставляет только файлы, совпавшие с одним из включающих шаблонов glob.
+     *
+     * @param glob шаблон, например "*.java"
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если шаблон неверный
+     */
+    public EntryFilter include(String glob) {
+        includeRules.add(new Rule("include " + glob, false, globMatcher(glob)));
+        return this;
+    }
+
+    /**
+     * Оставляет только файлы, относительный путь которых содержит совпадение с одним из включающих выражений.
+     *
+     * @param regex регулярное выражение
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если выражение неверное
+     */
+    public EntryFilter includeRegex(String regex) {
+        includeRules.add(new Rule("include-regex " + regex, false, regexMatcher(regex)));
+        return this;
+    }
+
+    /**
+     * Исключает файлы меньше указанного размера.
+     *
+     * @param bytes минимальный размер файла в байтах
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если размер отрицательный
+     */
+    public EntryFilter minSize(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Minimum file size must be not negative");
+        }
+
+        excludeRules.add(new Rule("min-size " + bytes, false, (entry, attributes) -> attributes.size() < bytes));
+        return this;
+    }
+
+    /**
+     * Исключает файлы больше указанного размера.
+     *
+     * @param bytes максимальный размер файла в байтах
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если размер отрицательный
+     */
+    public EntryFilter maxSize(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Maximum file size must be not negative");
+        }
+
+        excludeRules.add(new Rule("max-size " + bytes, false, (entry, attributes) -> attributes.size() > bytes));
+        return this;
+    }
+
+    /**
+     * Исключает файлы, измененные раньше, чем age назад.
+     *
+     * @param age максимальный возраст файла
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если возраст null или отрицательный
+     */
+    public EntryFilter newerThan(Duration age) {
+        long oldest = now - checkAge(age).toMillis();
+        excludeRules.add(new Rule("newer-than " + formatAge(age), false,
+                (entry, attributes) -> attributes.lastModifiedTime().toMillis() < oldest));
+        return this;
+    }
+
+    /**
+     * Исключает файлы, измененные позже, чем age назад.
+     *
+     * @param age минимальный возраст файла
+     * @return текущий фильтр
+     * @throws IllegalArgumentException если возраст null или отрицательный
+     */
+    public EntryFilter olderThan(Duration age) {
+        long newest = now - checkAge(age).toMillis();
+        excludeRules.add(new Rule("older-than " + formatAge(age), false,
+                (entry, attributes) -> attributes.lastModifiedTime().toMillis() > newest));
+        return this;
+    }
+
+    /**
+     * Проверяет элемент дерева. Корень обхода не проверяется: вызывающий код передает только его элементы.
+     *
+     * @param root корень обхода, относительно которого сравниваются шаблоны путей
+     * @param entry файл или директория внутри root
+     * @param attributes атрибуты элемента
+     * @return true, если элемент нужно обработать, false - пропустить файл или отсечь поддерево директории
+     */
+    public boolean accept(Path root, Path entry, BasicFileAttributes attributes) {
+        boolean directory = attributes.isDirectory();
+        EntryPath path = new EntryPath(root, entry);
+
+        for (Rule rule : excludeRules) {
+            if ((rule.appliesToDirectories || !directory) && rule.matcher.matches(path, attributes)) {
+                rule.prunedEntries.increment();
+                return false;
+            }
+        }
+
+        if (directory || includeRules.isEmpty()) {
+            return true;
+        }
+        for (Rule rule : includeRules) {
+            if (rule.matcher.matches(path, attributes)) {
+                return true;
+            }
+        }
+        notIncludedFiles.increment();
+        return false;
+    }
+
+    /**
+     * @return правила в порядке проверки. Файлы, не совпавшие с включающими шаблонами, учитываются
+     *         в последнем правиле "not included"
+     */
+    public List<Rule> getRules() {
+        List<Rule> rules = new ArrayList<>(excludeRules);
+        if (!includeRules.isEmpty()) {
+            List<String> patterns = new ArrayList<>();
+            for (Rule rule : includeRules) {
+                patterns.add(rule.description);
+            }
+            Rule notIncluded = new Rule("not included by " + String.join(", ", patterns), false, (entry, attributes) -> false);
+            notIncluded.prunedEntries.add(notIncludedFiles.sum());
+            rules.add(notIncluded);
+        }
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * @return true, если в фильтре нет ни одного правила
+     */
+    public boolean isEmpty() {
+        return excludeRules.isEmpty() && includeRules.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        List<String> rules = new ArrayList<>();
+        for (Rule rule : getRules()) {
+            rules.add(rule.toString());
+        }
+        return String.join(", ", rules);
+    }
+
+    private static Matcher globMatcher(String glob) {
+        if (glob == null || glob.isEmpty()) {
+            throw new IllegalArgumentException("Glob pattern must be not empty");
+        }
+
+        PathMatcher matcher;
+        try {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid glob pattern: " + glob, e);
+        }
+
+        if (glob.indexOf('/') < 0) {
+            return (entry, attributes) -> matcher.matches(entry.entry.getFileName());
+        }
+        return (entry, attributes) -> matcher.matches(entry.relativePath());
+    }
+
+    private static Matcher regexMatcher(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            throw new IllegalArgumentException("Regular expression must be not empty");
+        }
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression: " + regex, e);
+        }
+        return (entry, attributes) -> pattern.matcher(entry.relativeString()).find();
+    }
+
+    private static Duration checkAge(Duration age) {
+        if (age == null || age.isNegative()) {
+            throw new IllegalArgumentException("File age must be not negative");
+        }
+        return age;
+    }
+
+    /**
+     * @return возраст в самых крупных целых единицах, например "7d", "36h" или "90s"
+     */
+    private static String formatAge(Duration age) {
+        long seconds = age.toSeconds();
+        if (seconds > 0 && seconds % 86_400 == 0) {
+            return seconds / 86_400 + "d";
+        } else if (seconds > 0 && seconds % 3_600 == 0) {
+            return seconds / 3_600 + "h";
+        } else if (seconds > 0 && seconds % 60 == 0) {
+            return seconds / 60 + "m";
+        }
+        return seconds + "s";
+    }
+
+    /**
+     * Путь проверяемого элемента: относительный путь вычисляется, только если его проверяет правило.
+     */
+    private static final class EntryPath {
+        private final Path root;
+        private final Path entry;
+        private Path relative;
+
+        EntryPath(Path root, Path entry) {
+            this.root = root;
+            this.entry = entry;
+        }
+
+        Path relativePath() {
+            if (relative == null) {
+                relative = root.relativize(entry);
+            }
+            return relative;
+        }
+
+        String relativeString() {
+            String separator = entry.getFileSystem().getSeparator();
+            String path = relativePath().toString();
+            return separator.equals("/") ? path : path.replace(separator, "/");
+        }
+    }
+
+}
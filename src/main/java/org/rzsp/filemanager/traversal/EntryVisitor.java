@@ -0,0 +1,43 @@
+package org.rzsp.filemanager.traversal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Интерфейс обработчика элементов дерева при обходе через {@link TreeWalker#walk(Path, EntryVisitor)}.
+ * Атрибуты каждого элемента читаются обходчиком один раз и передаются в обработчик.
+ */
+public interface EntryVisitor {
+
+    /**
+     * Вызывается при входе в директорию, до обхода её содержимого.
+     *
+     * @param directory директория
+     * @param attributes атрибуты директории
+     * @return true, если содержимое директории нужно обойти, false чтобы пропустить поддерево
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    default boolean enterDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+        return true;
+    }
+
+    /**
+     * Вызывается для каждого обычного файла.
+     *
+     * @param file файл
+     * @param attributes атрибуты файла
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    void visitFile(Path file, BasicFileAttributes attributes) throws IOException;
+
+    /**
+     * Вызывается после обхода всего содержимого директории.
+     *
+     * @param directory директория
+     * @throws IOException если происходит ошибка ввода и вывода
+     */
+    default void exitDirectory(Path directory) throws IOException {
+    }
+
+}
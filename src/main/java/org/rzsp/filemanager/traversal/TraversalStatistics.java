@@ -0,0 +1,96 @@
+package org.rzsp.filemanager.traversal;
+
+import org.rzsp.filemanager.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс счетчиков обхода дерева.
+ * Считает обработанные элементы, фактические чтения атрибутов (stat) и оценивает,
+ * сколько вызовов stat сделал бы прежний код на {@link java.io.File}.
+ * Для чтений директорий через {@link TreeWalker#listDirectory(java.nio.file.Path)} также записывается их длительность.
+ * Счетчики потокобезопасны и могут обновляться из нескольких потоков.
+ */
+public class TraversalStatistics {
+    /*
+     * Прежний код для файла вызывал isDirectory()/isFile() и length(), для директории - isFile() и isDirectory().
+     * Каждый из этих вызовов - отдельный stat.
+     */
+    static final int LEGACY_FILE_STAT_CALLS = 3;
+    static final int LEGACY_DIRECTORY_STAT_CALLS = 2;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder statCalls = new LongAdder();
+    private final LongAdder directoryListings = new LongAdder();
+    private final LatencyHistogram listingLatency = new LatencyHistogram();
+
+    void recordFile() {
+        files.increment();
+    }
+
+    void recordDirectory() {
+        directories.increment();
+    }
+
+    void recordStatCall() {
+        statCalls.increment();
+    }
+
+    void recordDirectoryListing() {
+        directoryListings.increment();
+    }
+
+    void recordListingLatency(long nanos) {
+        listingLatency.record(nanos);
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    public long getEntries() {
+        return getFiles() + getDirectories();
+    }
+
+    public long getStatCalls() {
+        return statCalls.sum();
+    }
+
+    public long getDirectoryListings() {
+        return directoryListings.sum();
+    }
+
+    /**
+     * @return гистограмма длительностей чтения директорий через {@link TreeWalker#listDirectory(java.nio.file.Path)}
+     */
+    public LatencyHistogram getListingLatency() {
+        return listingLatency;
+    }
+
+    /**
+     * @return оценка количества вызовов stat, которые сделал бы прежний код на {@link java.io.File}
+     */
+    public long getLegacyStatCalls() {
+        return getFiles() * LEGACY_FILE_STAT_CALLS + getDirectories() * LEGACY_DIRECTORY_STAT_CALLS;
+    }
+
+    /**
+     * @return количество сэкономленных вызовов stat в среднем на один элемент
+     */
+    public double getSavedStatCallsPerEntry() {
+        long entries = getEntries();
+        return entries == 0 ? 0 : (double) (getLegacyStatCalls() - getStatCalls()) / entries;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries, %d stat calls, %d directory listings, %.2f stat calls per entry saved",
+                getEntries(), getStatCalls(), getDirectoryListings(), getSavedStatCallsPerEntry());
+    }
+
+}
@@ -0,0 +1,220 @@
+package org.rzsp.filemanager.traversal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Класс общего обхода файлового дерева на NIO.
+ * Атрибуты каждого элемента читаются одним вызовом {@link Files#readAttributes(Path, Class, LinkOption...)}
+ * вместо отдельных isFile()/isDirectory()/length() у {@link java.io.File}, и передаются обработчикам.
+ * Символические ссылки разыменовываются, как и в прежнем коде на {@link java.io.File}.
+ * Все обращения к файловой системе учитываются в {@link TraversalStatistics}.
+ * Если задан {@link EntryFilter}, исключенные файлы не передаются обработчикам,
+ * а исключенные директории отсекаются до чтения их содержимого.
+ */
+public class TreeWalker {
+    private static final Logger logger = LogManager.getLogger(TreeWalker.class);
+
+    private final TraversalStatistics statistics;
+    private final EntryFilter filter; // Фильтр элементов, null если обходятся все элементы
+
+    /**
+     * Конструктор с новыми счетчиками обхода.
+     */
+    public TreeWalker() {
+        this(new TraversalStatistics());
+    }
+
+    /**
+     * Конструктор класса TreeWalker.
+     *
+     * @param statistics счетчики, в которые записываются обращения к файловой системе
+     */
+    public TreeWalker(TraversalStatistics statistics) {
+        this(statistics, null);
+    }
+
+    /**
+     * Конструктор обходчика с фильтром элементов.
+     *
+     * @param statistics счетчики, в которые записываются обращения к файловой системе
+     * @param filter фильтр элементов, может быть null
+     */
+    public TreeWalker(TraversalStatistics statistics, EntryFilter filter) {
+        if (statistics == null) {
+            throw new IllegalArgumentException("Traversal statistics must be not null");
+        }
+
+        this.statistics = statistics;
+        this.filter = filter != null && !filter.isEmpty() ? filter : null;
+    }
+
+    public TraversalStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return фильтр элементов или null, если обходятся все элементы
+     */
+    public EntryFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Проверяет элемент фильтром обходчика. Используется при обходе через {@link #listDirectory(Path)}:
+     * директорию, для которой метод вернул false, не нужно читать.
+     *
+     * @param root корень обхода
+     * @param entry элемент внутри root
+     * @param attributes атрибуты элемента
+     * @return true, если фильтр не задан или элемент не исключен
+     */
+    public boolean accept(Path root, Path entry, BasicFileAttributes attributes) {
+        return filter == null || filter.accept(root, entry, attributes);
+    }
+
+    /**
+     * Обходит дерево в глубину, начиная с root, через {@link Files#walkFileTree}.
+     * Нечитаемые элементы пропускаются с предупреждением в логе, циклы символических ссылок не обходятся.
+     * Директория, исключенная фильтром, пропускается до чтения её элементов: walkFileTree открывает её перед
+     * {@link FileVisitor#preVisitDirectory}, но ни один элемент не читается.
+     * walkFileTree читает директорию частями между вызовами обработчика, поэтому длительностью чтения директории
+     * в {@link TraversalStatistics#getListingLatency()} считается время её обхода без времени обработчиков
+     * и вложенных директорий: чтение элементов и их атрибутов.
+     *
+     * @param root корень обхода, файл или директория
+     * @param visitor обработчик элементов
+     * @throws IOException если обработчик выбросил исключение
+     */
+    public void walk(Path root, EntryVisitor visitor) throws IOException {
+        // Открытые директории обхода: {начало обработки, начало чтения, время обработчиков и вложенных директорий}
+        Deque<long[]> directories = new ArrayDeque<>();
+
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                long start = System.nanoTime();
+                statistics.recordStatCall();
+                if (!directory.equals(root) && !accept(root, directory, attributes)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                statistics.recordDirectoryListing();
+                statistics.recordDirectory();
+
+                if (!visitor.enterDirectory(directory, attributes)) {
+                    exclude(System.nanoTime() - start);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.push(new long[]{start, System.nanoTime(), 0});
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                statistics.recordStatCall();
+
+                if (attributes.isRegularFile() && (file.equals(root) || accept(root, file, attributes))) {
+                    statistics.recordFile();
+                    long start = System.nanoTime();
+                    visitor.visitFile(file, attributes);
+                    exclude(System.nanoTime() - start);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exception) {
+                logger.warn("Cannot read {}: {}", file, exception.getMessage());
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException {
+                if (exception != null) {
+                    logger.warn("Directory {} is read partially: {}", directory, exception.getMessage());
+                }
+
+                long[] times = directories.pop();
+                statistics.recordListingLatency(System.nanoTime() - times[1] - times[2]);
+                visitor.exitDirectory(directory);
+                exclude(System.nanoTime() - times[0]);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            /**
+             * Вычитает время обработчика или вложенной директории из длительности чтения текущей директории.
+             */
+            private void exclude(long nanos) {
+                long[] times = directories.peek();
+                if (times != null) {
+                    times[2] += nanos;
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Возвращает элементы директории через {@link DirectoryStream} без чтения их атрибутов.
+     * Длительность чтения записывается в {@link TraversalStatistics#getListingLatency()}.
+     *
+     * @param directory директория
+     * @return элементы директории или null, если директорию не удалось прочитать
+     */
+    public Path[] listDirectory(Path directory) {
+        statistics.recordDirectoryListing();
+        long start = System.nanoTime();
+
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.warn("Cannot read directory {}: {}", directory, e.getMessage());
+            return null;
+        }
+
+        statistics.recordListingLatency(System.nanoTime() - start);
+        return entries.toArray(new Path[0]);
+    }
+
+    /**
+     * Читает атрибуты элемента одним вызовом stat.
+     *
+     * @param path файл или директория
+     * @return атрибуты элемента или null, если их не удалось прочитать
+     */
+    public BasicFileAttributes readAttributes(Path path) {
+        statistics.recordStatCall();
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (attributes.isDirectory()) {
+            statistics.recordDirectory();
+        } else if (attributes.isRegularFile()) {
+            statistics.recordFile();
+        }
+
+        return attributes;
+    }
+
+}
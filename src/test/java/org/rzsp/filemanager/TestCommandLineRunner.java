@@ -0,0 +1,179 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.cli.CommandLineRunner;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCommandLineRunner {
+
+    private static CommandLineRunner runner(ByteArrayOutputStream output, String stdin) {
+        return new CommandLineRunner(new PrintStream(output, true), new BufferedReader(new StringReader(stdin)));
+    }
+
+    @Test
+    void copyCommandCopiesFile() throws IOException {
+        Path source = Files.write(Files.createTempDirectory("cli").resolve("a.bin"), new byte[10]);
+        Path destination = Files.createTempDirectory("cli");
+
+        int exitCode = runner(new ByteArrayOutputStream(), "")
+                .run(new String[]{"copy", "--parallel", "2", source.toString(), destination.toString()});
+
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, exitCode);
+        assertEquals(10, Files.size(destination.resolve("a.bin")));
+    }
+
+    @Test
+    void copyCommandAcceptsFlagsAndValuedOptionsTogether() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Files.write(source.resolve("a.bin"), new byte[100_000]);
+        Path destination = Files.createTempDirectory("cli");
+
+        int exitCode = runner(new ByteArrayOutputStream(), "").run(new String[]{"copy", "--sync", "--delta", "64K",
+                "--pipeline-buffer", "16K", "--pipeline-depth", "2", "--sparse", source.toString(), destination.toString()});
+
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, exitCode);
+        assertEquals(100_000, Files.size(destination.resolve(source.getFileName()).resolve("a.bin")));
+    }
+
+    @Test
+    void sizeCommandAppliesRepeatedFilterOptions() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Files.write(Files.createDirectories(source.resolve("node_modules")).resolve("a.bin"), new byte[100]);
+        Files.write(Files.createDirectories(source.resolve(".git")).resolve("b.bin"), new byte[200]);
+        Files.write(source.resolve("c.bin"), new byte[10]);
+        Files.write(source.resolve("d.bin"), new byte[1]);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = runner(output, "").run(new String[]{"size", "--exclude", "node_modules", "--exclude", ".git",
+                "--min-size", "5", "--newer-than", "1d", source.toString()});
+
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, exitCode);
+        String report = output.toString();
+        assertTrue(report.contains("Filter exclude node_modules: 1 pruned"), report);
+        assertTrue(report.contains("Filter exclude .git: 1 pruned"), report);
+        assertTrue(report.contains("Filter min-size 5: 1 pruned"), report);
+        assertTrue(report.contains("Filter newer-than 1d: 0 pruned"), report);
+        assertEquals(CommandLineRunner.EXIT_USAGE, runner(new ByteArrayOutputStream(), "")
+                .run(new String[]{"size", "--older-than", "soon", source.toString()}));
+    }
+
+    @Test
+    void smallFilesThresholdIsCapped() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Path destination = Files.createTempDirectory("cli");
+
+        assertEquals(CommandLineRunner.EXIT_USAGE, runner(new ByteArrayOutputStream(), "")
+                .run(new String[]{"copy", "--small-files", "4G", source.toString(), destination.toString()}));
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, runner(new ByteArrayOutputStream(), "")
+                .run(new String[]{"copy", "--small-files", "64K", source.toString(), destination.toString()}));
+    }
+
+    @Test
+    void repeatedSizeSeesGrownNestedFile() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Path nested = Files.createDirectories(source.resolve("first").resolve("nested"));
+        Files.write(nested.resolve("a.bin"), new byte[10]);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CommandLineRunner sizeRunner = runner(output, "");
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, sizeRunner.run(new String[]{"size", source.toString()}));
+        assertTrue(output.toString().contains("first: 10 bytes"), output.toString());
+
+        // Рост файла во вложенной директории не меняет mtime директорий выше
+        Files.write(nested.resolve("a.bin"), new byte[25]);
+        output.reset();
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, sizeRunner.run(new String[]{"size", source.toString()}));
+        assertTrue(output.toString().contains("first: 25 bytes"), output.toString());
+        assertFalse(output.toString().contains("Size cache:"), output.toString());
+        assertEquals(CommandLineRunner.EXIT_USAGE, sizeRunner.run(new String[]{"size", "--cache", "--exclude", "*.bin", source.toString()}));
+    }
+
+    @Test
+    void verifyCommandDetectsCorruptedCopy() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Files.createDirectory(source.resolve("nested"));
+        Files.write(source.resolve("a.bin"), new byte[100_000]);
+        Files.write(source.resolve("nested").resolve("b.bin"), new byte[]{1, 2, 3});
+        Path destination = Files.createTempDirectory("cli");
+
+        int exitCode = runner(new ByteArrayOutputStream(), "").run(new String[]{"copy", "--parallel", "2",
+                "--verify", "sha256", source.toString(), destination.toString()});
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, exitCode);
+
+        Path manifest = destination.resolve(source.getFileName() + ".sha256");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, runner(output, "").run(new String[]{"verify", manifest.toString()}));
+        assertTrue(output.toString().contains("Verified 2 files: all checksums match"));
+
+        Path copy = destination.resolve(source.getFileName()).resolve("nested").resolve("b.bin");
+        Files.write(copy, new byte[]{1, 2, 4});
+        output = new ByteArrayOutputStream();
+        exitCode = runner(output, "").run(new String[]{"verify", "--parallel", "4", manifest.toString()});
+
+        assertEquals(CommandLineRunner.EXIT_FAILURE, exitCode);
+        assertTrue(output.toString().contains(source.getFileName().resolve("nested").resolve("b.bin") + ": checksum mismatch"));
+        assertTrue(output.toString().contains("Verification failed: 1 of 2 files differ"));
+    }
+
+    @Test
+    void batchFromStdinRunsAllJobsAndReportsFailures() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Files.write(source.resolve("a.bin"), new byte[10]);
+        Path destination = Files.createTempDirectory("with space");
+
+        String manifest = "# nightly jobs\n"
+                + "copy \"" + source + "\" \"" + destination + "\"\n"
+                + "\n"
+                + "size \"" + destination + "\"\n"
+                + "size no_exist_directory\n";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = runner(output, manifest).run(new String[]{"batch", "-"});
+
+        assertEquals(CommandLineRunner.EXIT_FAILURE, exitCode);
+        assertTrue(output.toString().contains(source.getFileName() + ": 10 bytes"));
+        assertTrue(output.toString().contains("Batch finished: 2 of 3 jobs succeeded"));
+    }
+
+    @Test
+    void cachedSizeAndBatchPrintCacheHitsAndMisses() throws IOException {
+        Path source = Files.createTempDirectory("cli");
+        Files.createDirectory(source.resolve("first"));
+        Files.write(source.resolve("first").resolve("a.bin"), new byte[10]);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CommandLineRunner sizeRunner = runner(output, "");
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, sizeRunner.run(new String[]{"size", "--cache", source.toString()}));
+        assertTrue(output.toString().contains("Size cache: 0 hits, 1 misses"), output.toString());
+        output.reset();
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, sizeRunner.run(new String[]{"size", "--cache", source.toString()}));
+        assertTrue(output.toString().contains("Size cache: 1 hits, 1 misses"), output.toString());
+
+        String manifest = "size --cache \"" + source + "\"\n"
+                + "size --cache \"" + source + "\"\n";
+        output.reset();
+        assertEquals(CommandLineRunner.EXIT_SUCCESS, runner(output, manifest).run(new String[]{"batch", "-"}));
+        String report = output.toString();
+        assertTrue(report.endsWith("Size cache: 1 hits, 1 misses, 1 entries, 0 evictions" + System.lineSeparator()), report);
+    }
+
+    @Test
+    void unknownCommandPrintsUsage() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int exitCode = runner(output, "").run(new String[]{"move", "a", "b"});
+
+        assertEquals(CommandLineRunner.EXIT_USAGE, exitCode);
+        assertTrue(output.toString().contains("Unknown command: move"));
+    }
+
+}
@@ -0,0 +1,324 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.engine.BufferPool;
+import org.rzsp.filemanager.functions.engine.ChannelCopyEngine;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.ChecksumCopyEngine;
+import org.rzsp.filemanager.functions.engine.CopyEngineSelector;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.functions.engine.DeltaCopyEngine;
+import org.rzsp.filemanager.functions.engine.PipelinedCopyEngine;
+import org.rzsp.filemanager.functions.engine.SmallFileCopyEngine;
+import org.rzsp.filemanager.functions.engine.SparseCopyEngine;
+import org.rzsp.filemanager.functions.engine.StreamCopyEngine;
+import org.rzsp.filemanager.functions.engine.ThrottledCopyEngine;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TestCopyEngine {
+
+    private static Path createFile(Path directory, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return Files.write(directory.resolve("source.bin"), content);
+    }
+
+    /**
+     * @return байты, выделенные текущим потоком, или -1, если JVM не ведет такой учет
+     */
+    static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    @Test
+    void streamEngineCopiesContent() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 100_000);
+        Path target = directory.resolve("target.bin");
+
+        long copied = new StreamCopyEngine().copy(source, target);
+
+        assertEquals(100_000, copied);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void channelEngineCopiesContent() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 100_000);
+        Path target = directory.resolve("target.bin");
+
+        long copied = new ChannelCopyEngine().copy(source, target);
+
+        assertEquals(100_000, copied);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void channelEngineOverwritesLongerTarget() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 10);
+        Path target = Files.write(directory.resolve("target.bin"), new byte[100]);
+
+        new ChannelCopyEngine().copy(source, target);
+
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void selectorChoosesEngineBySize() {
+        CopyEngineSelector selector = new CopyEngineSelector(1024);
+
+        assertInstanceOf(StreamCopyEngine.class, selector.select(1023));
+        assertInstanceOf(ChannelCopyEngine.class, selector.select(1024));
+    }
+
+    @Test
+    void selectorWithNegativeThreshold() {
+        Exception exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> new CopyEngineSelector(-1)
+        );
+
+        assertEquals("Zero-copy threshold must be not negative", exception.getMessage());
+    }
+
+    @Test
+    void deltaEngineRewritesOnlyChangedBlocks() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 100_000);
+        Path target = Files.copy(source, directory.resolve("target.bin"));
+
+        byte[] changed = Files.readAllBytes(source);
+        changed[5_000] ^= 1;
+        changed[99_999] ^= 1;
+        Files.write(source, changed);
+
+        DeltaCopyEngine engine = new DeltaCopyEngine(4096);
+        long written = engine.copy(source, target);
+
+        assertArrayEquals(changed, Files.readAllBytes(target));
+        assertEquals(2, engine.getRewrittenBlocks());
+        assertEquals(23, engine.getMatchedBlocks());
+        assertEquals(4096 + 100_000 - 24 * 4096, written);
+    }
+
+    @Test
+    void deltaEngineTruncatesLongerTargetAndCreatesMissingTarget() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 10_000);
+        Path longer = Files.write(directory.resolve("longer.bin"), new byte[30_000]);
+        Path missing = directory.resolve("missing.bin");
+
+        DeltaCopyEngine engine = new DeltaCopyEngine(4096);
+        engine.copy(source, longer);
+        engine.copy(source, missing);
+
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(longer));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(missing));
+        assertEquals(0, engine.getMatchedBlocks());
+        assertEquals(6, engine.getRewrittenBlocks());
+    }
+
+    @Test
+    void sparseEngineSkipsZeroBlocksAndKeepsContent() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = directory.resolve("sparse.img");
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        try (RandomAccessFile file = new RandomAccessFile(source.toFile(), "rw")) {
+            file.setLength(1_000_000);
+            file.seek(500_000);
+            file.write(data);
+        }
+        Path target = Files.write(directory.resolve("target.img"), new byte[2_000_000]);
+
+        SparseCopyEngine engine = new SparseCopyEngine(4096);
+        long copied = engine.copy(source, target);
+
+        assertEquals(1_000_000, copied);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertTrue(engine.getSkippedBytes() >= 1_000_000 - 2 * 4096);
+
+        // Буфер блока возвращается в пул и используется следующим файлом
+        assertEquals(1_000_000, engine.copy(source, target));
+        assertEquals(1, engine.getBuffers().getAllocatedBuffers());
+    }
+
+    @Test
+    void pipelinedEngineCopiesContentAndReusesBuffers() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 100_003);
+        Path empty = Files.write(directory.resolve("empty.bin"), new byte[0]);
+        Path target = Files.write(directory.resolve("target.bin"), new byte[200_000]);
+
+        PipelinedCopyEngine engine = new PipelinedCopyEngine(4096, 3);
+
+        assertEquals(100_003, engine.copy(source, target));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertEquals(0, engine.copy(empty, target));
+        assertEquals(0, Files.size(target));
+        assertEquals(100_003, engine.copy(source, target));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void throttledEngineLimitsBandwidth() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 300_000);
+        Path target = directory.resolve("target.bin");
+        CopyThrottle throttle = new CopyThrottle(100_000, CopyThrottle.UNLIMITED);
+
+        long start = System.nanoTime();
+        new ThrottledCopyEngine(throttle, 100_000).copy(source, target);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Первая часть оплачивается запасом корзины, вторая уводит в долг, третья ждет его погашения
+        assertTrue(elapsedMillis >= 900, "Copy took only " + elapsedMillis + " ms");
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertTrue(throttle.getThrottledNanos() > 0);
+    }
+
+    @Test
+    void deltaAndSparseEnginesAcquireTokensPerBlock() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 300_000);
+
+        long start = System.nanoTime();
+        new SparseCopyEngine(100_000, new CopyThrottle(100_000, CopyThrottle.UNLIMITED)).copy(source, directory.resolve("sparse.bin"));
+        long sparseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        start = System.nanoTime();
+        new DeltaCopyEngine(100_000, new CopyThrottle(100_000, CopyThrottle.UNLIMITED)).copy(source, directory.resolve("delta.bin"));
+        long deltaMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Токены запрашиваются перед каждым блоком, поэтому копирование не оплачивается одним долгом вперед
+        assertTrue(sparseMillis >= 900, "Sparse copy took only " + sparseMillis + " ms");
+        assertTrue(deltaMillis >= 900, "Delta copy took only " + deltaMillis + " ms");
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(directory.resolve("sparse.bin")));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(directory.resolve("delta.bin")));
+    }
+
+    @Test
+    void throttleReleasesWaitingThreadWhenLimitIsRemoved() throws Exception {
+        CopyThrottle throttle = new CopyThrottle(1, CopyThrottle.UNLIMITED);
+        throttle.acquireBytes(1_000_000); // Долг на 11 дней
+
+        Thread waiting = new Thread(() -> {
+            try {
+                throttle.acquireBytes(1);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        assertTrue(waiting.isAlive());
+
+        throttle.setBytesPerSecond(CopyThrottle.UNLIMITED);
+        waiting.join(5_000);
+        assertFalse(waiting.isAlive());
+    }
+
+    @Test
+    void checksumEngineHashesDataWhileCopying() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 3 * ChecksumCopyEngine.BUFFER_SIZE + 123);
+        Path target = directory.resolve("target.bin");
+
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            String checksum = new ChecksumCopyEngine(algorithm, null).copyWithChecksum(source, target);
+
+            assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+            assertEquals(algorithm.checksum(source), checksum);
+        }
+    }
+
+    @Test
+    void checksumAlgorithmsMatchReferenceValues() throws IOException {
+        Path file = Files.write(Files.createTempDirectory("engine").resolve("check.txt"),
+                "123456789".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals("e3069283", ChecksumAlgorithm.CRC32C.checksum(file));
+        assertEquals("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225", ChecksumAlgorithm.SHA256.checksum(file));
+        assertEquals(ChecksumAlgorithm.SHA256, ChecksumAlgorithm.fromName("SHA-256"));
+    }
+
+    @Test
+    void bufferPoolReusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(4096, 2);
+
+        ByteBuffer first = pool.acquire();
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertTrue(second.isDirect());
+        assertEquals(0, second.position());
+        assertEquals(4096, second.capacity());
+        assertEquals(1, pool.getAllocatedBuffers());
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(0, 1));
+    }
+
+    @Test
+    void streamEngineDoesNotAllocateBuffersPerFile() throws IOException {
+        assumeTrue(allocatedBytes() >= 0, "Thread allocation accounting is not supported");
+        Path directory = Files.createTempDirectory("engine");
+        Path source = createFile(directory, 1000);
+        Path target = directory.resolve("target.bin");
+        BufferPool pool = new BufferPool(StreamCopyEngine.BUFFER_SIZE, 4);
+        StreamCopyEngine engine = new StreamCopyEngine(pool);
+
+        for (int i = 0; i < 5_000; i++) {
+            engine.copy(source, target);
+        }
+        int files = 2_000;
+        long before = allocatedBytes();
+        for (int i = 0; i < files; i++) {
+            engine.copy(source, target);
+        }
+        long perFile = (allocatedBytes() - before) / files;
+
+        // Остаются только объекты каналов JDK, около 700 байтов; буфер на файл дал бы не меньше BUFFER_SIZE
+        assertTrue(perFile < 2048, "Allocated " + perFile + " bytes per file");
+        assertEquals(1, pool.getAllocatedBuffers());
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void smallFileEngineCopiesKnownAndUnexpectedSizes() throws IOException {
+        Path directory = Files.createTempDirectory("engine");
+        SmallFileCopyEngine engine = new SmallFileCopyEngine(4096);
+        Path target = directory.resolve("target.bin");
+
+        Path empty = Files.write(directory.resolve("empty.bin"), new byte[0]);
+        assertEquals(0, engine.copy(empty, target, 0));
+        assertEquals(0, Files.size(target));
+
+        Path source = createFile(directory, 3000);
+        assertEquals(3000, engine.copy(source, target, 3000));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+
+        // Файл вырос после обхода и больше буфера: копируется по частям целиком
+        Path grown = createFile(directory, 10_000);
+        assertEquals(10_000, engine.copy(grown, target));
+        assertArrayEquals(Files.readAllBytes(grown), Files.readAllBytes(target));
+    }
+
+}
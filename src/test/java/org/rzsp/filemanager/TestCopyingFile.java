@@ -1,13 +1,37 @@
 package org.rzsp.filemanager;
 
 import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.CopyOptions;
 import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.functions.archive.ArchiveFormat;
+import org.rzsp.filemanager.functions.engine.ChecksumAlgorithm;
+import org.rzsp.filemanager.functions.engine.CopyThrottle;
+import org.rzsp.filemanager.traversal.EntryFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 
 public class TestCopyingFile {
@@ -24,4 +48,555 @@ public class TestCopyingFile {
         assertEquals("Source directory and destination directory can not be the same", exception.getMessage());
     }
 
+    private static Path createTree() throws IOException {
+        Path root = Files.createTempDirectory("tree");
+        for (int i = 0; i < 5; i++) {
+            Path directory = Files.createDirectories(root.resolve("dir" + i).resolve("nested" + i));
+            for (int j = 0; j < 20; j++) {
+                Files.write(directory.resolve("file" + j + ".bin"), new byte[i * 10_000 + j]);
+                Files.writeString(directory.getParent().resolve("text" + j + ".txt"), "content " + i + j);
+            }
+        }
+        Files.createDirectories(root.resolve("empty"));
+        return root;
+    }
+
+    private static List<String> describeTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.map(path -> {
+                        try {
+                            String size = Files.isDirectory(path) ? "dir" : String.valueOf(Files.size(path));
+                            return root.relativize(path) + ":" + size;
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testParallelCopyDirectoryMatchesSerialCopy() throws IOException {
+        Path source = createTree();
+        Path serialDestination = Files.createTempDirectory("serial");
+        Path parallelDestination = Files.createTempDirectory("parallel");
+
+        new CopyingFile(source.toString(), serialDestination.toString()).copy();
+        new CopyingFile(source.toString(), parallelDestination.toString(),
+                new CopyOptions().setParallelism(4).setMaxInFlightBytes(50_000).setMaxOpenFiles(4)).copy();
+
+        Path serialCopy = serialDestination.resolve(source.getFileName());
+        Path parallelCopy = parallelDestination.resolve(source.getFileName());
+        assertEquals(describeTree(source), describeTree(serialCopy));
+        assertEquals(describeTree(serialCopy), describeTree(parallelCopy));
+    }
+
+    @Test
+    void testCopyOptionsWithNotPositiveParallelism() {
+        Exception exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> new CopyOptions().setParallelism(0)
+        );
+
+        assertEquals("Parallelism must be positive", exception.getMessage());
+    }
+
+    @Test
+    void testCopyOptionsWithTooLargeSmallFileThreshold() {
+        Exception exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> new CopyOptions().setSmallFileThreshold(CopyOptions.MAX_SMALL_FILE_THRESHOLD + 1)
+        );
+
+        assertEquals("Small file threshold must be at most 65536 bytes", exception.getMessage());
+    }
+
+    @Test
+    void testResumableCopyIntoExistingDestinationDeletesJournal() throws IOException {
+        Path source = createTree();
+        Path destination = Files.createTempDirectory("resumable");
+        CopyOptions options = new CopyOptions().setResumable(true).setCheckpointInterval(50_000);
+
+        new CopyingFile(source.toString(), destination.toString(), options).copy();
+        new CopyingFile(source.toString(), destination.toString(), options).copy();
+
+        assertEquals(describeTree(source), describeTree(destination.resolve(source.getFileName())));
+        assertFalse(Files.exists(destination.resolve("." + source.getFileName() + ".copy-journal")));
+    }
+
+    @Test
+    void testResumableCopySkipsCompletedFilesAndContinuesFromCheckpoint() throws IOException {
+        Path source = Files.createTempDirectory("resume");
+        byte[] content = new byte[10_000];
+        new Random(1).nextBytes(content);
+        Path large = Files.write(source.resolve("large.bin"), content);
+        Path small = Files.writeString(source.resolve("small.txt"), "source");
+
+        // Состояние после прерванного копирования: small.txt скопирован, large.bin скопирован до контрольной точки
+        Path destination = Files.createTempDirectory("resume");
+        Path copy = Files.createDirectory(destination.resolve(source.getFileName()));
+        Files.writeString(copy.resolve("small.txt"), "copied");
+        byte[] partial = new byte[6_000];
+        System.arraycopy(content, 0, partial, 0, 4_096);
+        Files.write(copy.resolve("large.bin"), partial);
+
+        String name = source.getFileName().toString();
+        Files.writeString(destination.resolve("." + name + ".copy-journal"),
+                "C\t6\t" + modified(small) + "\t6\t" + Path.of(name, "small.txt") + "\n"
+                        + "P\t10000\t" + modified(large) + "\t4096\t" + Path.of(name, "large.bin") + "\n"
+                        + "P\t10000\t" + modified(large) + "\t81");
+
+        new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setResumable(true).setCheckpointInterval(1_024)).copy();
+
+        assertEquals("copied", Files.readString(copy.resolve("small.txt")));
+        assertArrayEquals(content, Files.readAllBytes(copy.resolve("large.bin")));
+        assertFalse(Files.exists(destination.resolve("." + name + ".copy-journal")));
+    }
+
+    @Test
+    void resumableCopyWithChecksumHashesSourceData() throws IOException {
+        Path source = Files.createTempDirectory("resume");
+        byte[] content = new byte[10_000];
+        new Random(2).nextBytes(content);
+        Path large = Files.write(source.resolve("large.bin"), content);
+        Path small = Files.writeString(source.resolve("small.txt"), "source");
+
+        Path destination = Files.createTempDirectory("resume");
+        Path copy = Files.createDirectory(destination.resolve(source.getFileName()));
+        Files.writeString(copy.resolve("small.txt"), "copied");
+        Files.write(copy.resolve("large.bin"), Arrays.copyOf(content, 4_096));
+        String name = source.getFileName().toString();
+        Files.writeString(destination.resolve("." + name + ".copy-journal"),
+                "C\t6\t" + modified(small) + "\t6\t" + Path.of(name, "small.txt") + "\n"
+                        + "P\t10000\t" + modified(large) + "\t4096\t" + Path.of(name, "large.bin") + "\n");
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(), new CopyOptions()
+                .setResumable(true).setCheckpointInterval(1_024).setChecksumAlgorithm(ChecksumAlgorithm.SHA256));
+        copyingFile.copy();
+
+        // Продолженный файл хешируется вместе с уже скопированной частью источника, пропущенный - по источнику
+        Map<String, String> checksums = copyingFile.getManifest().getChecksums();
+        assertEquals(ChecksumAlgorithm.SHA256.checksum(large), checksums.get(Path.of(name, "large.bin").toString()));
+        assertEquals(ChecksumAlgorithm.SHA256.checksum(small), checksums.get(Path.of(name, "small.txt").toString()));
+        assertEquals(List.of(Path.of(name, "small.txt") + ": checksum mismatch"),
+                copyingFile.getManifest().verify(destination, 2).getFailures());
+    }
+
+    @Test
+    void syncManifestDescribesSourceForSkippedSparseAndDeltaFiles() throws IOException {
+        Path source = Files.createTempDirectory("manifest");
+        byte[] content = new byte[200_000];
+        new Random(4).nextBytes(content);
+        Path large = Files.write(source.resolve("large.bin"), content);
+        Path small = Files.writeString(source.resolve("small.txt"), "source");
+        Path destination = Files.createTempDirectory("manifest");
+        Path copy = destination.resolve(source.getFileName());
+        CopyOptions options = new CopyOptions().setSync(true).setSparse(true).setDeltaThreshold(100_000)
+                .setChecksumAlgorithm(ChecksumAlgorithm.SHA256);
+
+        new CopyingFile(source.toString(), destination.toString(), options).copy();
+        // Копия повреждена без изменения размера и времени: синхронизация её пропустит
+        FileTime copied = Files.getLastModifiedTime(copy.resolve("small.txt"));
+        Files.writeString(copy.resolve("small.txt"), "broken");
+        Files.setLastModifiedTime(copy.resolve("small.txt"), copied);
+        content[100_000] ^= 1;
+        Files.write(large, content);
+
+        CopyingFile second = new CopyingFile(source.toString(), destination.toString(), options);
+        second.copy();
+
+        assertEquals(1, second.getRewrittenBlocks());
+        Map<String, String> checksums = second.getManifest().getChecksums();
+        String name = source.getFileName().toString();
+        assertEquals(ChecksumAlgorithm.SHA256.checksum(large), checksums.get(Path.of(name, "large.bin").toString()));
+        assertEquals(ChecksumAlgorithm.SHA256.checksum(small), checksums.get(Path.of(name, "small.txt").toString()));
+        assertEquals(List.of(Path.of(name, "small.txt") + ": checksum mismatch"),
+                second.getManifest().verify(destination, 2).getFailures());
+    }
+
+    private static long modified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    void testCopyOptionsWithNotPositiveCheckpointInterval() {
+        Exception exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> new CopyOptions().setCheckpointInterval(0)
+        );
+
+        assertEquals("Checkpoint interval must be positive", exception.getMessage());
+    }
+
+    @Test
+    void testSyncCopiesOnlyChangedFilesAndDeletesExtraneous() throws IOException {
+        Path source = createTree();
+        Path destination = Files.createTempDirectory("sync");
+        CopyOptions options = new CopyOptions().setSync(true).setDeleteExtraneous(true).setParallelism(4);
+
+        CopyingFile first = new CopyingFile(source.toString(), destination.toString(), options);
+        first.copy();
+        assertEquals(200, first.getCopiedFiles());
+
+        Path copy = destination.resolve(source.getFileName());
+        Files.writeString(source.resolve("dir1").resolve("text0.txt"), "changed content");
+        Files.writeString(copy.resolve("extra.txt"), "extra");
+        Files.createDirectories(copy.resolve("dir2").resolve("extraDir"));
+        Files.writeString(copy.resolve("dir2").resolve("extraDir").resolve("file.txt"), "extra");
+
+        CopyingFile second = new CopyingFile(source.toString(), destination.toString(), options);
+        second.copy();
+
+        assertEquals(1, second.getCopiedFiles());
+        assertEquals(199, second.getUnchangedFiles());
+        assertEquals(3, second.getDeletedEntries());
+        assertEquals(describeTree(source), describeTree(copy));
+    }
+
+    @Test
+    void testSyncWithContentComparisonDetectsSameSizeChange() throws IOException {
+        Path source = Files.createTempDirectory("sync");
+        Path file = Files.writeString(source.resolve("a.txt"), "aaaa");
+        Path destination = Files.createTempDirectory("sync");
+        Path copy = Files.createDirectory(destination.resolve(source.getFileName()));
+        Files.writeString(copy.resolve("a.txt"), "bbbb");
+        Files.setLastModifiedTime(copy.resolve("a.txt"), Files.getLastModifiedTime(file));
+
+        new CopyingFile(source.toString(), destination.toString(), new CopyOptions().setSync(true)).copy();
+        assertEquals("bbbb", Files.readString(copy.resolve("a.txt")));
+
+        new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setSync(true).setCompareContent(true)).copy();
+        assertEquals("aaaa", Files.readString(copy.resolve("a.txt")));
+    }
+
+    @Test
+    void testDedupLinksIdenticalFiles() throws IOException {
+        Path source = Files.createTempDirectory("dedup");
+        byte[] library = new byte[50_000];
+        new Random(3).nextBytes(library);
+        for (int i = 0; i < 3; i++) {
+            Path vendor = Files.createDirectory(source.resolve("module" + i));
+            Files.write(vendor.resolve("library.jar"), library);
+            Files.writeString(vendor.resolve("unique.txt"), "module " + i);
+        }
+        byte[] sameSize = library.clone();
+        sameSize[0] ^= 1;
+        Files.write(source.resolve("other.jar"), sameSize);
+
+        Path destination = Files.createTempDirectory("dedup");
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setDedup(true).setDedupMaxEntries(16));
+        copyingFile.copy();
+
+        Path copy = destination.resolve(source.getFileName());
+        assertEquals(describeTree(source), describeTree(copy));
+        assertEquals(2, copyingFile.getLinkedFiles());
+        assertEquals(100_000, copyingFile.getSavedBytes());
+        assertTrue(Files.isSameFile(copy.resolve("module0").resolve("library.jar"), copy.resolve("module2").resolve("library.jar")));
+        assertArrayEquals(sameSize, Files.readAllBytes(copy.resolve("other.jar")));
+    }
+
+    @Test
+    void dedupHashesCopiesNotSourcesChangedAfterCopying() throws IOException {
+        Path source = Files.createTempDirectory("dedup");
+        byte[] first = new byte[50_000];
+        byte[] second = new byte[50_000];
+        new Random(6).nextBytes(first);
+        new Random(7).nextBytes(second);
+        Files.write(source.resolve("a.bin"), first);
+        Files.write(source.resolve("b.bin"), second);
+        Path destination = Files.createTempDirectory("dedup");
+        Path copy = destination.resolve(source.getFileName());
+        Map<String, byte[]> expected = new HashMap<>();
+
+        // Перед копированием второго файла первый уже скопированный исходный файл получает содержимое второго
+        CopyThrottle throttle = new CopyThrottle(CopyThrottle.UNLIMITED, CopyThrottle.UNLIMITED) {
+            private int files;
+
+            @Override
+            public void acquireFile() throws InterruptedIOException {
+                if (++files == 2) {
+                    try {
+                        String copied = Files.exists(copy.resolve("a.bin")) ? "a.bin" : "b.bin";
+                        String next = copied.equals("a.bin") ? "b.bin" : "a.bin";
+                        expected.put(copied, Files.readAllBytes(copy.resolve(copied)));
+                        expected.put(next, Files.readAllBytes(source.resolve(next)));
+                        Files.write(source.resolve(copied), expected.get(next));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        };
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setDedup(true).setThrottle(throttle));
+        copyingFile.copy();
+
+        assertEquals(0, copyingFile.getLinkedFiles());
+        assertArrayEquals(expected.get("a.bin"), Files.readAllBytes(copy.resolve("a.bin")));
+        assertArrayEquals(expected.get("b.bin"), Files.readAllBytes(copy.resolve("b.bin")));
+    }
+
+    @Test
+    void syncWithDedupDoesNotWriteThroughLinks() throws IOException {
+        Path source = Files.createTempDirectory("dedup");
+        byte[] library = new byte[50_000];
+        new Random(5).nextBytes(library);
+        FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        for (int i = 0; i < 3; i++) {
+            Path jar = Files.write(Files.createDirectory(source.resolve("m" + i)).resolve("lib.jar"), library);
+            // У m2 другое время изменения: ссылка на него не может хранить собственное время
+            Files.setLastModifiedTime(jar, i < 2 ? modified : FileTime.fromMillis(modified.toMillis() - 5_000));
+        }
+        Path destination = Files.createTempDirectory("dedup");
+        Path copy = destination.resolve(source.getFileName());
+        CopyOptions options = new CopyOptions().setSync(true).setDedup(true);
+
+        CopyingFile first = new CopyingFile(source.toString(), destination.toString(), options);
+        first.copy();
+        assertEquals(1, first.getLinkedFiles());
+        assertTrue(Files.isSameFile(copy.resolve("m0").resolve("lib.jar"), copy.resolve("m1").resolve("lib.jar")));
+
+        byte[] changed = library.clone();
+        changed[0] ^= 1;
+        Files.write(source.resolve("m0").resolve("lib.jar"), changed);
+        CopyingFile second = new CopyingFile(source.toString(), destination.toString(), options);
+        second.copy();
+        assertEquals(1, second.getCopiedFiles());
+        assertArrayEquals(changed, Files.readAllBytes(copy.resolve("m0").resolve("lib.jar")));
+        assertArrayEquals(library, Files.readAllBytes(copy.resolve("m1").resolve("lib.jar")));
+
+        CopyingFile third = new CopyingFile(source.toString(), destination.toString(), options);
+        third.copy();
+        assertEquals(0, third.getCopiedFiles());
+        assertEquals(3, third.getUnchangedFiles());
+        assertEquals(describeTree(source), describeTree(copy));
+    }
+
+    /**
+     * Создает дерево для архивации: файл больше нескольких частей сжатия, пустой файл и длинные пути.
+     */
+    private static Path createArchiveTree() throws IOException {
+        Path root = Files.createTempDirectory("archive");
+        Path nested = Files.createDirectories(root.resolve("nested").resolve("a".repeat(60)).resolve("b".repeat(60)));
+
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        Random random = new Random(7);
+        for (int i = 0; i < large.length; i += 4096) {
+            // Чередуются сжимаемые и случайные блоки
+            if ((i / 4096) % 2 == 0) {
+                byte[] block = new byte[Math.min(4096, large.length - i)];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, large, i, block.length);
+            }
+        }
+        Files.write(root.resolve("large.bin"), large);
+        Files.write(root.resolve("empty.txt"), new byte[0]);
+        Files.writeString(nested.resolve("small.txt"), "small file");
+        Files.writeString(root.resolve("c".repeat(120) + ".txt"), "long name");
+        return root;
+    }
+
+    /**
+     * Читает файлы архива tar.gz: путь относительно корня архива -> содержимое.
+     */
+    private static Map<String, byte[]> readTarGz(Path archive) throws IOException {
+        Map<String, byte[]> files = new HashMap<>();
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+            String longName = null;
+            while (true) {
+                byte[] header = in.readNBytes(512);
+                if (header.length < 512 || header[0] == 0) {
+                    return files;
+                }
+
+                String name = field(header, 0, 100);
+                String prefix = field(header, 345, 155);
+                long size = Long.parseLong(field(header, 124, 12).trim(), 8);
+                byte[] content = in.readNBytes((int) size);
+                in.readNBytes((int) ((512 - size % 512) % 512));
+
+                if (header[156] == 'L') {
+                    longName = new String(content, 0, content.length - 1);
+                    continue;
+                }
+                String path = longName != null ? longName : prefix.isEmpty() ? name : prefix + "/" + name;
+                longName = null;
+                if (header[156] == '0') {
+                    files.put(path, content);
+                }
+            }
+        }
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset);
+    }
+
+    private static void assertArchivedTree(Path source, Map<String, byte[]> archived) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        assertEquals(files.size(), archived.size());
+        for (Path file : files) {
+            String name = source.getFileName() + "/" + source.relativize(file).toString().replace(File.separatorChar, '/');
+            assertArrayEquals(Files.readAllBytes(file), archived.get(name), name);
+        }
+    }
+
+    @Test
+    void testArchiveModeWritesZipReadableByJdk() throws IOException {
+        Path source = createArchiveTree();
+        Path destination = Files.createTempDirectory("archive");
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setArchiveFormat(ArchiveFormat.ZIP));
+        copyingFile.copy();
+
+        assertEquals(destination.resolve(source.getFileName() + ".zip"), copyingFile.getArchiveFile());
+        Map<String, byte[]> archived = new HashMap<>();
+        try (ZipFile zip = new ZipFile(copyingFile.getArchiveFile().toFile())) {
+            assertNotNull(zip.getEntry(source.getFileName() + "/nested/"));
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (!entry.isDirectory()) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        archived.put(entry.getName(), in.readAllBytes());
+                    }
+                }
+            }
+        }
+        assertArchivedTree(source, archived);
+        assertEquals(4, copyingFile.getCopiedFiles());
+    }
+
+    @Test
+    void testArchiveModeWritesTarGzInOnePass() throws IOException {
+        Path source = createArchiveTree();
+        Path destination = Files.createTempDirectory("archive");
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setArchiveFormat(ArchiveFormat.TAR_GZ));
+        copyingFile.copy();
+
+        Path archive = destination.resolve(source.getFileName() + ".tar.gz");
+        assertArchivedTree(source, readTarGz(archive));
+        assertEquals(Files.size(source.resolve("large.bin")) + 19, copyingFile.getMetrics().getBytes());
+        assertTrue(Files.size(archive) < Files.size(source.resolve("large.bin")));
+    }
+
+    @Test
+    void archiveModeAcquiresTokensPerRead() throws IOException {
+        Path source = createArchiveTree();
+        Path destination = Files.createTempDirectory("archive");
+        List<Long> acquired = Collections.synchronizedList(new ArrayList<>());
+        CopyThrottle throttle = new CopyThrottle(CopyThrottle.UNLIMITED, CopyThrottle.UNLIMITED) {
+            @Override
+            public void acquireBytes(long amount) throws InterruptedIOException {
+                acquired.add(amount);
+                super.acquireBytes(amount);
+            }
+        };
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setArchiveFormat(ArchiveFormat.ZIP).setThrottle(throttle));
+        copyingFile.copy();
+
+        long large = Files.size(source.resolve("large.bin"));
+        assertEquals(large + 19, acquired.stream().mapToLong(Long::longValue).sum());
+        assertTrue(acquired.size() > large / (64 * 1024), "tokens must be acquired per read, got " + acquired);
+        assertTrue(acquired.stream().allMatch(amount -> amount <= 64 * 1024), acquired.toString());
+    }
+
+    @Test
+    void testArchiveModeRejectsIncompatibleOptions() throws IOException {
+        Path source = Files.createTempDirectory("archive");
+        Path destination = Files.createTempDirectory("archive");
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new CopyingFile(source.toString(),
+                destination.toString(), new CopyOptions().setArchiveFormat(ArchiveFormat.ZIP).setSync(true)));
+
+        assertEquals("Archive mode can not be combined with resume, sync, delta, dedup, sparse or verify options", exception.getMessage());
+    }
+
+    @Test
+    void steadyStateCopyAllocatesLittlePerFile() throws IOException {
+        assumeTrue(TestCopyEngine.allocatedBytes() >= 0, "Thread allocation accounting is not supported");
+        Path source = Files.createTempDirectory("small");
+        int files = 1_000;
+        for (int i = 0; i < files; i++) {
+            Files.write(source.resolve("file" + i + ".bin"), new byte[100]);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            new CopyingFile(source.toString(), Files.createTempDirectory("warmup").toString()).copy();
+        }
+        CopyingFile copyingFile = new CopyingFile(source.toString(), Files.createTempDirectory("measured").toString());
+        long before = TestCopyEngine.allocatedBytes();
+        copyingFile.copy();
+        long perFile = (TestCopyEngine.allocatedBytes() - before) / files;
+
+        // На файл приходятся пути, атрибуты и каналы JDK, около 1,5 КБ; буферы копирования берутся из пула
+        assertTrue(perFile < 4096, "Allocated " + perFile + " bytes per file");
+    }
+
+    @Test
+    void smallFileFastPathCopiesTreeInBatches() throws IOException {
+        Path source = createTree();
+        Path crowded = Files.createDirectory(source.resolve("crowded"));
+        Random random = new Random(7);
+        for (int i = 0; i < 150; i++) {
+            byte[] content = new byte[random.nextInt(2_048)];
+            random.nextBytes(content);
+            Files.write(crowded.resolve("module" + i + ".js"), content);
+        }
+        Path destination = Files.createTempDirectory("small");
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setSmallFileThreshold(2_048).setSmallFileParallelism(4).setMaxOpenFiles(8));
+        copyingFile.copy();
+
+        Path copy = destination.resolve(source.getFileName());
+        assertEquals(describeTree(source), describeTree(copy));
+        for (int i = 0; i < 150; i++) {
+            assertArrayEquals(Files.readAllBytes(crowded.resolve("module" + i + ".js")),
+                    Files.readAllBytes(copy.resolve("crowded").resolve("module" + i + ".js")));
+        }
+        // 150 файлов crowded, 100 текстовых файлов и 20 файлов до 19 байтов из createTree
+        assertEquals(270, copyingFile.getSmallFiles());
+        assertEquals(350, copyingFile.getCopiedFiles());
+    }
+
+    @Test
+    void filteredCopySkipsExcludedSubtrees() throws IOException {
+        Path source = Files.createTempDirectory("filtered");
+        Path modules = Files.createDirectories(source.resolve("node_modules").resolve("dependency"));
+        Files.writeString(modules.resolve("index.js"), "module.exports = {};");
+        Files.writeString(source.resolve("index.js"), "require('dependency');");
+        Files.writeString(source.resolve("debug.log"), "log");
+        Path destination = Files.createTempDirectory("filtered");
+
+        EntryFilter filter = new EntryFilter().exclude("node_modules").exclude("*.log");
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(), new CopyOptions().setFilter(filter));
+        copyingFile.copy();
+
+        Path copy = destination.resolve(source.getFileName());
+        assertEquals("require('dependency');", Files.readString(copy.resolve("index.js")));
+        assertFalse(Files.exists(copy.resolve("node_modules")));
+        assertFalse(Files.exists(copy.resolve("debug.log")));
+        assertEquals(1, copyingFile.getCopiedFiles());
+        assertEquals(1, filter.getRules().get(0).getPrunedEntries());
+        assertEquals(1, filter.getRules().get(1).getPrunedEntries());
+    }
+
 }
@@ -0,0 +1,64 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.CopyOptions;
+import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.functions.DirectorySizeCache;
+import org.rzsp.filemanager.functions.DirectorySizeCalculator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDirectorySizeCache {
+
+    @Test
+    void repeatedQueryIsServedFromCache() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Files.write(directory.resolve("a.bin"), new byte[10]);
+
+        DirectorySizeCache cache = new DirectorySizeCache(new DirectorySizeCalculator());
+
+        assertEquals(10, cache.getDirectorySize(directory));
+        assertEquals(10, cache.getDirectorySize(directory));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void copyingInvalidatesDestinationAndItsParents() throws IOException {
+        Path parent = Files.createTempDirectory("cache");
+        Path destination = Files.createDirectories(parent.resolve("destination").resolve("nested"));
+        Path source = Files.write(Files.createTempDirectory("source").resolve("a.bin"), new byte[10]);
+
+        DirectorySizeCache cache = new DirectorySizeCache(new DirectorySizeCalculator());
+        assertEquals(0, cache.getDirectorySize(parent));
+        assertEquals(0, cache.getDirectorySize(destination));
+
+        new CopyingFile(source.toString(), destination.toString(), new CopyOptions().setSizeCache(cache)).copy();
+
+        assertEquals(0, cache.getSize());
+        assertEquals(10, cache.getDirectorySize(parent));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        Path first = Files.createTempDirectory("cache");
+        Path second = Files.createTempDirectory("cache");
+
+        // Ограничение памяти позволяет хранить только одну запись
+        DirectorySizeCache cache = new DirectorySizeCache(new DirectorySizeCalculator(), 200);
+        cache.getDirectorySize(first);
+        cache.getDirectorySize(second);
+
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+
+        cache.getDirectorySize(second);
+        assertEquals(1, cache.getHits());
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.DirectorySizeIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDirectorySizeIndex {
+
+    @Test
+    void savedIndexIsReusedAndOnlyChangedDirectoriesAreRescanned() throws IOException {
+        Path root = Files.createTempDirectory("index");
+        Path first = Files.createDirectories(root.resolve("first"));
+        Path second = Files.createDirectories(root.resolve("second").resolve("nested"));
+        Files.write(root.resolve("root.bin"), new byte[5]);
+        Files.write(first.resolve("a.bin"), new byte[10]);
+        Files.write(second.resolve("b.bin"), new byte[20]);
+        Path indexFile = Files.createTempDirectory("index-file").resolve("size.index");
+
+        DirectorySizeIndex index = new DirectorySizeIndex(indexFile);
+        assertEquals(35, index.getDirectorySize(root));
+        assertEquals(4, index.getRescannedDirectories());
+        index.save();
+
+        DirectorySizeIndex loaded = new DirectorySizeIndex(indexFile);
+        assertEquals(35, loaded.getDirectorySize(root));
+        assertEquals(6, loaded.getEntryCount(root));
+        assertEquals(0, loaded.getRescannedDirectories());
+
+        Files.write(first.resolve("c.bin"), new byte[100]);
+        assertEquals(135, loaded.getDirectorySize(root));
+        assertEquals(1, loaded.getRescannedDirectories());
+        assertEquals(110, loaded.getDirectorySize(first));
+    }
+
+    @Test
+    void removedDirectoryIsDroppedFromTotals() throws IOException {
+        Path root = Files.createTempDirectory("index");
+        Path removed = Files.createDirectories(root.resolve("removed"));
+        Files.write(removed.resolve("a.bin"), new byte[10]);
+        Files.write(root.resolve("b.bin"), new byte[1]);
+
+        DirectorySizeIndex index = new DirectorySizeIndex(Files.createTempDirectory("index-file").resolve("size.index"));
+        assertEquals(11, index.getDirectorySize(root));
+
+        Files.delete(removed.resolve("a.bin"));
+        Files.delete(removed);
+        assertEquals(1, index.getDirectorySize(root));
+    }
+
+    @Test
+    void nestedAndParentQueriesShareOneTree() throws IOException {
+        Path root = Files.createTempDirectory("index");
+        Path nested = Files.createDirectories(root.resolve("first").resolve("nested"));
+        Files.write(nested.resolve("a.bin"), new byte[10]);
+        Files.write(root.resolve("b.bin"), new byte[1]);
+        Path indexFile = Files.createTempDirectory("index-file").resolve("size.index");
+
+        DirectorySizeIndex index = new DirectorySizeIndex(indexFile);
+        assertEquals(10, index.getDirectorySize(nested));
+        assertEquals(1, index.getRescannedDirectories());
+
+        // Родитель переиспользует дерево nested: перечитываются только root и first
+        assertEquals(11, index.getDirectorySize(root));
+        assertEquals(3, index.getRescannedDirectories());
+        assertEquals(10, index.getDirectorySize(nested));
+        assertEquals(3, index.getRescannedDirectories());
+
+        // Новая поддиректория находится через перечитанного родителя, а не становится отдельным корнем
+        Path added = Files.createDirectories(root.resolve("added"));
+        Files.write(added.resolve("c.bin"), new byte[100]);
+        assertEquals(100, index.getDirectorySize(added));
+        index.save();
+
+        DirectorySizeIndex loaded = new DirectorySizeIndex(indexFile);
+        assertEquals(111, loaded.getDirectorySize(root));
+        assertEquals(0, loaded.getRescannedDirectories());
+    }
+
+    @Test
+    void notIndexFileIsRejected() throws IOException {
+        Path file = Files.write(Files.createTempFile("not-index", ".bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> new DirectorySizeIndex(file));
+    }
+
+}
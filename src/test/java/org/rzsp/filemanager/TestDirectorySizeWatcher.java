@@ -0,0 +1,98 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.DirectorySizeCalculator;
+import org.rzsp.filemanager.functions.DirectorySizeWatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDirectorySizeWatcher {
+
+    /**
+     * Обрабатывает события, пока размер директории не станет ожидаемым или не истечет время.
+     */
+    private static void awaitSize(DirectorySizeWatcher watcher, Path directory, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (watcher.getDirectorySize(directory) != expected && System.nanoTime() < deadline) {
+            watcher.processEvents(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(expected, watcher.getDirectorySize(directory));
+    }
+
+    @Test
+    void sizesFollowCreatedModifiedAndDeletedEntries() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        Files.write(nested.resolve("file.bin"), new byte[1000]);
+        Files.write(root.resolve("top.bin"), new byte[10]);
+
+        try (DirectorySizeWatcher watcher = new DirectorySizeWatcher(root)) {
+            assertEquals(1010, watcher.getDirectorySize(root));
+            assertEquals(1000, watcher.getDirectorySize(root.resolve("a")));
+            assertEquals(3, watcher.getWatchedDirectories());
+
+            Files.write(nested.resolve("file.bin"), new byte[3000]);
+            awaitSize(watcher, root, 3010);
+            assertEquals(3000, watcher.getDirectorySize(root.resolve("a")));
+
+            Path created = Files.createDirectory(root.resolve("created"));
+            Files.write(created.resolve("new.bin"), new byte[500]);
+            awaitSize(watcher, root, 3510);
+            assertEquals(500, watcher.getDirectorySize(created));
+
+            Files.delete(nested.resolve("file.bin"));
+            Files.delete(nested);
+            awaitSize(watcher, root, 510);
+            assertEquals(0, watcher.getDirectorySize(root.resolve("a")));
+            assertEquals(new DirectorySizeCalculator().getDirectorySize(root), watcher.getDirectorySize(root));
+        }
+    }
+
+    @Test
+    void fileEventStatsOnlyChangedFile() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        for (int i = 0; i < 200; i++) {
+            Files.write(root.resolve("file" + i + ".bin"), new byte[10]);
+        }
+
+        try (DirectorySizeWatcher watcher = new DirectorySizeWatcher(root)) {
+            long statCalls = watcher.getTraversalStatistics().getStatCalls();
+
+            Files.write(root.resolve("file7.bin"), new byte[1000]);
+            awaitSize(watcher, root, 2990);
+            Files.delete(root.resolve("file8.bin"));
+            awaitSize(watcher, root, 2980);
+
+            // Директория из 200 файлов не перечитывается: stat выполняется только для измененных файлов
+            assertTrue(watcher.getTraversalStatistics().getStatCalls() - statCalls <= 4);
+            assertEquals(1, watcher.getTraversalStatistics().getDirectoryListings());
+            assertEquals(new DirectorySizeCalculator().getDirectorySize(root), watcher.getDirectorySize(root));
+        }
+    }
+
+    @Test
+    void rescanRestoresSizesOfSubtreeAndAncestors() throws IOException {
+        Path root = Files.createTempDirectory("watch");
+        Path nested = Files.createDirectory(root.resolve("nested"));
+        Files.write(nested.resolve("file.bin"), new byte[100]);
+
+        try (DirectorySizeWatcher watcher = new DirectorySizeWatcher(root)) {
+            // События не обрабатываются, как будто они были потеряны при переполнении очереди
+            Files.createDirectory(nested.resolve("deep"));
+            Files.write(nested.resolve("deep").resolve("more.bin"), new byte[200]);
+
+            watcher.rescan(nested);
+
+            assertEquals(300, watcher.getDirectorySize(nested));
+            assertEquals(300, watcher.getDirectorySize(root));
+            assertEquals(200, watcher.getDirectorySize(nested.resolve("deep")));
+            assertEquals(1, watcher.getRescans());
+        }
+    }
+
+}
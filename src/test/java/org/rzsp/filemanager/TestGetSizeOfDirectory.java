@@ -1,10 +1,21 @@
 package org.rzsp.filemanager;
 
 import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.DirectorySizeCalculator;
+import org.rzsp.filemanager.functions.DirectorySizeListener;
+import org.rzsp.filemanager.functions.GetSizeOfDirectory;
+import org.rzsp.filemanager.jobs.JobControl;
+import org.rzsp.filemanager.traversal.EntryFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,4 +67,128 @@ public class TestGetSizeOfDirectory {
         assertEquals(file.getAbsolutePath() + " is not exist", exception.getMessage());
     }
 
+    @Test
+    void directorySizeCalculatorSumsNestedAndWideDirectories() throws IOException {
+        Path root = Files.createTempDirectory("size");
+        long expected = 0;
+
+        Path deep = root;
+        for (int i = 0; i < 10; i++) {
+            deep = Files.createDirectories(deep.resolve("level" + i));
+            Files.write(deep.resolve("file.bin"), new byte[i + 1]);
+            expected += i + 1;
+        }
+
+        Path wide = Files.createDirectories(root.resolve("wide"));
+        for (int i = 0; i < 1000; i++) {
+            Files.write(wide.resolve("file" + i), new byte[i % 7]);
+            expected += i % 7;
+        }
+        Files.createDirectories(wide.resolve("empty"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, new DirectorySizeCalculator(pool).getDirectorySize(root));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void calculateSizesReportsEveryEntryAndRunningTotals() throws IOException {
+        Path root = Files.createTempDirectory("streaming");
+        Files.write(root.resolve("file.bin"), new byte[3]);
+        Path first = Files.createDirectories(root.resolve("first"));
+        Files.write(first.resolve("a.bin"), new byte[10]);
+        Path second = Files.createDirectories(root.resolve("second").resolve("nested"));
+        Files.write(second.resolve("b.bin"), new byte[20]);
+
+        Map<String, Long> sizes = new HashMap<>();
+        long[] lastProgress = new long[2];
+        long[] total = {-1};
+
+        new GetSizeOfDirectory(root.toString()).calculateSizes(new DirectorySizeListener() {
+
+            @Override
+            public void onEntry(String name, long size, boolean directory) {
+                sizes.put(name, size);
+            }
+
+            @Override
+            public void onProgress(long partialSize, int completedEntries, int totalEntries) {
+                assertTrue(partialSize >= lastProgress[0]);
+                lastProgress[0] = partialSize;
+                lastProgress[1] = completedEntries;
+                assertEquals(3, totalEntries);
+            }
+
+            @Override
+            public void onComplete(long totalSize) {
+                total[0] = totalSize;
+            }
+
+        });
+
+        assertEquals(Map.of("file.bin", 3L, "first", 10L, "second", 20L), sizes);
+        assertEquals(3, lastProgress[1]);
+        assertEquals(33, total[0]);
+    }
+
+    @Test
+    void cancelledJobStopsBeforeNextSubdirectory() throws IOException {
+        Path root = Files.createTempDirectory("cancelled");
+        Files.write(root.resolve("file.bin"), new byte[3]);
+        Files.createDirectories(root.resolve("first"));
+        Files.createDirectories(root.resolve("second"));
+        Map<String, Long> sizes = new HashMap<>();
+        JobControl control = new JobControl();
+        control.cancel();
+
+        GetSizeOfDirectory getSizeOfDirectory = new GetSizeOfDirectory(root.toString());
+        getSizeOfDirectory.setJobControl(control);
+        UncheckedIOException exception = assertThrows(UncheckedIOException.class,
+                () -> getSizeOfDirectory.calculateSizes((name, size, directory) -> sizes.put(name, size)));
+
+        assertInstanceOf(InterruptedIOException.class, exception.getCause());
+        assertFalse(sizes.containsKey("first"));
+        assertFalse(sizes.containsKey("second"));
+    }
+
+    @Test
+    void filteredSizesSkipExcludedEntries() throws IOException {
+        Path root = Files.createTempDirectory("filtered");
+        Files.write(root.resolve("file.bin"), new byte[3]);
+        Files.write(root.resolve("file.tmp"), new byte[5]);
+        Path project = Files.createDirectories(root.resolve("project"));
+        Files.write(project.resolve("a.bin"), new byte[10]);
+        Files.write(project.resolve("a.tmp"), new byte[7]);
+        Path modules = Files.createDirectories(project.resolve("node_modules"));
+        Files.write(modules.resolve("b.bin"), new byte[20]);
+        Files.write(Files.createDirectories(root.resolve("cache")).resolve("c.bin"), new byte[40]);
+
+        EntryFilter filter = new EntryFilter().exclude("node_modules").exclude("*.tmp").exclude("cache/**");
+        Map<String, Long> sizes = new HashMap<>();
+        long[] total = {-1};
+
+        new GetSizeOfDirectory(root.toString(), filter).calculateSizes(new DirectorySizeListener() {
+
+            @Override
+            public void onEntry(String name, long size, boolean directory) {
+                sizes.put(name, size);
+            }
+
+            @Override
+            public void onComplete(long totalSize) {
+                total[0] = totalSize;
+            }
+
+        });
+
+        assertEquals(Map.of("file.bin", 3L, "project", 10L, "cache", 0L), sizes);
+        assertEquals(13, total[0]);
+        assertEquals(1, filter.getRules().get(0).getPrunedEntries());
+        assertEquals(2, filter.getRules().get(1).getPrunedEntries());
+        assertEquals(1, filter.getRules().get(2).getPrunedEntries());
+    }
+
 }
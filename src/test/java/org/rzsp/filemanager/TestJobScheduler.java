@@ -0,0 +1,140 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.CopyOptions;
+import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.jobs.Job;
+import org.rzsp.filemanager.jobs.JobControl;
+import org.rzsp.filemanager.jobs.JobScheduler;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJobScheduler {
+
+    @Test
+    void jobsOnOneDeviceWaitForFreeSlot() throws Exception {
+        Path directory = Files.createTempDirectory("jobs");
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (JobScheduler scheduler = new JobScheduler(1)) {
+            Job first = scheduler.submit("first", List.of(directory), null, control -> release.await());
+            Job second = scheduler.submit("second", List.of(directory.resolve("not-created")), null, control -> { });
+
+            assertEquals(Job.State.RUNNING, first.getState());
+            assertEquals(Job.State.QUEUED, second.getState());
+            assertEquals(2, scheduler.getActiveJobs());
+
+            release.countDown();
+            assertTrue(second.await(10, TimeUnit.SECONDS));
+            assertEquals(Job.State.COMPLETED, first.getState());
+            assertEquals(Job.State.COMPLETED, second.getState());
+            assertEquals(0, scheduler.getActiveJobs());
+        }
+    }
+
+    @Test
+    void jobsArePausedResumedAndCancelledAtCheckpoints() throws Exception {
+        Path directory = Files.createTempDirectory("jobs");
+        AtomicInteger steps = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+
+        try (JobScheduler scheduler = new JobScheduler(2)) {
+            Job job = scheduler.submit("loop", List.of(directory), null, control -> {
+                started.countDown();
+                while (true) {
+                    control.checkpoint();
+                    steps.incrementAndGet();
+                    Thread.sleep(1);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertTrue(scheduler.pause(job.getId()));
+            assertEquals(Job.State.PAUSED, job.getState());
+            Thread.sleep(50);
+            int pausedAt = steps.get();
+            Thread.sleep(100);
+            assertEquals(pausedAt, steps.get());
+
+            assertTrue(scheduler.resume(job.getId()));
+            assertEquals(Job.State.RUNNING, job.getState());
+            assertTrue(scheduler.cancel(job.getId()));
+            assertTrue(job.await(10, TimeUnit.SECONDS));
+            assertEquals(Job.State.CANCELLED, job.getState());
+            assertNull(job.getError());
+            assertFalse(scheduler.cancel(job.getId()));
+        }
+    }
+
+    @Test
+    void awaitAllDoesNotWaitForPausedJobs() throws Exception {
+        Path directory = Files.createTempDirectory("jobs");
+        CountDownLatch started = new CountDownLatch(1);
+
+        try (JobScheduler scheduler = new JobScheduler(1)) {
+            Job paused = scheduler.submit("loop", List.of(directory), null, control -> {
+                started.countDown();
+                while (true) {
+                    control.checkpoint();
+                    Thread.sleep(1);
+                }
+            });
+            Job queued = scheduler.submit("queued", List.of(directory), null, control -> { });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(scheduler.pause(paused.getId()));
+
+            // Задача в очереди ждет устройство задачи на паузе, поэтому ожидание не должно её ждать
+            assertTimeoutPreemptively(Duration.ofSeconds(10), scheduler::awaitAll);
+            assertEquals(Job.State.QUEUED, queued.getState());
+
+            assertEquals(1, scheduler.cancelPaused());
+            assertTimeoutPreemptively(Duration.ofSeconds(10), scheduler::awaitAll);
+            assertEquals(Job.State.CANCELLED, paused.getState());
+            assertEquals(Job.State.COMPLETED, queued.getState());
+        }
+    }
+
+    @Test
+    void failedJobKeepsErrorAndReleasesDevice() throws Exception {
+        Path directory = Files.createTempDirectory("jobs");
+
+        try (JobScheduler scheduler = new JobScheduler(1)) {
+            Job failed = scheduler.submit("failing", List.of(directory), null, control -> {
+                throw new IllegalStateException("broken");
+            });
+            Job next = scheduler.submit("next", List.of(directory), null, control -> { });
+
+            assertTrue(next.await(10, TimeUnit.SECONDS));
+            assertEquals(Job.State.FAILED, failed.getState());
+            assertEquals("broken", failed.getError());
+            assertEquals(Job.State.COMPLETED, next.getState());
+        }
+    }
+
+    @Test
+    void cancelledCopyStopsBeforeNextFile() throws Exception {
+        Path source = Files.createTempDirectory("jobs");
+        for (int i = 0; i < 10; i++) {
+            Files.write(source.resolve("file" + i + ".bin"), new byte[100]);
+        }
+        Path destination = Files.createTempDirectory("jobs");
+        JobControl control = new JobControl();
+        control.cancel();
+
+        CopyingFile copyingFile = new CopyingFile(source.toString(), destination.toString(),
+                new CopyOptions().setJobControl(control));
+
+        assertThrows(InterruptedIOException.class, copyingFile::copy);
+        assertEquals(0, copyingFile.getCopiedFiles());
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.CopyOptions;
+import org.rzsp.filemanager.functions.CopyingFile;
+import org.rzsp.filemanager.functions.GetSizeOfDirectory;
+import org.rzsp.filemanager.metrics.LatencyHistogram;
+import org.rzsp.filemanager.metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestOperationMetrics {
+
+    @Test
+    void histogramPutsDurationsIntoPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);        // 0.5 мкс
+        histogram.record(3_000);      // 3 мкс
+        histogram.record(3_000_000);  // 3 мс
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(1, histogram.getBucketValue(0));
+        assertEquals(1, histogram.getBucketValue(2));
+        assertEquals(4, histogram.getPercentileMicros(0.5));
+        assertEquals(4096, histogram.getPercentileMicros(0.99));
+    }
+
+    @Test
+    void copyAndSizeRecordFilesDirectoriesAndListings() throws IOException {
+        Path source = Files.createTempDirectory("metrics");
+        Path nested = Files.createDirectory(source.resolve("nested"));
+        Files.write(source.resolve("a.bin"), new byte[1000]);
+        Files.write(nested.resolve("b.bin"), new byte[500]);
+
+        OperationMetrics copyMetrics = new OperationMetrics("copy");
+        new CopyingFile(source.toString(), Files.createTempDirectory("metrics").toString(),
+                new CopyOptions().setParallelism(2).setMetrics(copyMetrics)).copy();
+
+        assertEquals(1500, copyMetrics.getBytes());
+        assertEquals(2, copyMetrics.getFiles());
+        assertEquals(2, copyMetrics.getDirectories());
+        assertEquals(2, copyMetrics.getEntryLatency().getCount());
+        assertEquals(2, copyMetrics.getListingLatency().getCount());
+        assertEquals(0, copyMetrics.getQueueDepth());
+
+        GetSizeOfDirectory getSizeOfDirectory = new GetSizeOfDirectory(source.toString());
+        getSizeOfDirectory.calculateSizes((name, size, directory) -> { });
+
+        OperationMetrics sizeMetrics = getSizeOfDirectory.getMetrics();
+        assertEquals(1500, sizeMetrics.getBytes());
+        assertEquals(1, sizeMetrics.getFiles());
+        assertEquals(1, sizeMetrics.getDirectories());
+        assertEquals(2, sizeMetrics.getListingLatency().getCount());
+    }
+
+    @Test
+    void writeToChoosesFormatByExtension() throws IOException {
+        OperationMetrics metrics = new OperationMetrics("copy");
+        metrics.recordFile(2048, 10_000);
+        metrics.setTotalBytes(4096);
+        Path directory = Files.createTempDirectory("metrics");
+
+        metrics.writeTo(directory.resolve("copy.json"));
+        metrics.writeTo(directory.resolve("copy.prom"));
+
+        String json = Files.readString(directory.resolve("copy.json"));
+        assertTrue(json.contains("\"bytes\": 2048"));
+        assertTrue(json.contains("\"totalBytes\": 4096"));
+        assertTrue(json.contains("\"16\": 1"));
+
+        String prometheus = Files.readString(directory.resolve("copy.prom"));
+        assertTrue(prometheus.contains("filemanager_copy_bytes_total 2048"));
+        assertTrue(prometheus.contains("filemanager_copy_entry_duration_seconds_bucket{le=\"0.000016\"} 1"));
+        assertTrue(prometheus.contains("filemanager_copy_entry_duration_seconds_bucket{le=\"+Inf\"} 1"));
+        assertTrue(prometheus.contains("filemanager_copy_entry_duration_seconds_count 1"));
+    }
+
+    @Test
+    void operationNameMustBeUsableInMetricNames() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new OperationMetrics("copy files"));
+
+        assertEquals("Operation name must consist of lowercase letters and '_'", exception.getMessage());
+    }
+
+}
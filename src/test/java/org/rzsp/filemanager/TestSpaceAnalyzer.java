@@ -0,0 +1,96 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.functions.SizeHistogram;
+import org.rzsp.filemanager.functions.SpaceAnalyzer;
+import org.rzsp.filemanager.functions.TopEntries;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSpaceAnalyzer {
+
+    @Test
+    void analysisFindsLargestEntriesAtAnyDepthAndBuildsHistograms() throws IOException {
+        Path root = Files.createTempDirectory("analyze");
+        Path deep = Files.createDirectories(root.resolve("a").resolve("b").resolve("c"));
+        Path other = Files.createDirectory(root.resolve("other"));
+
+        Files.write(deep.resolve("big.iso"), new byte[5000]);
+        Files.write(deep.resolve("notes.TXT"), new byte[100]);
+        Files.write(other.resolve("medium.txt"), new byte[2000]);
+        Path old = Files.write(root.resolve("old.log"), new byte[300]);
+        Files.write(root.resolve(".hidden"), new byte[10]);
+        Files.setLastModifiedTime(old, FileTime.from(Instant.now().minus(400, ChronoUnit.DAYS)));
+
+        SpaceAnalyzer analyzer = new SpaceAnalyzer(root.toString(), 2);
+        analyzer.analyze();
+
+        assertEquals(7410, analyzer.getTotalSize());
+        assertEquals(5, analyzer.getFiles());
+        assertEquals(4, analyzer.getDirectories());
+
+        List<TopEntries.Entry> files = analyzer.getLargestFiles();
+        assertEquals(2, files.size());
+        assertEquals(deep.resolve("big.iso").toString(), files.get(0).getPath());
+        assertEquals(2000, files.get(1).getSize());
+
+        List<TopEntries.Entry> directories = analyzer.getLargestDirectories();
+        assertEquals(2, directories.size());
+        assertEquals(5100, directories.get(0).getSize());
+        assertEquals(5100, directories.get(1).getSize());
+
+        List<SizeHistogram.Bucket> extensions = analyzer.getExtensionHistogram();
+        assertEquals("iso", extensions.get(0).getGroup());
+        assertEquals("txt", extensions.get(1).getGroup());
+        assertEquals(2, extensions.get(1).getFiles());
+        assertEquals(2100, extensions.get(1).getBytes());
+        assertTrue(extensions.stream().anyMatch(bucket -> bucket.getGroup().equals(SpaceAnalyzer.NO_EXTENSION)));
+
+        List<SizeHistogram.Bucket> ages = analyzer.getAgeHistogram();
+        assertEquals(4, ages.get(0).getFiles());
+        assertEquals(1, ages.get(ages.size() - 1).getFiles());
+        assertEquals(300, ages.get(ages.size() - 1).getBytes());
+    }
+
+    @Test
+    void topEntriesKeepsOnlyLargestWithinCapacity() {
+        TopEntries top = new TopEntries(3);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            top.offer(random.nextInt(1_000_000), Path.of("file" + i));
+        }
+        top.offer(5_000_000, Path.of("largest"));
+
+        List<TopEntries.Entry> entries = top.toList();
+        assertEquals(3, entries.size());
+        assertEquals("largest", entries.get(0).getPath());
+        assertTrue(entries.get(1).getSize() >= entries.get(2).getSize());
+        assertTrue(entries.get(2).getSize() > 999_000);
+    }
+
+    @Test
+    void histogramFoldsGroupsBeyondLimitIntoOther() {
+        SizeHistogram histogram = new SizeHistogram(2);
+        histogram.record("a", 10);
+        histogram.record("b", 20);
+        histogram.record("c", 30);
+        histogram.record("d", 40);
+        histogram.record("a", 1);
+
+        List<SizeHistogram.Bucket> buckets = histogram.getBuckets();
+        assertEquals(3, buckets.size());
+        assertEquals(SizeHistogram.OTHER, buckets.get(0).getGroup());
+        assertEquals(70, buckets.get(0).getBytes());
+        assertEquals(11, buckets.get(2).getBytes());
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.rzsp.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.rzsp.filemanager.traversal.EntryFilter;
+import org.rzsp.filemanager.traversal.EntryVisitor;
+import org.rzsp.filemanager.traversal.TraversalStatistics;
+import org.rzsp.filemanager.traversal.TreeWalker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTreeWalker {
+
+    @Test
+    void walkReadsAttributesOncePerEntry() throws IOException {
+        Path root = Files.createTempDirectory("walker");
+        Path nested = Files.createDirectories(root.resolve("nested"));
+        Files.write(root.resolve("a.bin"), new byte[10]);
+        Files.write(nested.resolve("b.bin"), new byte[20]);
+
+        TreeWalker walker = new TreeWalker();
+        List<Long> sizes = new ArrayList<>();
+        walker.walk(root, (file, attributes) -> sizes.add(attributes.size()));
+
+        TraversalStatistics statistics = walker.getStatistics();
+        assertEquals(2, statistics.getFiles());
+        assertEquals(2, statistics.getDirectories());
+        assertEquals(4, statistics.getStatCalls());
+        assertTrue(statistics.getSavedStatCallsPerEntry() > 0);
+        assertEquals(30, sizes.stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void walkSkipsSubtreeWhenVisitorRefusesDirectory() throws IOException {
+        Path root = Files.createTempDirectory("walker");
+        Path skipped = Files.createDirectories(root.resolve("skipped"));
+        Files.write(skipped.resolve("file.bin"), new byte[10]);
+
+        List<Path> files = new ArrayList<>();
+        new TreeWalker().walk(root, new EntryVisitor() {
+
+            @Override
+            public boolean enterDirectory(Path directory, BasicFileAttributes attributes) {
+                return !directory.equals(skipped);
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attributes) {
+                files.add(file);
+            }
+
+        });
+
+        assertTrue(files.isEmpty());
+    }
+
+    @Test
+    void filterPrunesExcludedDirectoriesBeforeListing() throws IOException {
+        Path root = Files.createTempDirectory("filter");
+        Path modules = Files.createDirectories(root.resolve("app").resolve("node_modules").resolve("lib"));
+        Files.write(modules.resolve("index.js"), new byte[10]);
+        Files.createDirectories(root.resolve(".git"));
+        Files.write(root.resolve("app").resolve("main.js"), new byte[20]);
+        Files.write(root.resolve("app").resolve("main.tmp"), new byte[30]);
+
+        EntryFilter filter = new EntryFilter().exclude("node_modules").excludeRegex("(^|/)\\.git$").exclude("*.tmp");
+        TreeWalker walker = new TreeWalker(new TraversalStatistics(), filter);
+        Set<String> files = new TreeSet<>();
+        walker.walk(root, (file, attributes) -> files.add(root.relativize(file).toString()));
+
+        assertEquals(Set.of(Path.of("app", "main.js").toString()), files);
+        // Прочитаны только корень и app: node_modules и .git отсечены до чтения содержимого
+        assertEquals(2, walker.getStatistics().getDirectoryListings());
+
+        List<EntryFilter.Rule> rules = filter.getRules();
+        assertEquals("exclude node_modules: 1 pruned", rules.get(0).toString());
+        assertEquals(1, rules.get(1).getPrunedEntries());
+        assertEquals(1, rules.get(2).getPrunedEntries());
+    }
+
+    @Test
+    void filterAppliesIncludeSizeAndAgeRulesToFiles() throws IOException {
+        Path root = Files.createTempDirectory("filter");
+        Path nested = Files.createDirectories(root.resolve("src"));
+        Files.write(nested.resolve("Small.java"), new byte[1]);
+        Files.write(nested.resolve("Large.java"), new byte[100]);
+        Files.write(nested.resolve("Old.java"), new byte[50]);
+        Files.setLastModifiedTime(nested.resolve("Old.java"), FileTime.from(Instant.now().minus(Duration.ofDays(30))));
+        Files.write(nested.resolve("notes.txt"), new byte[50]);
+        Files.write(nested.resolve("Main.java"), new byte[50]);
+
+        EntryFilter filter = new EntryFilter().include("*.java").minSize(10).maxSize(60).newerThan(Duration.ofDays(7));
+        Set<String> files = new TreeSet<>();
+        new TreeWalker(new TraversalStatistics(), filter).walk(root, (file, attributes) -> files.add(file.getFileName().toString()));
+
+        assertEquals(Set.of("Main.java"), files);
+        List<Long> pruned = new ArrayList<>();
+        filter.getRules().forEach(rule -> pruned.add(rule.getPrunedEntries()));
+        assertEquals(List.of(1L, 1L, 1L, 1L), pruned);
+        assertEquals("not included by include *.java", filter.getRules().get(3).getDescription());
+    }
+
+    @Test
+    void filterRejectsInvalidPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> new EntryFilter().excludeRegex("(unclosed"));
+        assertThrows(IllegalArgumentException.class, () -> new EntryFilter().exclude("{unclosed"));
+        assertThrows(IllegalArgumentException.class, () -> new EntryFilter().minSize(-1));
+    }
+
+    @Test
+    void listDirectoryOfMissingDirectoryReturnsNull() {
+        assertNull(new TreeWalker().listDirectory(Path.of("no_exist_directory")));
+    }
+
+}